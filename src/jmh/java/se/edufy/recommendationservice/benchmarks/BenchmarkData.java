@@ -0,0 +1,58 @@
+package se.edufy.recommendationservice.benchmarks;
+
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic synthetic catalogs, play histories and ratings for the benchmarks.
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static List<MediaDetailsDTO> catalog(int size, int genreCardinality, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int artistCount = Math.max(1, size / 10);
+
+        List<MediaDetailsDTO> media = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            int genresPerMedia = 1 + random.nextInt(3);
+            List<String> genres = new ArrayList<>(genresPerMedia);
+            for (int g = 0; g < genresPerMedia; g++) {
+                String genre = "Genre " + random.nextInt(genreCardinality);
+                if (!genres.contains(genre)) {
+                    genres.add(genre);
+                }
+            }
+            long artistId = 1 + random.nextInt(artistCount);
+            media.add(new MediaDetailsDTO(id, "Media " + id, genres,
+                    List.of(new ArtistDTO(artistId, "Artist " + artistId))));
+        }
+        return media;
+    }
+
+    static List<PlayDTO> plays(int catalogSize, int historyLength, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<PlayDTO> plays = new ArrayList<>(historyLength);
+        for (int i = 0; i < historyLength; i++) {
+            plays.add(new PlayDTO(1L + random.nextInt(catalogSize), 1 + random.nextInt(20)));
+        }
+        return plays;
+    }
+
+    static List<RatingDTO> ratings(String userId, int catalogSize, int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<RatingDTO> ratings = new ArrayList<>(count);
+        for (long i = 0; i < count; i++) {
+            ratings.add(new RatingDTO(i, userId, Long.toString(1L + random.nextInt(catalogSize)), random.nextBoolean()));
+        }
+        return ratings;
+    }
+}
@@ -0,0 +1,112 @@
+package se.edufy.recommendationservice.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the old linear catalog scans in {@code recommend} (steps 6 and 8) with the
+ * id → ordinal index and genre postings of {@link CatalogSnapshot}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CatalogIndexBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int catalogSize;
+
+    @Param({"200"})
+    int historyLength;
+
+    private List<MediaDetailsDTO> allMedia;
+    private CatalogSnapshot catalog;
+    private List<PlayDTO> plays;
+    private List<String> topGenreNames;
+    private int[] topGenreIds;
+
+    @Setup
+    public void setUp() {
+        allMedia = BenchmarkData.catalog(catalogSize, 50, 42);
+        catalog = new CatalogSnapshot(allMedia, Instant.now());
+        plays = BenchmarkData.plays(catalogSize, historyLength, 7);
+        topGenreNames = List.of("Genre 1", "Genre 2", "Genre 3");
+        topGenreIds = topGenreNames.stream().mapToInt(catalog::genreId).toArray();
+    }
+
+    @Benchmark
+    public Map<String, Integer> genreCountsLinear() {
+        Map<String, Integer> genreCounts = new HashMap<>();
+        for (PlayDTO play : plays) {
+            allMedia.stream()
+                    .filter(m -> m.id().equals(play.mediaId()))
+                    .findFirst()
+                    .ifPresent(media -> {
+                        for (String genre : media.genres()) {
+                            genreCounts.merge(genre, 1, Integer::sum);
+                        }
+                    });
+        }
+        return genreCounts;
+    }
+
+    @Benchmark
+    public int[] genreCountsIndexed() {
+        int[] genreCounts = new int[catalog.genreCount()];
+        for (PlayDTO play : plays) {
+            int ordinal = catalog.ordinalOf(play.mediaId());
+            if (ordinal >= 0) {
+                for (int genre : catalog.genresOf(ordinal)) {
+                    genreCounts[genre]++;
+                }
+            }
+        }
+        return genreCounts;
+    }
+
+    @Benchmark
+    public void splitLinear(Blackhole bh) {
+        List<MediaDetailsDTO> preferred = new ArrayList<>();
+        List<MediaDetailsDTO> others = new ArrayList<>();
+        for (MediaDetailsDTO media : allMedia) {
+            if (media.genres().stream().anyMatch(topGenreNames::contains)) {
+                preferred.add(media);
+            } else {
+                others.add(media);
+            }
+        }
+        bh.consume(preferred);
+        bh.consume(others);
+    }
+
+    @Benchmark
+    public void splitIndexed(Blackhole bh) {
+        BitSet preferredOrdinals = new BitSet(catalog.size());
+        for (int genre : topGenreIds) {
+            for (int ordinal : catalog.postings(genre)) {
+                preferredOrdinals.set(ordinal);
+            }
+        }
+
+        List<MediaDetailsDTO> preferred = new ArrayList<>();
+        List<MediaDetailsDTO> others = new ArrayList<>();
+        for (int ordinal = 0; ordinal < catalog.size(); ordinal++) {
+            if (preferredOrdinals.get(ordinal)) {
+                preferred.add(catalog.media(ordinal));
+            } else {
+                others.add(catalog.media(ordinal));
+            }
+        }
+        bh.consume(preferred);
+        bh.consume(others);
+    }
+}
@@ -0,0 +1,101 @@
+package se.edufy.recommendationservice.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import se.edufy.recommendationservice.clients.MediaCatalogReader;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.CatalogSnapshotFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares loading the {@code /media/details} payload as a {@code List<MediaDetailsDTO>} and
+ * indexing it afterwards with streaming it straight into a {@link CatalogSnapshot.Builder}.
+ * Run with {@code -prof gc}: {@code gc.alloc.rate.norm} is the heap allocated per catalog load,
+ * and the churn counters show how much of it survives into the old generation.
+ *
+ * <p>{@code changes} is a delta refresh instead: 1% of the catalog changed, a tenth of that
+ * removed, applied to the previous snapshot. {@code warmStart} is a restart: the snapshot saved
+ * by the previous process is mapped and decoded, dictionaries and postings included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class CatalogLoadBenchmark {
+
+    private static final TypeReference<List<MediaDetailsDTO>> MEDIA_LIST = new TypeReference<>() {};
+
+    @Param({"10000", "100000", "1000000"})
+    int catalogSize;
+
+    @Param({"50"})
+    int genreCardinality;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] payload;
+    private CatalogSnapshot base;
+    private byte[] changesPayload;
+    private Path snapshotFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<MediaDetailsDTO> catalog = BenchmarkData.catalog(catalogSize, genreCardinality, 42);
+        payload = objectMapper.writeValueAsBytes(catalog);
+        base = new CatalogSnapshot(catalog, Instant.EPOCH);
+
+        // the same items with other genres and artists, as records of the changes endpoint
+        List<MediaDetailsDTO> changed = BenchmarkData.catalog(catalogSize, genreCardinality, 7);
+        List<Object> changes = new ArrayList<>();
+        for (int i = 0; i < catalogSize / 100; i++) {
+            MediaDetailsDTO media = changed.get(i * 100);
+            changes.add(i % 10 == 0 ? Map.of("id", media.id(), "deleted", true) : media);
+        }
+        changesPayload = objectMapper.writeValueAsBytes(changes);
+
+        snapshotFile = Files.createTempFile("catalog", ".bin");
+        CatalogSnapshotFile.write(snapshotFile, base, "\"v1\"", Instant.EPOCH);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshotFile);
+    }
+
+    @Benchmark
+    public CatalogSnapshot materialized() throws IOException {
+        List<MediaDetailsDTO> media = objectMapper.readValue(new ByteArrayInputStream(payload), MEDIA_LIST);
+        return new CatalogSnapshot(media, Instant.EPOCH);
+    }
+
+    @Benchmark
+    public CatalogSnapshot streaming() throws IOException {
+        CatalogSnapshot.Builder builder = new CatalogSnapshot.Builder(catalogSize);
+        MediaCatalogReader.read(new ByteArrayInputStream(payload), builder);
+        return builder.build(Instant.EPOCH);
+    }
+
+    @Benchmark
+    public CatalogSnapshot changes() throws IOException {
+        CatalogSnapshot.Builder changes = new CatalogSnapshot.Builder(base);
+        MediaCatalogReader.read(new ByteArrayInputStream(changesPayload), changes);
+        return changes.build(Instant.EPOCH);
+    }
+
+    @Benchmark
+    public CatalogSnapshot warmStart() throws IOException {
+        return CatalogSnapshotFile.read(snapshotFile).snapshot();
+    }
+}
@@ -0,0 +1,144 @@
+package se.edufy.recommendationservice.benchmarks;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import se.edufy.recommendationservice.clients.PlayClient;
+import se.edufy.recommendationservice.clients.RatingClient;
+import se.edufy.recommendationservice.clients.ReactivePlayClient;
+import se.edufy.recommendationservice.clients.ReactiveRatingClient;
+import se.edufy.recommendationservice.clients.StubGateway;
+import se.edufy.recommendationservice.services.UpstreamFetcher;
+import se.edufy.recommendationservice.services.UpstreamGuard;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * How many concurrent recommendation requests a fixed number of request threads (Tomcat's
+ * {@code server.tomcat.threads.max}) gets through when the gateway takes {@code latencyMillis}
+ * to answer. One operation is a burst of {@code requests} users arriving at once; capacity is
+ * {@code requests} divided by the time per operation.
+ *
+ * <p>{@code blocking} is the {@link UpstreamFetcher} path: the request thread waits for plays and
+ * ratings. {@code reactive} zips the two WebClient calls and hands the request thread back at
+ * once, like the {@code /reactive} endpoint. Scoring is left out; it is the same on both paths.
+ *
+ * <p>{@code mvn -Pjmh test-compile exec:exec -Djmh.args="ConcurrencyCapacityBenchmark"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 3)
+@Measurement(iterations = 5, time = 3)
+// the stub gateway keeps at most 200 idle connections by default, fewer than one reactive burst opens
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.maxIdleConnections=1000")
+@State(Scope.Benchmark)
+public class ConcurrencyCapacityBenchmark {
+
+    @Param({"blocking", "reactive"})
+    String path;
+
+    @Param({"8"})
+    int requestThreads;
+
+    @Param({"200"})
+    int requests;
+
+    @Param({"50"})
+    int latencyMillis;
+
+    private StubGateway gateway;
+    private ExecutorService requestPool;
+    private Jwt[] users;
+    private UpstreamFetcher fetcher;
+    private ReactivePlayClient reactivePlayClient;
+    private ReactiveRatingClient reactiveRatingClient;
+    private UpstreamGuard upstreamGuard;
+
+    @Setup
+    public void setUp() {
+        Duration latency = Duration.ofMillis(latencyMillis);
+        gateway = new StubGateway();
+        gateway.respond("/users/plays", new StubGateway.Response(200,
+                "[{\"mediaId\":1,\"playCount\":3},{\"mediaId\":2,\"playCount\":1}]", false, latency));
+
+        // distinct users, so no call is coalesced with another
+        users = new Jwt[requests];
+        for (int i = 0; i < requests; i++) {
+            String userId = "user-" + i;
+            users[i] = Jwt.withTokenValue("token").header("alg", "none").subject(userId).build();
+            gateway.respond("/ratings/user/" + userId, new StubGateway.Response(200,
+                    "[{\"id\":1,\"userId\":\"" + userId + "\",\"mediaId\":\"2\",\"liked\":true}]", false, latency));
+        }
+
+        // room for the whole burst, so the bulkhead does not cap either path
+        upstreamGuard = new UpstreamGuard(new SimpleMeterRegistry(), CircuitBreakerConfig.ofDefaults(),
+                BulkheadConfig.custom().maxConcurrentCalls(requests * 2).build(), Duration.ofMinutes(1));
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        RestClient restClient = RestClient.builder()
+                .requestFactory(new JdkClientHttpRequestFactory(httpClient))
+                .build();
+        fetcher = new UpstreamFetcher(new RatingClient(restClient, gateway.url()), new PlayClient(restClient, gateway.url()),
+                upstreamGuard, Duration.ofSeconds(10), Duration.ofSeconds(10));
+
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new JdkClientHttpConnector(httpClient))
+                .build();
+        reactivePlayClient = new ReactivePlayClient(webClient, gateway.url());
+        reactiveRatingClient = new ReactiveRatingClient(webClient, gateway.url());
+
+        requestPool = Executors.newFixedThreadPool(requestThreads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestPool.shutdownNow();
+        gateway.close();
+    }
+
+    @Benchmark
+    public int burst() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(requests);
+        AtomicInteger served = new AtomicInteger();
+
+        for (Jwt user : users) {
+            if ("blocking".equals(path)) {
+                requestPool.execute(() -> {
+                    try {
+                        served.addAndGet(fetcher.fetch(user).ratings().size());
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            } else {
+                requestPool.execute(() -> Mono.zip(
+                                upstreamGuard.call(UpstreamGuard.PLAYS, reactivePlayClient.getUserPlays(user)),
+                                upstreamGuard.call(UpstreamGuard.RATINGS,
+                                        reactiveRatingClient.getRatingsForUser(user.getSubject(), user)))
+                        .doFinally(signal -> done.countDown())
+                        .subscribe(zipped -> served.addAndGet(zipped.getT2().size())));
+            }
+        }
+
+        if (!done.await(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("burst did not complete");
+        }
+        if (served.get() != requests) {
+            throw new IllegalStateException("only " + served.get() + " of " + requests + " requests were served");
+        }
+        return served.get();
+    }
+}
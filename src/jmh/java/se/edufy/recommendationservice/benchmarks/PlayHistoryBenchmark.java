@@ -0,0 +1,120 @@
+package se.edufy.recommendationservice.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading the {@code /users/plays} payload as a {@code List<PlayDTO>} and walking it
+ * twice, once for the played bitset and once for the genre affinity of plays the stored profile
+ * misses, with reading it into a {@link PlayHistory} and doing both in one pass (step 1 of
+ * {@code recommend}). Run with {@code -prof gc}: {@code gc.alloc.rate.norm} is the heap
+ * allocated per history.
+ *
+ * <p>Half of the played media are in the stored profile, as for a returning user.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlayHistoryBenchmark {
+
+    private static final TypeReference<List<PlayDTO>> PLAY_LIST = new TypeReference<>() {};
+
+    @Param({"100", "5000"})
+    int historyLength;
+
+    @Param({"100000"})
+    int catalogSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private CatalogSnapshot catalog;
+    private byte[] payload;
+    private long[] profiled;
+
+    @Setup
+    public void setUp() throws IOException {
+        catalog = new CatalogSnapshot(BenchmarkData.catalog(catalogSize, 50, 42), Instant.now());
+        List<PlayDTO> plays = BenchmarkData.plays(catalogSize, historyLength, 7);
+        payload = objectMapper.writeValueAsBytes(plays);
+        profiled = plays.stream()
+                .limit(historyLength / 2)
+                .mapToLong(PlayDTO::mediaId)
+                .sorted()
+                .distinct()
+                .toArray();
+    }
+
+    @Benchmark
+    public void dtoList(Blackhole bh) throws IOException {
+        List<PlayDTO> plays = objectMapper.readValue(payload, PLAY_LIST);
+
+        BitSet playedMedia = new BitSet(catalog.size());
+        for (PlayDTO play : plays) {
+            int ordinal = play.mediaId() != null ? catalog.ordinalOf(play.mediaId()) : -1;
+            if (ordinal >= 0) {
+                playedMedia.set(ordinal);
+            }
+        }
+
+        double[] genreAffinity = new double[catalog.genreCount()];
+        for (PlayDTO play : plays) {
+            if (play.mediaId() == null || Arrays.binarySearch(profiled, play.mediaId()) >= 0) {
+                continue;
+            }
+            int ordinal = catalog.ordinalOf(play.mediaId());
+            if (ordinal >= 0) {
+                double weight = UserTasteProfile.playWeight(play.playCount() != null ? play.playCount() : 1);
+                for (int genre : catalog.genresOf(ordinal)) {
+                    genreAffinity[genre] += weight;
+                }
+            }
+        }
+        bh.consume(playedMedia);
+        bh.consume(genreAffinity);
+    }
+
+    @Benchmark
+    public void compactHistory(Blackhole bh) throws IOException {
+        PlayHistory plays = objectMapper.readValue(payload, PlayHistory.class);
+
+        BitSet playedMedia = new BitSet(catalog.size());
+        double[] genreAffinity = new double[catalog.genreCount()];
+        int next = 0;
+        for (int i = 0; i < plays.size(); i++) {
+            long mediaId = plays.mediaId(i);
+            int ordinal = catalog.ordinalOf(mediaId);
+            if (ordinal < 0) {
+                continue;
+            }
+            playedMedia.set(ordinal);
+
+            while (next < profiled.length && profiled[next] < mediaId) {
+                next++;
+            }
+            if (next < profiled.length && profiled[next] == mediaId) {
+                continue;
+            }
+            double weight = UserTasteProfile.playWeight(plays.playCount(i));
+            for (int genre : catalog.genresOf(ordinal)) {
+                genreAffinity[genre] += weight;
+            }
+        }
+        bh.consume(playedMedia);
+        bh.consume(genreAffinity);
+    }
+}
@@ -0,0 +1,71 @@
+package se.edufy.recommendationservice.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.services.AffinityScorer;
+import se.edufy.recommendationservice.services.CandidateSampler;
+import se.edufy.recommendationservice.services.TopKRanker;
+
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Step 8 of {@code recommend}: building the {@link AffinityScorer} and ranking the candidates
+ * of the whole catalog with the {@link TopKRanker}.
+ *
+ * <p>{@code mvn -Pjmh test-compile exec:exec -Djmh.args="RankingBenchmark -prof gc"}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RankingBenchmark {
+
+    @Param({"10000", "100000"})
+    int catalogSize;
+
+    @Param({"10", "100"})
+    int size;
+
+    @Param({"0.2"})
+    double exploration;
+
+    private CatalogSnapshot catalog;
+    private BitSet candidates;
+    private double[] genreAffinity;
+    private double[] artistAffinity;
+    private TopKRanker ranker;
+
+    @Setup
+    public void setUp() {
+        catalog = new CatalogSnapshot(BenchmarkData.catalog(catalogSize, 200, 42), Instant.now());
+
+        // a user with some history: every 50th item played
+        candidates = new BitSet(catalog.size());
+        candidates.set(0, catalog.size());
+        for (int ordinal = 0; ordinal < catalog.size(); ordinal += 50) {
+            candidates.clear(ordinal);
+        }
+
+        SplittableRandom random = new SplittableRandom(7);
+        genreAffinity = new double[catalog.genreCount()];
+        for (int i = 0; i < 30; i++) {
+            genreAffinity[random.nextInt(genreAffinity.length)] += 1 + random.nextInt(20);
+        }
+        artistAffinity = new double[catalog.artistCount()];
+        for (int i = 0; i < 20; i++) {
+            artistAffinity[random.nextInt(artistAffinity.length)] += 1;
+        }
+
+        ranker = new TopKRanker(new CandidateSampler());
+    }
+
+    @Benchmark
+    public int[] scoreAndRank() {
+        return ranker.rank(candidates, new AffinityScorer(catalog, genreAffinity, artistAffinity), size, exploration);
+    }
+}
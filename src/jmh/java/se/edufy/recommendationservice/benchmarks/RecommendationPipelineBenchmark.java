@@ -0,0 +1,194 @@
+package se.edufy.recommendationservice.benchmarks;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.client.RestClient;
+import se.edufy.recommendationservice.clients.MediaClient;
+import se.edufy.recommendationservice.clients.PlayClient;
+import se.edufy.recommendationservice.clients.RatingClient;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.PlayHistory;
+import se.edufy.recommendationservice.services.ActiveUsers;
+import se.edufy.recommendationservice.services.CandidateSampler;
+import se.edufy.recommendationservice.services.CooccurrenceModel;
+import se.edufy.recommendationservice.services.MediaCatalog;
+import se.edufy.recommendationservice.services.RecommendationCache;
+import se.edufy.recommendationservice.services.RecommendationMetrics;
+import se.edufy.recommendationservice.services.RecommendationPager;
+import se.edufy.recommendationservice.services.RecommendationService;
+import se.edufy.recommendationservice.services.TasteProfileService;
+import se.edufy.recommendationservice.services.TopKRanker;
+import se.edufy.recommendationservice.services.UpstreamFetcher;
+import se.edufy.recommendationservice.services.UpstreamGuard;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmark of {@link RecommendationService#recommend} with in-memory clients,
+ * so it measures the recommendation pipeline itself rather than the network. {@code nextPage}
+ * is a following page of a paginated request, served from the ranking of the first one.
+ *
+ * <p>Run with the gc profiler to get the allocation rate:
+ * {@code mvn -Pjmh test-compile exec:exec -Djmh.args="RecommendationPipelineBenchmark -prof gc"}
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecommendationPipelineBenchmark {
+
+    static final String USER_ID = "bench-user";
+
+    @Param({"10000", "100000"})
+    int catalogSize;
+
+    @Param({"50", "1000"})
+    int historyLength;
+
+    @Param({"20", "200"})
+    int genreCardinality;
+
+    // stage timers and histograms on, or switched off
+    @Param({"true", "false"})
+    boolean metrics;
+
+    private RecommendationCache recommendationCache;
+    private RecommendationService recommendationService;
+    private Jwt jwt;
+    private RecommendationPager recommendationPager;
+    private String secondPage;
+
+    @Setup
+    public void setUp() {
+        List<MediaDetailsDTO> catalog = BenchmarkData.catalog(catalogSize, genreCardinality, 42);
+        PlayHistory plays = PlayHistory.of(BenchmarkData.plays(catalogSize, historyLength, 7));
+        List<RatingDTO> ratings = BenchmarkData.ratings(USER_ID, catalogSize, historyLength / 5, 11);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        UpstreamGuard upstreamGuard = new UpstreamGuard(meterRegistry, CircuitBreakerConfig.ofDefaults(),
+                BulkheadConfig.ofDefaults(), Duration.ofMinutes(1));
+
+        MediaCatalog mediaCatalog = new MediaCatalog(new StubMediaClient(catalog), upstreamGuard, meterRegistry);
+        mediaCatalog.refresh();
+
+        UpstreamFetcher fetcher = new UpstreamFetcher(
+                new StubRatingClient(ratings), new StubPlayClient(plays), upstreamGuard,
+                Duration.ofSeconds(5), Duration.ofSeconds(5));
+
+        recommendationCache = new RecommendationCache(meterRegistry, 100, Duration.ofMinutes(1), false);
+        recommendationService = new RecommendationService(fetcher, mediaCatalog,
+                new TopKRanker(new CandidateSampler()), new NoCooccurrences(meterRegistry),
+                recommendationCache, new NoTasteProfiles(mediaCatalog),
+                new RecommendationMetrics(meterRegistry, ObservationRegistry.NOOP, metrics),
+                new ActiveUsers(100, Duration.ofMinutes(5)));
+        jwt = Jwt.withTokenValue("benchmark")
+                .header("alg", "none")
+                .subject(USER_ID)
+                .build();
+
+        recommendationPager = new RecommendationPager(recommendationService, meterRegistry, 200, 100,
+                Duration.ofHours(1));
+        secondPage = recommendationPager.page(jwt, RecommendationService.Options.DEFAULT, null).nextCursor();
+    }
+
+    @Benchmark
+    public RecommendationService.Recommendations recommend() {
+        // measure the full pipeline, not a per-user cache hit
+        recommendationCache.invalidate(USER_ID);
+        return recommendationService.recommend(jwt);
+    }
+
+    @Benchmark
+    public RecommendationPager.Page nextPage() {
+        return recommendationPager.page(jwt, RecommendationService.Options.DEFAULT, secondPage);
+    }
+
+    static final class StubPlayClient extends PlayClient {
+
+        private final PlayHistory plays;
+
+        StubPlayClient(PlayHistory plays) {
+            super(RestClient.create(), "http://localhost");
+            this.plays = plays;
+        }
+
+        @Override
+        public PlayHistory getUserPlays(Jwt jwt) {
+            return plays;
+        }
+    }
+
+    static final class StubRatingClient extends RatingClient {
+
+        private final List<RatingDTO> ratings;
+
+        StubRatingClient(List<RatingDTO> ratings) {
+            super(RestClient.create(), "http://localhost");
+            this.ratings = ratings;
+        }
+
+        @Override
+        public List<RatingDTO> getRatingsForUser(String userId, Jwt jwt) {
+            return ratings;
+        }
+    }
+
+    static final class StubMediaClient extends MediaClient {
+
+        private final List<MediaDetailsDTO> media;
+
+        StubMediaClient(List<MediaDetailsDTO> media) {
+            super(RestClient.create(), request -> null, "http://localhost");
+            this.media = media;
+        }
+
+        @Override
+        public Fetch streamAllMedia(CatalogSnapshot.Builder builder, CatalogVersion version) {
+            media.forEach(builder::add);
+            return new Fetch(Status.LOADED, media.size(), CatalogVersion.NONE);
+        }
+    }
+
+    /**
+     * No stored profiles and no writes: every request derives genres from the play history.
+     */
+    static final class NoTasteProfiles extends TasteProfileService {
+
+        NoTasteProfiles(MediaCatalog mediaCatalog) {
+            super(null, null, mediaCatalog, new SimpleMeterRegistry(), 1, 1, 1);
+        }
+
+        @Override
+        public Optional<UserTasteProfile> find(String userId) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void reconcile(String userId, UserTasteProfile profile, PlayHistory plays,
+                              List<RatingDTO> ratings, CatalogSnapshot catalog) {
+        }
+    }
+
+    /**
+     * No co-occurrence table: the file does not exist, so nothing is mapped.
+     */
+    static final class NoCooccurrences extends CooccurrenceModel {
+
+        NoCooccurrences(SimpleMeterRegistry meterRegistry) {
+            super(null, meterRegistry, Path.of("target/no-cooccurrence.bin"), 20, 2, 200, 500);
+        }
+    }
+}
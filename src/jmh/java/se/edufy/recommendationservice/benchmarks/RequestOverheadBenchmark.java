@@ -0,0 +1,125 @@
+package se.edufy.recommendationservice.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import se.edufy.recommendationservice.utils.JwtAuthConverter;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Per-request overhead before any recommendation work: converting the JWT to an authentication
+ * and the request's log lines. {@code legacy} prints the claims and roles to stdout and logs at
+ * info on every request; {@code cached} is the shipped {@link JwtAuthConverter} with the request
+ * logs at debug. stdout is redirected to a file so the terminal is not the bottleneck.
+ *
+ * <p>{@code mvn -Pjmh test-compile exec:exec -Djmh.args="RequestOverheadBenchmark -t 4"}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestOverheadBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    @Param({"legacy", "cached"})
+    String converter;
+
+    private Jwt jwt;
+    private LegacyConverter legacy;
+    private JwtAuthConverter cached;
+    private PrintStream stdout;
+    private Path stdoutFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        stdout = System.out;
+        stdoutFile = Files.createTempFile("request-overhead", ".out");
+        System.setOut(new PrintStream(new FileOutputStream(stdoutFile.toFile()), true));
+
+        jwt = Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .jti("6f1c2a9e-token")
+                .subject("3b2a1f0e-user")
+                .claim("preferred_username", "alice")
+                .claim("scope", "profile email")
+                .claim("resource_access", Map.of("Edufy_Client", Map.of("roles", List.of("user", "listener"))))
+                .build();
+        legacy = new LegacyConverter();
+        cached = new JwtAuthConverter(new SimpleMeterRegistry(), "Edufy_Client", "preferred_username",
+                10_000, Duration.ofMinutes(5));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.out.close();
+        System.setOut(stdout);
+        Files.deleteIfExists(stdoutFile);
+    }
+
+    @Benchmark
+    public AbstractAuthenticationToken request() {
+        if ("legacy".equals(converter)) {
+            AbstractAuthenticationToken token = legacy.convert(jwt);
+            log.info("Fetching recommendations for user {}", jwt.getSubject());
+            log.info("User {} has {} played media", jwt.getSubject(), 42);
+            return token;
+        }
+        AbstractAuthenticationToken token = cached.convert(jwt);
+        log.debug("Fetching recommendations for user {}", jwt.getSubject());
+        log.debug("User {} has {} played media", jwt.getSubject(), 42);
+        return token;
+    }
+
+    /**
+     * The converter as it was: prints the claims and roles and derives the roles on every call.
+     */
+    static final class LegacyConverter {
+
+        private final JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter =
+                new JwtGrantedAuthoritiesConverter();
+
+        AbstractAuthenticationToken convert(Jwt source) {
+            System.out.println("JWT claims: " + source.getClaims());
+
+            Collection<GrantedAuthority> authorities = Stream.concat(
+                    jwtGrantedAuthoritiesConverter.convert(source).stream(),
+                    roles(source).stream()
+            ).collect(Collectors.toSet());
+
+            System.out.println("Extracted roles: " + authorities);
+
+            return new JwtAuthenticationToken(source, authorities, source.getClaim("preferred_username"));
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Collection<GrantedAuthority> roles(Jwt jwt) {
+            Map<String, Object> resourceAccess = jwt.getClaim("resource_access");
+            Map<String, Object> resource = (Map<String, Object>) resourceAccess.get("Edufy_Client");
+            return ((Collection<String>) resource.get("roles")).stream()
+                    .map(role -> (GrantedAuthority) new SimpleGrantedAuthority("ROLE_" + role))
+                    .collect(Collectors.toSet());
+        }
+    }
+}
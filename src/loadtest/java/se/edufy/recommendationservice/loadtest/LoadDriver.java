@@ -0,0 +1,178 @@
+package se.edufy.recommendationservice.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests for random users at a fixed rate, without waiting for earlier answers, the way
+ * independent clients arrive. Latency is measured from when a request was due rather than when
+ * it was sent, so a driver that falls behind shows up as latency instead of hiding it.
+ */
+final class LoadDriver {
+
+    // the endpoint sets this when histories could not be fetched and the answer uses stored profiles
+    private static final String DEGRADED_HEADER = "X-Recommendations-Degraded";
+
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final HttpClient client;
+    private final URI target;
+    private final List<String> tokens;
+    private final int maxInFlight;
+
+    LoadDriver(URI target, List<String> tokens, int maxInFlight) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.target = target;
+        this.tokens = tokens;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Runs at {@code rps} for {@code duration}, then waits for the requests still in flight.
+     *
+     * @param progress gets a line every five seconds; {@code null} for none
+     */
+    Result run(int rps, Duration duration, PrintStream progress) throws InterruptedException {
+        Recording recording = new Recording();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        long period = TimeUnit.SECONDS.toNanos(1) / rps;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        long nextProgress = start + PROGRESS_INTERVAL;
+
+        for (long n = 0; ; n++) {
+            long due = start + n * period;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            if (progress != null && due >= nextProgress) {
+                progress.printf("  %3ds: %d sent, %d answered, %d in flight%n",
+                        TimeUnit.NANOSECONDS.toSeconds(due - start), recording.sent.sum(),
+                        recording.latencies.getTotalCount(), maxInFlight - inFlight.availablePermits());
+                nextProgress += PROGRESS_INTERVAL;
+            }
+
+            if (!inFlight.tryAcquire()) {
+                recording.dropped.increment();
+                continue;
+            }
+            recording.sent.increment();
+            String token = tokens.get(ThreadLocalRandom.current().nextInt(tokens.size()));
+            HttpRequest request = HttpRequest.newBuilder(target)
+                    .header("Authorization", "Bearer " + token)
+                    .timeout(Duration.ofSeconds(30))
+                    .GET()
+                    .build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        recording.answered(due, response, failure);
+                        inFlight.release();
+                    });
+        }
+        long sendingEnded = System.nanoTime();
+
+        if (!inFlight.tryAcquire(maxInFlight, 1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException((maxInFlight - inFlight.availablePermits())
+                    + " requests still unanswered a minute after the run");
+        }
+        return recording.result(Duration.ofNanos(sendingEnded - start));
+    }
+
+    private static final class Recording {
+
+        // microseconds, up to a minute at 3 significant digits
+        private final ConcurrentHistogram latencies = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final LongAdder sent = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder degraded = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        void answered(long due, HttpResponse<?> response, Throwable failure) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due);
+            latencies.recordValue(Math.min(micros, latencies.getHighestTrackableValue()));
+            if (failure != null) {
+                failed.increment();
+                return;
+            }
+            statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+            if (response.headers().firstValue(DEGRADED_HEADER).isPresent()) {
+                degraded.increment();
+            }
+        }
+
+        Result result(Duration elapsed) {
+            Map<Integer, Long> byStatus = new TreeMap<>();
+            statuses.forEach((status, count) -> byStatus.put(status, count.sum()));
+            return new Result(elapsed, sent.sum(), dropped.sum(), failed.sum(), degraded.sum(), byStatus,
+                    latencies.copy());
+        }
+    }
+
+    /**
+     * @param elapsed  time spent sending, which the throughput is relative to
+     * @param dropped  requests not sent because {@code max-in-flight} were outstanding
+     * @param failed   requests without a response: connection errors and timeouts
+     * @param statuses responses by HTTP status
+     */
+    record Result(
+            Duration elapsed,
+            long sent,
+            long dropped,
+            long failed,
+            long degraded,
+            Map<Integer, Long> statuses,
+            Histogram latencies
+    ) {
+
+        long succeeded() {
+            return statuses.getOrDefault(200, 0L);
+        }
+
+        /**
+         * @param rps the rate the requests were due at
+         */
+        void print(PrintStream out, int rps) {
+            double seconds = elapsed.toNanos() / 1e9;
+            out.printf("Requests:   %d sent, %d dropped at max-in-flight, %d without a response%n", sent, dropped, failed);
+            out.printf("Statuses:   %s, %d degraded%n", statuses, degraded);
+            out.printf("Throughput: %.1f req/s sent, %.1f req/s answered with 200%n", sent / seconds, succeeded() / seconds);
+            if ((sent + dropped) / seconds < rps * 0.95) {
+                out.printf("            the driver fell behind %d req/s: the machine is saturated, so latency "
+                        + "includes time requests waited to be sent%n", rps);
+            }
+            out.printf("Latency:    p50 %s  p90 %s  p99 %s  p99.9 %s  max %s%n",
+                    millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                    millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+                    millis(latencies.getMaxValue()));
+        }
+
+        private static String millis(long micros) {
+            return String.format("%.2f ms", micros / 1000.0);
+        }
+    }
+}
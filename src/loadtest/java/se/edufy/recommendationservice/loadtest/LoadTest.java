@@ -0,0 +1,106 @@
+package se.edufy.recommendationservice.loadtest;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import se.edufy.recommendationservice.RecommendationServiceApplication;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Runs the whole service against local stub upstreams and drives its recommendation endpoint at
+ * a target rate, to see what a change does to throughput and latency end to end without
+ * Keycloak, the gateway or MySQL. The service runs with the {@code dev} and {@code loadtest}
+ * profiles, its gateway and token endpoint pointed at a {@link LoadTestGateway}, and accepts
+ * tokens from a {@link TokenMinter}.
+ *
+ * <p>The service, the stubs and the driver share one JVM and machine, so compare runs with each
+ * other rather than with production numbers.
+ *
+ * <p>{@code mvn -Ploadtest test-compile exec:exec -Dloadtest.args="rps=200 duration=60s plays.error-rate=0.05"}
+ * — see {@link LoadTestOptions} for the settings.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        Path dataDir = Files.createTempDirectory("loadtest");
+        TokenMinter minter = new TokenMinter();
+
+        try (LoadTestGateway gateway = new LoadTestGateway(options);
+             ConfigurableApplicationContext service = start(options, gateway, minter, dataDir)) {
+
+            int port = ((WebServerApplicationContext) service).getWebServer().getPort();
+            String resourceId = service.getEnvironment().getRequiredProperty("jwt.auth.converter.resource-id.name");
+            // tokens outlive the run, so every request of a user carries the same one, as with a real client
+            Duration validity = options.warmup().plus(options.duration()).plusHours(1);
+            List<String> tokens = new ArrayList<>(options.users());
+            for (int i = 0; i < options.users(); i++) {
+                tokens.add(minter.mint("loadtest-user-" + i, resourceId, validity));
+            }
+            LoadDriver driver = new LoadDriver(URI.create("http://127.0.0.1:" + port + options.path()),
+                    tokens, options.maxInFlight());
+
+            System.out.printf("%nWarming up at %d req/s for %s%n", options.rps(), options.warmup());
+            driver.run(options.rps(), options.warmup(), null);
+
+            System.out.printf("Measuring %s at %d req/s for %s, %d users%n",
+                    options.path(), options.rps(), options.duration(), options.users());
+            LoadDriver.Result result = driver.run(options.rps(), options.duration(), System.out);
+
+            System.out.println();
+            result.print(System.out, options.rps());
+            // warm-up and measurement together; calls per request show what the caches saved
+            System.out.printf("Upstream:   media %s, plays %s, ratings %s (calls/failures, warm-up included)%n",
+                    format(gateway.media()), format(gateway.plays()), format(gateway.ratings()));
+        } finally {
+            delete(dataDir);
+        }
+    }
+
+    private static ConfigurableApplicationContext start(LoadTestOptions options, LoadTestGateway gateway,
+                                                        TokenMinter minter, Path dataDir) {
+        // command-line properties, so they override application.yml and the active profile
+        List<String> properties = new ArrayList<>(List.of(
+                "--spring.profiles.active=dev,loadtest",
+                "--server.port=0",
+                "--recommendation.gateway.base-url=" + gateway.url(),
+                "--spring.security.oauth2.client.provider.keycloak.token-uri=" + gateway.tokenUri(),
+                // a fresh catalog file per run, so a warm start never serves a catalog of another size
+                "--recommendation.catalog.snapshot-file=" + dataDir.resolve("catalog.bin"),
+                "--recommendation.cooccurrence.file=" + dataDir.resolve("cooccurrence.bin")
+        ));
+        properties.addAll(options.serviceArgs());
+
+        return new SpringApplicationBuilder(RecommendationServiceApplication.class)
+                // registered before the context refreshes, so the decoder that fetches Keycloak's keys backs off
+                .initializers(context -> context.getBeanFactory().registerSingleton("jwtDecoder", minter.decoder()))
+                .run(properties.toArray(String[]::new));
+    }
+
+    private static String format(LoadTestGateway.Calls calls) {
+        return calls.total() + "/" + calls.failed();
+    }
+
+    private static void delete(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
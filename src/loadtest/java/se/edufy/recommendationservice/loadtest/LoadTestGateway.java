@@ -0,0 +1,221 @@
+package se.edufy.recommendationservice.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stand-in for the gateway and Keycloak's token endpoint under load: serves a synthetic catalog,
+ * play histories and ratings with the latency, jitter and error rate of each upstream in the
+ * {@link LoadTestOptions}.
+ *
+ * <p>Histories are generated once, in {@value #VARIANTS} variants per upstream, and picked by
+ * the user's token or id, so a user gets the same history on every call without the stub
+ * spending CPU on JSON while the service is measured.
+ */
+final class LoadTestGateway implements AutoCloseable {
+
+    private static final int VARIANTS = 64;
+    private static final int GENRES = 40;
+    private static final byte[] NOT_FOUND = "{\"error\":\"not found\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FAILED = "{\"error\":\"injected failure\"}".getBytes(StandardCharsets.UTF_8);
+    // what the service's client-credentials grant gets for the catalog calls
+    private static final byte[] SERVICE_TOKEN =
+            "{\"access_token\":\"loadtest\",\"token_type\":\"Bearer\",\"expires_in\":3600}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Calls and injected failures of one upstream.
+     */
+    record Calls(
+            long total,
+            long failed
+    ) {}
+
+    private final HttpServer server;
+    private final byte[] catalog;
+    private final byte[][] plays;
+    private final byte[][] ratings;
+    private final Upstream media;
+    private final Upstream playsUpstream;
+    private final Upstream ratingsUpstream;
+
+    LoadTestGateway(LoadTestOptions options) {
+        ObjectMapper json = new ObjectMapper();
+        SplittableRandom random = new SplittableRandom(42);
+        this.catalog = write(json, catalog(options.catalogSize(), random));
+        this.plays = new byte[VARIANTS][];
+        this.ratings = new byte[VARIANTS][];
+        for (int v = 0; v < VARIANTS; v++) {
+            plays[v] = write(json, plays(options.catalogSize(), options.playsPerUser(), random));
+            ratings[v] = write(json, ratings(options.catalogSize(), options.ratingsPerUser(), random));
+        }
+        this.media = new Upstream(options.media());
+        this.playsUpstream = new Upstream(options.plays());
+        this.ratingsUpstream = new Upstream(options.ratings());
+
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/", this::handle);
+        // a delayed response must not hold up the others
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    /**
+     * Base URL that replaces {@code http://gateway:4646/edufy/v1}.
+     */
+    String url() {
+        return base() + "/edufy/v1";
+    }
+
+    String tokenUri() {
+        return base() + "/token";
+    }
+
+    Calls media() {
+        return media.calls();
+    }
+
+    Calls plays() {
+        return playsUpstream.calls();
+    }
+
+    Calls ratings() {
+        return ratingsUpstream.calls();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private String base() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/token")) {
+            send(exchange, 200, SERVICE_TOKEN);
+        } else if (path.equals("/edufy/v1/media/details")) {
+            media.answer(exchange, catalog);
+        } else if (path.equals("/edufy/v1/users/plays")) {
+            playsUpstream.answer(exchange, plays[variant(exchange.getRequestHeaders().getFirst("Authorization"))]);
+        } else if (path.startsWith("/edufy/v1/ratings/user/")) {
+            ratingsUpstream.answer(exchange, ratings[variant(path)]);
+        } else {
+            // includes /media/details/changes, so the catalog is refreshed with full downloads
+            send(exchange, 404, NOT_FOUND);
+        }
+    }
+
+    private static int variant(String user) {
+        return user == null ? 0 : Math.floorMod(user.hashCode(), VARIANTS);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static final class Upstream {
+
+        private final LoadTestOptions.Upstream settings;
+        private final LongAdder total = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        Upstream(LoadTestOptions.Upstream settings) {
+            this.settings = settings;
+        }
+
+        void answer(HttpExchange exchange, byte[] body) throws IOException {
+            total.increment();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long latency = settings.latency().toNanos();
+            long delay = latency + (long) (latency * settings.jitter() * (2 * random.nextDouble() - 1));
+            if (delay > 0) {
+                try {
+                    Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (random.nextDouble() < settings.errorRate()) {
+                failed.increment();
+                send(exchange, 500, FAILED);
+            } else {
+                send(exchange, 200, body);
+            }
+        }
+
+        Calls calls() {
+            return new Calls(total.sum(), failed.sum());
+        }
+    }
+
+    private static List<MediaDetailsDTO> catalog(int size, SplittableRandom random) {
+        int artistCount = Math.max(1, size / 10);
+        List<MediaDetailsDTO> media = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            List<String> genres = new ArrayList<>(3);
+            for (int g = 1 + random.nextInt(3); g > 0; g--) {
+                String genre = "Genre " + random.nextInt(GENRES);
+                if (!genres.contains(genre)) {
+                    genres.add(genre);
+                }
+            }
+            long artistId = 1 + random.nextInt(artistCount);
+            media.add(new MediaDetailsDTO(id, "Media " + id, genres,
+                    List.of(new ArtistDTO(artistId, "Artist " + artistId))));
+        }
+        return media;
+    }
+
+    private static List<PlayDTO> plays(int catalogSize, int count, SplittableRandom random) {
+        List<PlayDTO> plays = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            plays.add(new PlayDTO(1L + random.nextInt(catalogSize), 1 + random.nextInt(20)));
+        }
+        return plays;
+    }
+
+    private static List<RatingDTO> ratings(int catalogSize, int count, SplittableRandom random) {
+        List<RatingDTO> ratings = new ArrayList<>(count);
+        for (long i = 0; i < count; i++) {
+            ratings.add(new RatingDTO(i, null, Long.toString(1L + random.nextInt(catalogSize)), random.nextBoolean()));
+        }
+        return ratings;
+    }
+
+    private static byte[] write(ObjectMapper json, Object value) {
+        try {
+            return json.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package se.edufy.recommendationservice.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of a load-test run, given as {@code name=value} arguments. Arguments starting with
+ * {@code --} are passed on to the service as Spring properties, so a run can try a setting
+ * such as {@code --recommendation.cache.ttl=0s} without editing application.yml.
+ *
+ * @param rps         requests per second the driver sends, whether or not earlier ones have
+ *                    been answered
+ * @param maxInFlight requests outstanding at once; further ones are counted as dropped
+ * @param path        request path and query of the recommendation endpoint
+ */
+record LoadTestOptions(
+        int rps,
+        Duration duration,
+        Duration warmup,
+        int users,
+        int maxInFlight,
+        String path,
+        int catalogSize,
+        int playsPerUser,
+        int ratingsPerUser,
+        Upstream media,
+        Upstream plays,
+        Upstream ratings,
+        List<String> serviceArgs
+) {
+
+    /**
+     * How one stub upstream answers.
+     *
+     * @param jitter    fraction of {@code latency} a response is randomly faster or slower by
+     * @param errorRate fraction of requests answered with 500
+     */
+    record Upstream(
+            Duration latency,
+            double jitter,
+            double errorRate
+    ) {}
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        List<String> serviceArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                serviceArgs.add(arg);
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 1) {
+                throw new IllegalArgumentException("Expected name=value or --property=value but got " + arg);
+            }
+            values.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+
+        Reader reader = new Reader(values);
+        LoadTestOptions options = new LoadTestOptions(
+                reader.integer("rps", 100),
+                reader.duration("duration", "30s"),
+                reader.duration("warmup", "10s"),
+                reader.integer("users", 1000),
+                reader.integer("max-in-flight", 2000),
+                reader.string("path", "/edufy/v1/recommendations?size=10"),
+                reader.integer("catalog-size", 5000),
+                reader.integer("plays-per-user", 50),
+                reader.integer("ratings-per-user", 20),
+                reader.upstream("media", "50ms"),
+                reader.upstream("plays", "20ms"),
+                reader.upstream("ratings", "20ms"),
+                List.copyOf(serviceArgs)
+        );
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + values.keySet());
+        }
+        if (options.rps() <= 0 || options.users() <= 0 || options.maxInFlight() <= 0) {
+            throw new IllegalArgumentException("rps, users and max-in-flight must be positive");
+        }
+        return options;
+    }
+
+    // removes every option it reads, so whatever is left over was misspelled
+    private record Reader(Map<String, String> values) {
+
+        String string(String name, String defaultValue) {
+            String value = values.remove(name);
+            return value != null ? value : defaultValue;
+        }
+
+        int integer(String name, int defaultValue) {
+            String value = values.remove(name);
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        }
+
+        double fraction(String name, double defaultValue) {
+            String value = values.remove(name);
+            double fraction = value != null ? Double.parseDouble(value) : defaultValue;
+            if (fraction < 0 || fraction > 1) {
+                throw new IllegalArgumentException(name + " must be between 0 and 1");
+            }
+            return fraction;
+        }
+
+        Duration duration(String name, String defaultValue) {
+            return DurationStyle.detectAndParse(string(name, defaultValue));
+        }
+
+        Upstream upstream(String name, String defaultLatency) {
+            return new Upstream(
+                    duration(name + ".latency", defaultLatency),
+                    fraction(name + ".jitter", 0.5),
+                    fraction(name + ".error-rate", 0.0)
+            );
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package se.edufy.recommendationservice.loadtest;
+
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Signs user tokens shaped like Keycloak's with a key generated for the run. The service gets
+ * {@link #decoder()} instead of the one that fetches Keycloak's keys, so the signature is still
+ * verified on every request, only against this key.
+ */
+final class TokenMinter {
+
+    private final NimbusJwtEncoder encoder;
+    private final JwtDecoder decoder;
+
+    TokenMinter() {
+        KeyPair keyPair;
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            keyPair = generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        RSAKey key = new RSAKey.Builder(publicKey)
+                .privateKey(keyPair.getPrivate())
+                .keyID(UUID.randomUUID().toString())
+                .build();
+        this.encoder = new NimbusJwtEncoder(new ImmutableJWKSet<>(new JWKSet(key)));
+        this.decoder = NimbusJwtDecoder.withPublicKey(publicKey).build();
+    }
+
+    JwtDecoder decoder() {
+        return decoder;
+    }
+
+    /**
+     * @param resourceId the client whose roles the service reads, {@code jwt.auth.converter.resource-id.name}
+     */
+    String mint(String userId, String resourceId, Duration validity) {
+        Instant now = Instant.now();
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .issuer("loadtest")
+                .subject(userId)
+                .id(UUID.randomUUID().toString())
+                .issuedAt(now)
+                .expiresAt(now.plus(validity))
+                .claim("preferred_username", userId)
+                .claim("scope", "profile email")
+                .claim("resource_access", Map.of(resourceId, Map.of("roles", List.of("user"))))
+                .build();
+        JwsHeader header = JwsHeader.with(SignatureAlgorithm.RS256).build();
+        return encoder.encode(JwtEncoderParameters.from(header, claims)).getTokenValue();
+    }
+}
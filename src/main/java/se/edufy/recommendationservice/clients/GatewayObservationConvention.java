@@ -0,0 +1,23 @@
+package se.edufy.recommendationservice.clients;
+
+import io.micrometer.common.KeyValue;
+import org.springframework.http.client.observation.ClientRequestObservationContext;
+import org.springframework.http.client.observation.DefaultClientRequestObservationConvention;
+
+/**
+ * Tags {@code http.client.requests} with the name of the calling client instead of the host.
+ * All gateway clients share one host, so the default tag cannot tell them apart.
+ */
+public class GatewayObservationConvention extends DefaultClientRequestObservationConvention {
+
+    private final KeyValue clientName;
+
+    public GatewayObservationConvention(String clientName) {
+        this.clientName = KeyValue.of("client.name", clientName);
+    }
+
+    @Override
+    protected KeyValue clientName(ClientRequestObservationContext context) {
+        return clientName;
+    }
+}
@@ -0,0 +1,104 @@
+package se.edufy.recommendationservice.clients;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the {@code /media/details} payload token by token and feeds every record straight
+ * into a {@link CatalogSnapshot.Builder}, so the whole catalog is never held as a list of DTOs.
+ * The same format carries catalog changes, where {@code "deleted": true} marks a removal.
+ * Unknown fields are skipped.
+ */
+public final class MediaCatalogReader {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private MediaCatalogReader() {
+    }
+
+    /**
+     * @return the number of media records read, including duplicates the builder dropped
+     */
+    public static int read(InputStream body, CatalogSnapshot.Builder builder) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.VALUE_NULL) {
+                return 0;
+            }
+            expect(parser, JsonToken.START_ARRAY);
+
+            int count = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                expect(parser, JsonToken.START_OBJECT);
+                readMedia(parser, builder);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static void readMedia(JsonParser parser, CatalogSnapshot.Builder builder) throws IOException {
+        builder.beginMedia();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            switch (field) {
+                case "id" -> builder.id(parser.getValueAsLong());
+                case "title" -> builder.title(parser.getValueAsString());
+                case "genres" -> readGenres(parser, builder);
+                case "artists" -> readArtists(parser, builder);
+                case "deleted" -> builder.deleted(parser.getValueAsBoolean());
+                default -> parser.skipChildren();
+            }
+        }
+        builder.endMedia();
+    }
+
+    private static void readGenres(JsonParser parser, CatalogSnapshot.Builder builder) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            builder.genre(parser.getValueAsString());
+            parser.skipChildren();
+        }
+    }
+
+    private static void readArtists(JsonParser parser, CatalogSnapshot.Builder builder) throws IOException {
+        expect(parser, JsonToken.START_ARRAY);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            expect(parser, JsonToken.START_OBJECT);
+            Long id = null;
+            String name = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+
+                switch (field) {
+                    case "id" -> id = parser.getValueAsLong();
+                    case "name" -> name = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+            builder.artist(id, name);
+        }
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected) throws JsonParseException {
+        if (parser.currentToken() != expected) {
+            throw new JsonParseException(parser,
+                    "Expected " + expected + " in media catalog but found " + parser.currentToken());
+        }
+    }
+}
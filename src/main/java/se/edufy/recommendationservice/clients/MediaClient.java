@@ -1,30 +1,150 @@
 package se.edufy.recommendationservice.clients;
 
-import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.web.client.OAuth2ClientHttpRequestInterceptor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
-import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import org.springframework.web.client.RestClientResponseException;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
 
-import java.util.List;
+import java.time.Instant;
+import java.util.Set;
 
 @Service
 public class MediaClient {
 
+    // the catalog is shared by all users, so it is fetched with the service's own client-credentials token
+    public static final String SERVICE_REGISTRATION_ID = "recommendation-service";
+
+    // what a gateway without the changes endpoint answers with
+    private static final Set<HttpStatus> CHANGES_UNSUPPORTED =
+            Set.of(HttpStatus.NOT_FOUND, HttpStatus.METHOD_NOT_ALLOWED, HttpStatus.NOT_IMPLEMENTED);
+
     private final RestClient restClient;
 
-    public MediaClient(RestClient  restClient) {
+    public MediaClient(
+            RestClient restClient,
+            OAuth2AuthorizedClientManager authorizedClientManager,
+            @Value("${recommendation.gateway.base-url:http://gateway:4646/edufy/v1}") String gatewayUrl
+    ) {
+        OAuth2ClientHttpRequestInterceptor serviceToken =
+                new OAuth2ClientHttpRequestInterceptor(authorizedClientManager);
+        serviceToken.setClientRegistrationIdResolver(request -> SERVICE_REGISTRATION_ID);
+
         this.restClient = restClient
                 .mutate()
-                .baseUrl("http://gateway:4646/edufy/v1/media")
+                .baseUrl(gatewayUrl + "/media")
+                .observationConvention(new GatewayObservationConvention("media"))
+                .requestInterceptor(serviceToken)
                 .build();
     }
 
-    public List<MediaDetailsDTO> getAllMedia(Jwt jwt) {
+    /**
+     * The validators the gateway sent with a catalog response, either of which may be missing.
+     */
+    public record CatalogVersion(
+            String etag,
+            Instant lastModified
+    ) {
+        public static final CatalogVersion NONE = new CatalogVersion(null, null);
+    }
+
+    public enum Status {
+        LOADED,
+        NOT_MODIFIED,
+        // the gateway has no changes endpoint
+        UNSUPPORTED
+    }
+
+    /**
+     * @param records media records in the response
+     * @param version validators of the catalog as of this response; for {@code NOT_MODIFIED}
+     *                the ones that were sent
+     */
+    public record Fetch(
+            Status status,
+            int records,
+            CatalogVersion version
+    ) {}
+
+    /**
+     * Streams the whole catalog into {@code builder} while the response is still arriving,
+     * instead of materializing it as a list first. With a known {@code version} the request is
+     * conditional, and an unchanged catalog is answered with {@code 304 Not Modified} and no body.
+     */
+    public Fetch streamAllMedia(CatalogSnapshot.Builder builder, CatalogVersion version) {
         return restClient.get()
                 .uri("/details")
-                .header("Authorization", "Bearer " + jwt.getTokenValue())
-                .retrieve()
-                .body(new ParameterizedTypeReference<List<MediaDetailsDTO>>() {});
+                .accept(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    if (version.etag() != null) {
+                        headers.setIfNoneMatch(version.etag());
+                    }
+                    if (version.lastModified() != null) {
+                        headers.setIfModifiedSince(version.lastModified());
+                    }
+                })
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                        return new Fetch(Status.NOT_MODIFIED, 0, version);
+                    }
+                    if (response.getStatusCode().isError()) {
+                        throw failed(response.getStatusCode(), response.getStatusText(), response.getHeaders());
+                    }
+                    int records = MediaCatalogReader.read(response.getBody(), builder);
+                    return new Fetch(Status.LOADED, records, versionOf(response.getHeaders()));
+                });
+    }
+
+    /**
+     * Streams the media added, changed or deleted since {@code version.lastModified()} into a
+     * builder that applies them to the current snapshot. Deleted media come as records with
+     * {@code "deleted": true}.
+     */
+    public Fetch streamChangedMedia(CatalogSnapshot.Builder changes, CatalogVersion version) {
+        return restClient.get()
+                .uri(uri -> uri.path("/details/changes")
+                        .queryParam("since", version.lastModified())
+                        .build())
+                .accept(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    if (version.etag() != null) {
+                        headers.setIfNoneMatch(version.etag());
+                    }
+                })
+                .exchange((request, response) -> {
+                    if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED)) {
+                        return new Fetch(Status.NOT_MODIFIED, 0, version);
+                    }
+                    if (CHANGES_UNSUPPORTED.stream().anyMatch(response.getStatusCode()::isSameCodeAs)) {
+                        return new Fetch(Status.UNSUPPORTED, 0, version);
+                    }
+                    if (response.getStatusCode().isError()) {
+                        throw failed(response.getStatusCode(), response.getStatusText(), response.getHeaders());
+                    }
+                    int records = MediaCatalogReader.read(response.getBody(), changes);
+                    return new Fetch(Status.LOADED, records, versionOf(response.getHeaders()));
+                });
+    }
+
+    private static CatalogVersion versionOf(HttpHeaders headers) {
+        long lastModified = headers.getLastModified();
+        return new CatalogVersion(headers.getETag(), lastModified >= 0 ? Instant.ofEpochMilli(lastModified) : null);
+    }
+
+    private static RestClientResponseException failed(HttpStatusCode status, String statusText, HttpHeaders headers) {
+        return new RestClientResponseException(
+                "Media catalog request failed with " + status,
+                status,
+                statusText,
+                headers,
+                null,
+                null
+        );
     }
 }
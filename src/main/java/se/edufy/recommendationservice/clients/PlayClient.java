@@ -1,30 +1,35 @@
 package se.edufy.recommendationservice.clients;
 
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
-import se.edufy.recommendationservice.dtos.PlayDTO;
-
-import java.util.List;
+import se.edufy.recommendationservice.models.PlayHistory;
 
 @Service
 public class PlayClient {
 
     private final RestClient restClient;
 
-    public PlayClient(RestClient  restClient) {
+    public PlayClient(
+            RestClient restClient,
+            @Value("${recommendation.gateway.base-url:http://gateway:4646/edufy/v1}") String gatewayUrl
+    ) {
         this.restClient = restClient
                 .mutate()
-                .baseUrl("http://gateway:4646/edufy/v1/users")
+                .baseUrl(gatewayUrl + "/users")
+                .observationConvention(new GatewayObservationConvention("plays"))
                 .build();
     }
 
-    public List<PlayDTO> getUserPlays(Jwt jwt) {
+    /**
+     * @return the user's plays, parsed straight into a {@link PlayHistory}; {@code null} without a body
+     */
+    public PlayHistory getUserPlays(Jwt jwt) {
         return restClient.get()
                 .uri("/plays")
                 .header("Authorization", "Bearer " + jwt.getTokenValue())
                 .retrieve()
-                .body(new ParameterizedTypeReference<List<PlayDTO>>() {});
+                .body(PlayHistory.class);
     }
 }
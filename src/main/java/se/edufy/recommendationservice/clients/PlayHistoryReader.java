@@ -0,0 +1,69 @@
+package se.edufy.recommendationservice.clients;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+import java.io.IOException;
+
+/**
+ * Reads the {@code /users/plays} payload, {@code [{"mediaId": 1, "playCount": 3}, ...]}, token
+ * by token straight into a {@link PlayHistory.Builder}, so no {@code PlayDTO} or boxed id is
+ * created per play. Registered on {@link PlayHistory}, so both the blocking and the reactive
+ * client get it from their Jackson converter. Plays without a media id are skipped, a missing
+ * play count counts as one play, and unknown fields are ignored.
+ */
+public class PlayHistoryReader extends StdDeserializer<PlayHistory> {
+
+    public PlayHistoryReader() {
+        super(PlayHistory.class);
+    }
+
+    @Override
+    public PlayHistory deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (!parser.isExpectedStartArrayToken()) {
+            return (PlayHistory) context.handleUnexpectedToken(PlayHistory.class, parser);
+        }
+
+        PlayHistory.Builder builder = new PlayHistory.Builder();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                return (PlayHistory) context.handleUnexpectedToken(PlayHistory.class, parser);
+            }
+            readPlay(parser, builder);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public PlayHistory getNullValue(DeserializationContext context) {
+        return PlayHistory.EMPTY;
+    }
+
+    private static void readPlay(JsonParser parser, PlayHistory.Builder builder) throws IOException {
+        boolean hasMediaId = false;
+        long mediaId = 0;
+        int playCount = 1;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.VALUE_NULL) {
+                continue;
+            }
+
+            switch (field) {
+                case "mediaId" -> {
+                    mediaId = parser.getValueAsLong();
+                    hasMediaId = true;
+                }
+                case "playCount" -> playCount = parser.getValueAsInt(1);
+                default -> parser.skipChildren();
+            }
+        }
+        if (hasMediaId) {
+            builder.add(mediaId, playCount);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package se.edufy.recommendationservice.clients;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
@@ -13,16 +14,20 @@ public class RatingClient {
 
     private final RestClient restClient;
 
-    public RatingClient(RestClient  restClient) {
+    public RatingClient(
+            RestClient restClient,
+            @Value("${recommendation.gateway.base-url:http://gateway:4646/edufy/v1}") String gatewayUrl
+    ) {
         this.restClient = restClient
                 .mutate()
-                .baseUrl("http://gateway:4646/edufy/v1/ratings")
+                .baseUrl(gatewayUrl + "/ratings")
+                .observationConvention(new GatewayObservationConvention("ratings"))
                 .build();
     }
 
     public List<RatingDTO> getRatingsForUser(String userId, Jwt jwt) {
         return restClient.get()
-                .uri("/user/" + userId)
+                .uri("/user/{userId}", userId)
                 .header("Authorization", "Bearer " + jwt.getTokenValue())
                 .retrieve()
                 .body(new ParameterizedTypeReference<List<RatingDTO>>() {});
@@ -0,0 +1,23 @@
+package se.edufy.recommendationservice.clients;
+
+import io.micrometer.common.KeyValue;
+import org.springframework.web.reactive.function.client.ClientRequestObservationContext;
+import org.springframework.web.reactive.function.client.DefaultClientRequestObservationConvention;
+
+/**
+ * {@link GatewayObservationConvention} for the WebClient-based clients, so their requests are
+ * tagged with the same {@code client.name} as the blocking ones.
+ */
+public class ReactiveGatewayObservationConvention extends DefaultClientRequestObservationConvention {
+
+    private final KeyValue clientName;
+
+    public ReactiveGatewayObservationConvention(String clientName) {
+        this.clientName = KeyValue.of("client.name", clientName);
+    }
+
+    @Override
+    protected KeyValue clientName(ClientRequestObservationContext context) {
+        return clientName;
+    }
+}
@@ -0,0 +1,39 @@
+package se.edufy.recommendationservice.clients;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+/**
+ * Non-blocking {@link PlayClient}: nothing waits on a thread while the gateway answers.
+ */
+@Service
+@ConditionalOnProperty(name = "recommendation.reactive.enabled", havingValue = "true")
+public class ReactivePlayClient {
+
+    private final WebClient webClient;
+
+    public ReactivePlayClient(
+            WebClient webClient,
+            @Value("${recommendation.gateway.base-url:http://gateway:4646/edufy/v1}") String gatewayUrl
+    ) {
+        this.webClient = webClient
+                .mutate()
+                .baseUrl(gatewayUrl + "/users")
+                .observationConvention(new ReactiveGatewayObservationConvention("plays"))
+                .build();
+    }
+
+    public Mono<PlayHistory> getUserPlays(Jwt jwt) {
+        return webClient.get()
+                .uri("/plays")
+                .header("Authorization", "Bearer " + jwt.getTokenValue())
+                .retrieve()
+                .bodyToMono(PlayHistory.class)
+                .defaultIfEmpty(PlayHistory.EMPTY);
+    }
+}
@@ -0,0 +1,42 @@
+package se.edufy.recommendationservice.clients;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+
+import java.util.List;
+
+/**
+ * Non-blocking {@link RatingClient}: nothing waits on a thread while the gateway answers.
+ */
+@Service
+@ConditionalOnProperty(name = "recommendation.reactive.enabled", havingValue = "true")
+public class ReactiveRatingClient {
+
+    private final WebClient webClient;
+
+    public ReactiveRatingClient(
+            WebClient webClient,
+            @Value("${recommendation.gateway.base-url:http://gateway:4646/edufy/v1}") String gatewayUrl
+    ) {
+        this.webClient = webClient
+                .mutate()
+                .baseUrl(gatewayUrl + "/ratings")
+                .observationConvention(new ReactiveGatewayObservationConvention("ratings"))
+                .build();
+    }
+
+    public Mono<List<RatingDTO>> getRatingsForUser(String userId, Jwt jwt) {
+        return webClient.get()
+                .uri("/user/{userId}", userId)
+                .header("Authorization", "Bearer " + jwt.getTokenValue())
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<List<RatingDTO>>() {})
+                .defaultIfEmpty(List.of());
+    }
+}
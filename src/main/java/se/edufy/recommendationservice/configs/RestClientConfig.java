@@ -1,19 +1,74 @@
 package se.edufy.recommendationservice.configs;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.http.client.ClientHttpRequestFactoryBuilderCustomizer;
+import org.springframework.boot.http.client.JdkClientHttpRequestFactoryBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.oauth2.client.AuthorizedClientServiceOAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientManager;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientProviderBuilder;
+import org.springframework.security.oauth2.client.OAuth2AuthorizedClientService;
+import org.springframework.security.oauth2.client.registration.ClientRegistrationRepository;
 import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import se.edufy.recommendationservice.utils.GzipResponseInterceptor;
+
+import java.net.http.HttpClient;
 
 @Configuration
 public class RestClientConfig {
 
+    // factory, timeouts and redirects come from spring.http.client.*; the clients mutate this one
+    // RestClient, so they all share a single JDK HttpClient and its keep-alive connection pool
     @Bean
-    public RestClient restClient(RestClient.Builder builder) {
+    public RestClient restClient(
+            RestClient.Builder builder,
+            @Value("${recommendation.gateway.compression:true}") boolean compression
+    ) {
+        builder.requestInterceptor((request, body, execution) -> {
+            request.getHeaders().add("Accept", "application/json");
+            return execution.execute(request, body);
+        });
+        if (compression) {
+            builder.requestInterceptor(new GzipResponseInterceptor());
+        }
+        return builder.build();
+    }
+
+    // only for the opt-in non-blocking endpoint; the connector is the JDK HttpClient, so no Netty.
+    // Responses are requested uncompressed, GzipResponseInterceptor only applies to the RestClient
+    @Bean
+    @ConditionalOnProperty(name = "recommendation.reactive.enabled", havingValue = "true")
+    public WebClient webClient(WebClient.Builder builder) {
         return builder
-                .requestInterceptor((request, body, execution) -> {
-                    request.getHeaders().add("Accept", "application/json");
-                    return execution.execute(request, body);
-                })
+                .defaultHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
                 .build();
     }
+
+    // HTTP_2 upgrades the connection when the gateway supports it and stays on HTTP/1.1 otherwise
+    @Bean
+    public ClientHttpRequestFactoryBuilderCustomizer<JdkClientHttpRequestFactoryBuilder> gatewayTransport(
+            @Value("${recommendation.gateway.http-version:HTTP_2}") HttpClient.Version httpVersion
+    ) {
+        return factoryBuilder -> factoryBuilder.withHttpClientCustomizer(client -> client.version(httpVersion));
+    }
+
+    // service-to-service tokens are requested outside of any HTTP request (e.g. scheduled catalog refreshes)
+    @Bean
+    public OAuth2AuthorizedClientManager authorizedClientManager(
+            ClientRegistrationRepository clientRegistrationRepository,
+            OAuth2AuthorizedClientService authorizedClientService
+    ) {
+        AuthorizedClientServiceOAuth2AuthorizedClientManager manager =
+                new AuthorizedClientServiceOAuth2AuthorizedClientManager(
+                        clientRegistrationRepository, authorizedClientService);
+        manager.setAuthorizedClientProvider(OAuth2AuthorizedClientProviderBuilder.builder()
+                .clientCredentials()
+                .build());
+        return manager;
+    }
 }
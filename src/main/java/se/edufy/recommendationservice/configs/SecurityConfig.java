@@ -26,6 +26,11 @@ public class SecurityConfig {
                 .authorizeHttpRequests(auth -> auth
 
                         .requestMatchers("/h2-console/**").permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
+
+                        // admin-endpoints (t.ex. manuell katalog-refresh) kräver ADMIN
+                        .requestMatchers("/edufy/v1/recommendations/admin/**").hasRole("admin")
+                        .requestMatchers(HttpMethod.POST, "/edufy/v1/recommendations/batch").hasRole("admin")
 
                         // recommendations ska kunna hämtas av USER eller ADMIN
                         .requestMatchers(HttpMethod.GET, "/edufy/v1/recommendations/**")
@@ -0,0 +1,98 @@
+package se.edufy.recommendationservice.controllers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import se.edufy.recommendationservice.dtos.CatalogStatusDTO;
+import se.edufy.recommendationservice.dtos.PlayEventDTO;
+import se.edufy.recommendationservice.dtos.RatingEventDTO;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.services.MediaCatalog;
+import se.edufy.recommendationservice.services.RecommendationCache;
+import se.edufy.recommendationservice.services.TasteProfileService;
+
+@RestController
+@RequestMapping("/edufy/v1/recommendations/admin")
+public class AdminController {
+
+    private static final Logger log = LoggerFactory.getLogger(AdminController.class);
+
+    private final MediaCatalog mediaCatalog;
+    private final RecommendationCache recommendationCache;
+    private final TasteProfileService tasteProfileService;
+
+    public AdminController(
+            MediaCatalog mediaCatalog,
+            RecommendationCache recommendationCache,
+            TasteProfileService tasteProfileService
+    ) {
+        this.mediaCatalog = mediaCatalog;
+        this.recommendationCache = recommendationCache;
+        this.tasteProfileService = tasteProfileService;
+    }
+
+    @PostMapping("/catalog/refresh")
+    public ResponseEntity<CatalogStatusDTO> refreshCatalog() {
+        log.info("Manual media catalog refresh requested");
+
+        CatalogSnapshot snapshot = mediaCatalog.refresh();
+
+        return ResponseEntity.ok(new CatalogStatusDTO(snapshot.liveCount(), snapshot.loadedAt()));
+    }
+
+    // anropas av play-/rating-tjänsterna när en användares historik ändras
+    @DeleteMapping("/cache/{userId}")
+    public ResponseEntity<Void> invalidateUser(@PathVariable String userId) {
+        log.debug("Invalidating cached recommendations for user {}", userId);
+
+        recommendationCache.invalidate(userId);
+
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/cache")
+    public ResponseEntity<Void> invalidateAll() {
+        log.info("Invalidating all cached recommendations");
+
+        recommendationCache.invalidateAll();
+
+        return ResponseEntity.noContent().build();
+    }
+
+    // nya plays/ratings uppdaterar smakprofilen inkrementellt (skrivs i batch)
+    @PostMapping("/events/plays")
+    public ResponseEntity<Void> playEvent(@RequestBody PlayEventDTO event) {
+        // playCount <= 0 skulle sänka totalPlays
+        if (event.userId() == null || event.mediaId() == null
+                || (event.playCount() != null && event.playCount() <= 0)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        tasteProfileService.recordPlay(event.userId(), event.mediaId(),
+                event.playCount() != null ? event.playCount() : 1);
+        recommendationCache.invalidate(event.userId());
+
+        return ResponseEntity.accepted().build();
+    }
+
+    @PostMapping("/events/ratings")
+    public ResponseEntity<Void> ratingEvent(@RequestBody RatingEventDTO event) {
+        // utan liked vet vi inte om det är en like eller dislike
+        if (event.userId() == null || event.mediaId() == null || event.liked() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        long mediaId;
+        try {
+            mediaId = Long.parseLong(event.mediaId());
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        tasteProfileService.recordRating(event.userId(), mediaId, event.liked());
+        recommendationCache.invalidate(event.userId());
+
+        return ResponseEntity.accepted().build();
+    }
+}
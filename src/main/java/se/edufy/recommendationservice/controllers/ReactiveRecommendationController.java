@@ -0,0 +1,64 @@
+package se.edufy.recommendationservice.controllers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import se.edufy.recommendationservice.services.ReactiveRecommendationService;
+import se.edufy.recommendationservice.services.RecommendationService;
+
+import java.util.List;
+
+// samma svar som GET /edufy/v1/recommendations (utan sidindelning), men Tomcat-tråden släpps medan
+// gatewayen svarar (MVC hanterar Mono som ett asynkront svar). Finns bara med recommendation.reactive.enabled=true
+@RestController
+@RequestMapping("/edufy/v1/recommendations/reactive")
+@ConditionalOnProperty(name = "recommendation.reactive.enabled", havingValue = "true")
+public class ReactiveRecommendationController {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveRecommendationController.class);
+
+    private final ReactiveRecommendationService reactiveRecommendationService;
+
+    public ReactiveRecommendationController(ReactiveRecommendationService reactiveRecommendationService) {
+        this.reactiveRecommendationService = reactiveRecommendationService;
+    }
+
+    @GetMapping
+    public Mono<ResponseEntity<List<?>>> getRecommendations(
+            @AuthenticationPrincipal Jwt jwt,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "0.2") double exploration,
+            @RequestParam(defaultValue = "full") String view
+    ) {
+
+        if (jwt == null) {
+            log.warn("Missing JWT when requesting recommendations");
+            return Mono.just(ResponseEntity.status(401).build());
+        }
+
+        boolean slim = RecommendationController.isSlim(view);
+        RecommendationService.Options options;
+        try {
+            options = new RecommendationService.Options(size, exploration);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        return reactiveRecommendationService.recommend(jwt, options)
+                .map(results -> results.degraded()
+                        ? ResponseEntity.ok()
+                                .header(RecommendationController.DEGRADED_HEADER, "true")
+                                .body(RecommendationController.project(results.media(), slim))
+                        : ResponseEntity.ok(RecommendationController.project(results.media(), slim)));
+    }
+}
@@ -1,12 +1,20 @@
 package se.edufy.recommendationservice.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.MediaSummaryDTO;
+import se.edufy.recommendationservice.services.BatchRecommendationService;
+import se.edufy.recommendationservice.services.RecommendationPager;
 import se.edufy.recommendationservice.services.RecommendationService;
 
 import java.util.List;
@@ -17,14 +25,42 @@ public class RecommendationController {
 
     private static final Logger log = LoggerFactory.getLogger(RecommendationController.class);
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    // sätts när spel- eller betygshistoriken inte gick att hämta och svaret bygger på sparad profil
+    static final String DEGRADED_HEADER = "X-Recommendations-Degraded";
+
+    // cursor till nästa sida; saknas på sista sidan
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final RecommendationService recommendationService;
+    private final RecommendationPager recommendationPager;
+    private final BatchRecommendationService batchRecommendationService;
+    private final ObjectMapper objectMapper;
 
-    public RecommendationController(RecommendationService recommendationService) {
+    public RecommendationController(
+            RecommendationService recommendationService,
+            RecommendationPager recommendationPager,
+            BatchRecommendationService batchRecommendationService,
+            ObjectMapper objectMapper
+    ) {
         this.recommendationService = recommendationService;
+        this.recommendationPager = recommendationPager;
+        this.batchRecommendationService = batchRecommendationService;
+        this.objectMapper = objectMapper;
     }
 
+    // limit och/eller cursor ger sidvisa svar ur en rankning som sparas en kort stund per användare.
+    // view=slim returnerar bara id och titel
     @GetMapping
-    public ResponseEntity<List<MediaDetailsDTO>> getRecommendations(@AuthenticationPrincipal Jwt jwt) {
+    public ResponseEntity<List<?>> getRecommendations(
+            @AuthenticationPrincipal Jwt jwt,
+            @RequestParam(defaultValue = "10") int size,
+            @RequestParam(defaultValue = "0.2") double exploration,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "full") String view
+    ) {
 
         if (jwt == null) {
             log.warn("Missing JWT when requesting recommendations");
@@ -32,11 +68,72 @@ public class RecommendationController {
         }
 
         String userId = jwt.getSubject();
-        log.info("Recommendation request for Keycloak user: {}", userId);
+        log.debug("Recommendation request for Keycloak user: {}", userId);
+
+        // antal rekommendationer och andel slumpade utanför användarens smak
+        boolean slim = isSlim(view);
+        RecommendationService.Options options;
+        try {
+            options = new RecommendationService.Options(limit != null ? limit : size, exploration);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+
+        if (limit != null || cursor != null) {
+            RecommendationPager.Page page = recommendationPager.page(jwt, options, cursor);
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+            }
+            if (page.degraded()) {
+                response.header(DEGRADED_HEADER, "true");
+            }
+            return response.body(project(page.media(), slim));
+        }
+
+        RecommendationService.Recommendations results = recommendationService.recommend(jwt, options);
+
+        if (results.degraded()) {
+            return ResponseEntity.ok()
+                    .header(DEGRADED_HEADER, "true")
+                    .body(project(results.media(), slim));
+        }
+        return ResponseEntity.ok(project(results.media(), slim));
+    }
+
+    static boolean isSlim(String view) {
+        return switch (view) {
+            case "full" -> false;
+            case "slim" -> true;
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "view must be full or slim");
+        };
+    }
+
+    // slim: bara id och titel, mindre att serialisera och skicka till mobilklienter
+    static List<?> project(List<MediaDetailsDTO> media, boolean slim) {
+        if (!slim) {
+            return media;
+        }
+        return media.stream()
+                .map(m -> new MediaSummaryDTO(m.id(), m.title()))
+                .toList();
+    }
+
+    // admin: rekommendationer för många användare, strömmas tillbaka som NDJSON (en rad per användare)
+    @PostMapping("/batch")
+    public ResponseEntity<StreamingResponseBody> getBatchRecommendations(@RequestBody List<String> userIds) {
+
+        log.debug("Batch recommendation request for {} users", userIds.size());
 
-        List<MediaDetailsDTO> results = recommendationService.recommend(jwt);
+        StreamingResponseBody body = out -> batchRecommendationService.recommendAll(userIds, result -> {
+            out.write(objectMapper.writeValueAsBytes(result));
+            out.write('\n');
+        });
 
-        return ResponseEntity.ok(results);
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(body);
     }
 
     @GetMapping("/ping")
@@ -0,0 +1,9 @@
+package se.edufy.recommendationservice.dtos;
+
+import java.util.List;
+
+public record BatchRecommendationDTO(
+        String userId,
+        List<MediaDetailsDTO> recommendations,
+        String error
+) {}
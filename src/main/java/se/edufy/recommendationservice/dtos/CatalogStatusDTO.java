@@ -0,0 +1,8 @@
+package se.edufy.recommendationservice.dtos;
+
+import java.time.Instant;
+
+public record CatalogStatusDTO(
+        int size,
+        Instant loadedAt
+) {}
@@ -0,0 +1,6 @@
+package se.edufy.recommendationservice.dtos;
+
+public record MediaSummaryDTO(
+        Long id,
+        String title
+) {}
@@ -0,0 +1,7 @@
+package se.edufy.recommendationservice.dtos;
+
+public record PlayEventDTO(
+        String userId,
+        Long mediaId,
+        Integer playCount
+) {}
@@ -0,0 +1,7 @@
+package se.edufy.recommendationservice.dtos;
+
+public record RatingEventDTO(
+        String userId,
+        String mediaId,
+        Boolean liked
+) {}
@@ -0,0 +1,41 @@
+package se.edufy.recommendationservice.entities;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stores genre weights as a small JSON object in the profile row instead of a child table.
+ */
+@Converter
+public class GenreWeightsConverter implements AttributeConverter<Map<String, Double>, String> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<HashMap<String, Double>> TYPE = new TypeReference<>() {};
+
+    @Override
+    public String convertToDatabaseColumn(Map<String, Double> weights) {
+        try {
+            return MAPPER.writeValueAsString(weights != null ? weights : Map.of());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not serialize genre weights", e);
+        }
+    }
+
+    @Override
+    public Map<String, Double> convertToEntityAttribute(String json) {
+        if (json == null || json.isEmpty()) {
+            return new HashMap<>();
+        }
+        try {
+            return MAPPER.readValue(json, TYPE);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not deserialize genre weights", e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package se.edufy.recommendationservice.entities;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores a {@code long[]} as a packed binary column (8 bytes per value) instead of a child table.
+ */
+@Converter
+public class LongArrayConverter implements AttributeConverter<long[], byte[]> {
+
+    @Override
+    public byte[] convertToDatabaseColumn(long[] values) {
+        if (values == null) {
+            return new byte[0];
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES);
+        buffer.asLongBuffer().put(values);
+        return buffer.array();
+    }
+
+    @Override
+    public long[] convertToEntityAttribute(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return new long[0];
+        }
+        long[] values = new long[bytes.length / Long.BYTES];
+        ByteBuffer.wrap(bytes).asLongBuffer().get(values);
+        return values;
+    }
+}
@@ -0,0 +1,224 @@
+package se.edufy.recommendationservice.entities;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact, incrementally maintained summary of a user's taste: one row per user with
+ * genre weights, the media the user has played and how often, the media they liked and
+ * disliked, and a total play count.
+ */
+@Entity
+@Table(name = "user_taste_profile")
+public class UserTasteProfile {
+
+    @Id
+    @Column(name = "user_id", length = 64)
+    private String userId;
+
+    @Version
+    private Long version;
+
+    @Lob
+    @Convert(converter = GenreWeightsConverter.class)
+    @Column(name = "genre_weights", nullable = false)
+    private Map<String, Double> genreWeights = new HashMap<>();
+
+    @Lob
+    @Convert(converter = LongArrayConverter.class)
+    @Column(name = "played_media_ids", nullable = false)
+    private long[] playedMediaIds = new long[0];
+
+    // parallel to playedMediaIds
+    @Lob
+    @Convert(converter = IntArrayConverter.class)
+    @Column(name = "played_media_counts", nullable = false)
+    private int[] playCounts = new int[0];
+
+    @Lob
+    @Convert(converter = LongArrayConverter.class)
+    @Column(name = "liked_media_ids", nullable = false)
+    private long[] likedMediaIds = new long[0];
+
+    @Lob
+    @Convert(converter = LongArrayConverter.class)
+    @Column(name = "disliked_media_ids", nullable = false)
+    private long[] dislikedMediaIds = new long[0];
+
+    @Column(name = "total_plays", nullable = false)
+    private long totalPlays;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    protected UserTasteProfile() {
+    }
+
+    public UserTasteProfile(String userId) {
+        this.userId = userId;
+        this.updatedAt = Instant.now();
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Map<String, Double> getGenreWeights() {
+        return genreWeights;
+    }
+
+    public void addGenreWeight(String genre, double weight) {
+        // copy-on-write, like the id arrays, so dirty checking sees a new value
+        Map<String, Double> updated = new HashMap<>(genreWeights);
+        updated.merge(genre, weight, Double::sum);
+        genreWeights = updated;
+    }
+
+    /**
+     * Genre weight contributed by a media played {@code playCount} times. Grows logarithmically,
+     * so a few items on repeat do not drown out the rest of the history.
+     */
+    public static double playWeight(int playCount) {
+        return 1.0 + Math.log(Math.max(playCount, 1));
+    }
+
+    /**
+     * Genre weight a media gains when its play count grows from {@code before} to {@code after}
+     * plays, so a media's share always ends up at {@link #playWeight} of its current count.
+     */
+    public static double playWeightGain(int before, int after) {
+        if (after <= before) {
+            return 0;
+        }
+        return before > 0 ? playWeight(after) - playWeight(before) : playWeight(after);
+    }
+
+    /**
+     * Sorted ids of every media the user has played.
+     */
+    public long[] getPlayedMediaIds() {
+        return playedMediaIds;
+    }
+
+    /**
+     * How often each media in {@link #getPlayedMediaIds()} was played, at the same index.
+     */
+    public int[] getPlayCounts() {
+        return playCounts;
+    }
+
+    /**
+     * @return how often the media was played, {@code 0} if never
+     */
+    public int playCountOf(long mediaId) {
+        int pos = Arrays.binarySearch(playedMediaIds, mediaId);
+        return pos >= 0 ? playCounts[pos] : 0;
+    }
+
+    public long[] getLikedMediaIds() {
+        return likedMediaIds;
+    }
+
+    public long[] getDislikedMediaIds() {
+        return dislikedMediaIds;
+    }
+
+    public boolean hasPlayed(long mediaId) {
+        return Arrays.binarySearch(playedMediaIds, mediaId) >= 0;
+    }
+
+    /**
+     * Adds {@code playCount} new plays of the media.
+     *
+     * @return the weight each of the media's genres gains, see {@link #playWeightGain}
+     */
+    public double recordPlay(long mediaId, int playCount) {
+        int before = playCountOf(mediaId);
+        return updatePlayCount(mediaId, before, (int) Math.min((long) before + playCount, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Records a media from the user's full play history, which already includes every play of it.
+     * Idempotent: only raises the stored count, never lowers it or adds to it.
+     *
+     * @return the weight each of the media's genres gains, {@code 0} if the count was not raised
+     */
+    public double recordHistoricPlay(long mediaId, int playCount) {
+        int before = playCountOf(mediaId);
+        return playCount > before ? updatePlayCount(mediaId, before, playCount) : 0;
+    }
+
+    public boolean hasRated(long mediaId, boolean liked) {
+        return Arrays.binarySearch(liked ? likedMediaIds : dislikedMediaIds, mediaId) >= 0;
+    }
+
+    public void recordRating(long mediaId, boolean liked) {
+        if (liked) {
+            likedMediaIds = insert(likedMediaIds, mediaId);
+            dislikedMediaIds = remove(dislikedMediaIds, mediaId);
+        } else {
+            dislikedMediaIds = insert(dislikedMediaIds, mediaId);
+            likedMediaIds = remove(likedMediaIds, mediaId);
+        }
+    }
+
+    public long getTotalPlays() {
+        return totalPlays;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    private double updatePlayCount(long mediaId, int before, int after) {
+        totalPlays += after - before;
+        int pos = Arrays.binarySearch(playedMediaIds, mediaId);
+        int[] counts = playCounts;
+        if (pos >= 0) {
+            counts = counts.clone();
+            counts[pos] = after;
+        } else {
+            int at = -(pos + 1);
+            playedMediaIds = insert(playedMediaIds, mediaId);
+            int[] grown = new int[counts.length + 1];
+            System.arraycopy(counts, 0, grown, 0, at);
+            grown[at] = after;
+            System.arraycopy(counts, at, grown, at + 1, counts.length - at);
+            counts = grown;
+        }
+        playCounts = counts;
+        return playWeightGain(before, after);
+    }
+
+    private static long[] insert(long[] sorted, long value) {
+        int pos = Arrays.binarySearch(sorted, value);
+        if (pos >= 0) {
+            return sorted;
+        }
+        int at = -(pos + 1);
+        long[] result = new long[sorted.length + 1];
+        System.arraycopy(sorted, 0, result, 0, at);
+        result[at] = value;
+        System.arraycopy(sorted, at, result, at + 1, sorted.length - at);
+        return result;
+    }
+
+    private static long[] remove(long[] sorted, long value) {
+        int pos = Arrays.binarySearch(sorted, value);
+        if (pos < 0) {
+            return sorted;
+        }
+        long[] result = new long[sorted.length - 1];
+        System.arraycopy(sorted, 0, result, 0, pos);
+        System.arraycopy(sorted, pos + 1, result, pos, sorted.length - pos - 1);
+        return result;
+    }
+}
@@ -0,0 +1,749 @@
+package se.edufy.recommendationservice.models;
+
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.utils.LongIntHashMap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable, indexed copy of the media catalog as it looked at {@code loadedAt}.
+ * Snapshots are swapped as a whole, so readers never see a half-refreshed catalog.
+ *
+ * <p>Every media item gets a dense ordinal in load order. The catalog is stored column-wise:
+ * ids and titles in flat arrays, and genres and artists as references into small tables of
+ * distinct genre and artist sets, which most items share. Genre names and artists are interned,
+ * so each distinct value exists once. On top of that the snapshot keeps an id → ordinal hash
+ * index, genre and artist dictionaries, and genre → postings and artist → postings indexes
+ * holding the sorted ordinals of all items with that genre or artist.
+ *
+ * <p>A snapshot can also be derived from a previous one and a set of changes (see
+ * {@link Builder#Builder(CatalogSnapshot)}): changed media keep their ordinal, new media are
+ * appended, and removed media leave a gap that is no longer {@linkplain #isLive live} until the
+ * next full load. Only the postings of the genres and artists involved are rebuilt; the others
+ * are shared with the previous snapshot.
+ *
+ * <p>{@link CatalogSnapshotFile} saves a snapshot with its dictionaries and postings, and
+ * restores it without recomputing them.
+ */
+public final class CatalogSnapshot {
+
+    public static final CatalogSnapshot EMPTY = new Builder(0).build(Instant.EPOCH);
+
+    private final Instant loadedAt;
+    private final int size;
+    private final long[] ids;
+    private final String[] titles;
+    private final int[] genreSetByOrdinal;
+    private final int[] artistSetByOrdinal;
+    private final int[][] genreSets;
+    private final List<String>[] genreSetNames;
+    private final List<ArtistDTO>[] artistSets;
+    private final int[][] artistSetIndexes;
+    private final ArtistDTO[] artists;
+    private final LongIntHashMap ordinalsById;
+    private final String[] genreNames;
+    private final Map<String, Integer> genreIds;
+    private final int[][] postingsByGenre;
+    private final int[][] postingsByArtist;
+    private final BitSet removed;
+    private final int liveCount;
+
+    public CatalogSnapshot(List<MediaDetailsDTO> media, Instant loadedAt) {
+        this(Builder.of(media), loadedAt);
+    }
+
+    @SuppressWarnings("unchecked")
+    private CatalogSnapshot(Builder builder, Instant loadedAt) {
+        this.loadedAt = loadedAt;
+        this.size = builder.size;
+        // a presized builder usually fills its columns exactly, so they are only copied when trimming is needed
+        this.ids = builder.ids.length == size ? builder.ids : Arrays.copyOf(builder.ids, size);
+        this.titles = builder.titles.length == size ? builder.titles : Arrays.copyOf(builder.titles, size);
+        this.genreSetByOrdinal = builder.genreSetByOrdinal.length == size
+                ? builder.genreSetByOrdinal
+                : Arrays.copyOf(builder.genreSetByOrdinal, size);
+        this.artistSetByOrdinal = builder.artistSetByOrdinal.length == size
+                ? builder.artistSetByOrdinal
+                : Arrays.copyOf(builder.artistSetByOrdinal, size);
+        this.ordinalsById = builder.ordinalsById;
+
+        this.genreNames = builder.genreNames.toArray(String[]::new);
+        this.genreIds = Map.copyOf(builder.genreIds);
+        this.genreSets = builder.genreSets.toArray(int[][]::new);
+        this.genreSetNames = builder.genreSets.stream()
+                .map(set -> Arrays.stream(set).mapToObj(genre -> genreNames[genre]).toList())
+                .toArray(List[]::new);
+        this.artistSets = builder.artistSets.toArray(List[]::new);
+        this.artistSetIndexes = builder.artistSetIndexes.toArray(int[][]::new);
+        this.artists = builder.artists.toArray(ArtistDTO[]::new);
+
+        this.removed = builder.removed;
+        this.liveCount = size - removed.cardinality();
+
+        CatalogSnapshot base = builder.base;
+        if (base == null) {
+            this.postingsByGenre = postings(genreNames.length, genreSets, genreSetByOrdinal);
+            this.postingsByArtist = postings(artists.length, artistSetIndexes, artistSetByOrdinal);
+        } else {
+            this.postingsByGenre = postings(base.postingsByGenre, base.genreSetByOrdinal, base.size,
+                    genreNames.length, genreSets, genreSetByOrdinal, builder.changed);
+            this.postingsByArtist = postings(base.postingsByArtist, base.artistSetByOrdinal, base.size,
+                    artists.length, artistSetIndexes, artistSetByOrdinal, builder.changed);
+        }
+    }
+
+    private CatalogSnapshot(CatalogSnapshot source, Instant loadedAt) {
+        this.loadedAt = loadedAt;
+        this.size = source.size;
+        this.ids = source.ids;
+        this.titles = source.titles;
+        this.genreSetByOrdinal = source.genreSetByOrdinal;
+        this.artistSetByOrdinal = source.artistSetByOrdinal;
+        this.genreSets = source.genreSets;
+        this.genreSetNames = source.genreSetNames;
+        this.artistSets = source.artistSets;
+        this.artistSetIndexes = source.artistSetIndexes;
+        this.artists = source.artists;
+        this.ordinalsById = source.ordinalsById;
+        this.genreNames = source.genreNames;
+        this.genreIds = source.genreIds;
+        this.postingsByGenre = source.postingsByGenre;
+        this.postingsByArtist = source.postingsByArtist;
+        this.removed = source.removed;
+        this.liveCount = source.liveCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CatalogSnapshot(ByteBuffer in, Instant loadedAt) throws IOException {
+        this.loadedAt = loadedAt;
+        this.ids = CatalogSnapshotFile.readLongs(in);
+        this.size = ids.length;
+        this.titles = new String[size];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            titles[ordinal] = CatalogSnapshotFile.readString(in);
+        }
+        this.genreSetByOrdinal = CatalogSnapshotFile.readInts(in);
+        this.artistSetByOrdinal = CatalogSnapshotFile.readInts(in);
+        if (genreSetByOrdinal.length != size || artistSetByOrdinal.length != size) {
+            throw new IOException("Catalog columns of " + size + " media have different lengths");
+        }
+
+        this.genreNames = new String[in.getInt()];
+        Map<String, Integer> genreIds = new HashMap<>();
+        for (int genre = 0; genre < genreNames.length; genre++) {
+            genreNames[genre] = CatalogSnapshotFile.readString(in);
+            genreIds.put(genreNames[genre], genre);
+        }
+        this.genreIds = Map.copyOf(genreIds);
+        this.genreSets = new int[in.getInt()][];
+        for (int set = 0; set < genreSets.length; set++) {
+            genreSets[set] = CatalogSnapshotFile.readInts(in);
+        }
+        this.genreSetNames = Arrays.stream(genreSets)
+                .map(set -> Arrays.stream(set).mapToObj(genre -> genreNames[genre]).toList())
+                .toArray(List[]::new);
+
+        this.artists = new ArtistDTO[in.getInt()];
+        for (int artist = 0; artist < artists.length; artist++) {
+            boolean hasId = in.get() != 0;
+            long id = in.getLong();
+            artists[artist] = new ArtistDTO(hasId ? id : null, CatalogSnapshotFile.readString(in));
+        }
+        this.artistSetIndexes = new int[in.getInt()][];
+        this.artistSets = new List[artistSetIndexes.length];
+        for (int set = 0; set < artistSetIndexes.length; set++) {
+            artistSetIndexes[set] = CatalogSnapshotFile.readInts(in);
+            artistSets[set] = Arrays.stream(artistSetIndexes[set]).mapToObj(artist -> artists[artist]).toList();
+        }
+
+        this.removed = BitSet.valueOf(CatalogSnapshotFile.readLongs(in));
+        this.liveCount = size - removed.cardinality();
+        this.postingsByGenre = readPostings(in, genreNames.length);
+        this.postingsByArtist = readPostings(in, artists.length);
+
+        // cheaper to rebuild than to store: one pass over the ids
+        this.ordinalsById = new LongIntHashMap(liveCount, -1);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            if (!removed.get(ordinal)) {
+                ordinalsById.putIfAbsent(ids[ordinal], ordinal);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #writeTo}.
+     */
+    static CatalogSnapshot readFrom(ByteBuffer in, Instant loadedAt) throws IOException {
+        return new CatalogSnapshot(in, loadedAt);
+    }
+
+    /**
+     * Writes the columns, dictionaries, removed ordinals and postings in the order
+     * {@link #readFrom} reads them.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        CatalogSnapshotFile.writeLongs(out, ids, size);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            CatalogSnapshotFile.writeString(out, titles[ordinal]);
+        }
+        CatalogSnapshotFile.writeInts(out, genreSetByOrdinal, size);
+        CatalogSnapshotFile.writeInts(out, artistSetByOrdinal, size);
+
+        out.writeInt(genreNames.length);
+        for (String genre : genreNames) {
+            CatalogSnapshotFile.writeString(out, genre);
+        }
+        out.writeInt(genreSets.length);
+        for (int[] set : genreSets) {
+            CatalogSnapshotFile.writeInts(out, set, set.length);
+        }
+
+        out.writeInt(artists.length);
+        for (ArtistDTO artist : artists) {
+            out.writeBoolean(artist.id() != null);
+            out.writeLong(artist.id() != null ? artist.id() : 0);
+            CatalogSnapshotFile.writeString(out, artist.name());
+        }
+        out.writeInt(artistSetIndexes.length);
+        for (int[] set : artistSetIndexes) {
+            CatalogSnapshotFile.writeInts(out, set, set.length);
+        }
+
+        long[] removedWords = removed.toLongArray();
+        CatalogSnapshotFile.writeLongs(out, removedWords, removedWords.length);
+        writePostings(out, postingsByGenre);
+        writePostings(out, postingsByArtist);
+    }
+
+    private static void writePostings(DataOutputStream out, int[][] postings) throws IOException {
+        for (int[] ordinals : postings) {
+            CatalogSnapshotFile.writeInts(out, ordinals, ordinals.length);
+        }
+    }
+
+    private static int[][] readPostings(ByteBuffer in, int keyCount) {
+        int[][] postings = new int[keyCount][];
+        for (int key = 0; key < keyCount; key++) {
+            postings[key] = CatalogSnapshotFile.readInts(in);
+        }
+        return postings;
+    }
+
+    /**
+     * The same catalog, confirmed current at {@code loadedAt}. Shares everything with this one.
+     */
+    public CatalogSnapshot withLoadedAt(Instant loadedAt) {
+        return new CatalogSnapshot(this, loadedAt);
+    }
+
+    /**
+     * @return {@code true} if {@code other} is this catalog, possibly confirmed current at another
+     * time by {@link #withLoadedAt}. Every other snapshot is built with arrays of its own.
+     */
+    public boolean sameCatalogAs(CatalogSnapshot other) {
+        return other != null && ids == other.ids && removed == other.removed;
+    }
+
+    /**
+     * Inverted index from each key (genre or artist) to the ordinals that have it.
+     */
+    private int[][] postings(int keyCount, int[][] sets, int[] setByOrdinal) {
+        int[] postingSizes = new int[keyCount];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            for (int key : sets[setByOrdinal[ordinal]]) {
+                postingSizes[key]++;
+            }
+        }
+        int[][] postings = new int[keyCount][];
+        for (int key = 0; key < keyCount; key++) {
+            postings[key] = new int[postingSizes[key]];
+        }
+
+        // ordinals are visited in ascending order, so every postings array ends up sorted
+        int[] fill = new int[keyCount];
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            for (int key : sets[setByOrdinal[ordinal]]) {
+                postings[key][fill[key]++] = ordinal;
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * The base snapshot's inverted index with the {@code changed} ordinals moved: they are
+     * dropped from the keys they had and added to the keys they have now, unless removed.
+     * Keys no change touches keep their postings array.
+     */
+    private int[][] postings(int[][] basePostings, int[] baseSetByOrdinal, int baseSize,
+                             int keyCount, int[][] sets, int[] setByOrdinal, BitSet changed) {
+        BitSet affected = new BitSet(keyCount);
+        int[] addedSizes = new int[keyCount];
+        for (int ordinal = changed.nextSetBit(0); ordinal >= 0; ordinal = changed.nextSetBit(ordinal + 1)) {
+            if (ordinal < baseSize) {
+                for (int key : sets[baseSetByOrdinal[ordinal]]) {
+                    affected.set(key);
+                }
+            }
+            if (!removed.get(ordinal)) {
+                for (int key : sets[setByOrdinal[ordinal]]) {
+                    affected.set(key);
+                    addedSizes[key]++;
+                }
+            }
+        }
+
+        int[][] added = new int[keyCount][];
+        for (int key = affected.nextSetBit(0); key >= 0; key = affected.nextSetBit(key + 1)) {
+            added[key] = new int[addedSizes[key]];
+        }
+        int[] fill = new int[keyCount];
+        for (int ordinal = changed.nextSetBit(0); ordinal >= 0; ordinal = changed.nextSetBit(ordinal + 1)) {
+            if (!removed.get(ordinal)) {
+                for (int key : sets[setByOrdinal[ordinal]]) {
+                    added[key][fill[key]++] = ordinal;
+                }
+            }
+        }
+
+        int[][] postings = Arrays.copyOf(basePostings, keyCount);
+        for (int key = affected.nextSetBit(0); key >= 0; key = affected.nextSetBit(key + 1)) {
+            postings[key] = merge(key < basePostings.length ? basePostings[key] : new int[0], changed, added[key]);
+        }
+        return postings;
+    }
+
+    /**
+     * Merges two sorted arrays, leaving out the {@code skipped} ordinals of the first.
+     */
+    private static int[] merge(int[] kept, BitSet skipped, int[] added) {
+        int[] merged = new int[kept.length + added.length];
+        int n = 0;
+        int a = 0;
+        for (int ordinal : kept) {
+            if (skipped.get(ordinal)) {
+                continue;
+            }
+            while (a < added.length && added[a] < ordinal) {
+                merged[n++] = added[a++];
+            }
+            merged[n++] = ordinal;
+        }
+        while (a < added.length) {
+            merged[n++] = added[a++];
+        }
+        return n == merged.length ? merged : Arrays.copyOf(merged, n);
+    }
+
+    /**
+     * Materializes the media at {@code ordinal}. The genre and artist lists are shared with
+     * every other item that has the same set.
+     */
+    public MediaDetailsDTO media(int ordinal) {
+        return new MediaDetailsDTO(
+                ids[ordinal],
+                titles[ordinal],
+                genreSetNames[genreSetByOrdinal[ordinal]],
+                artistSets[artistSetByOrdinal[ordinal]]
+        );
+    }
+
+    public long mediaId(int ordinal) {
+        return ids[ordinal];
+    }
+
+    public String title(int ordinal) {
+        return titles[ordinal];
+    }
+
+    /**
+     * Number of ordinals, including those of removed media. Use {@link #liveOrdinals()} for the
+     * media that are actually in the catalog.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of media in the catalog.
+     */
+    public int liveCount() {
+        return liveCount;
+    }
+
+    /**
+     * @return {@code false} if the media at {@code ordinal} was removed by a change
+     */
+    public boolean isLive(int ordinal) {
+        return !removed.get(ordinal);
+    }
+
+    /**
+     * A new bitset of the ordinals of all media in the catalog, for the caller to modify.
+     */
+    public BitSet liveOrdinals() {
+        BitSet live = new BitSet(size);
+        live.set(0, size);
+        live.andNot(removed);
+        return live;
+    }
+
+    /**
+     * @return the ordinal of the media with the given id, or {@code -1} if it is not in the catalog
+     */
+    public int ordinalOf(long mediaId) {
+        return ordinalsById.get(mediaId);
+    }
+
+    public int genreCount() {
+        return genreNames.length;
+    }
+
+    public String genreName(int genreId) {
+        return genreNames[genreId];
+    }
+
+    /**
+     * @return the genre id, or {@code -1} if no media in the catalog has that genre
+     */
+    public int genreId(String genre) {
+        return genreIds.getOrDefault(genre, -1);
+    }
+
+    /**
+     * Genre ids of the media at {@code ordinal}. The returned array must not be modified.
+     */
+    public int[] genresOf(int ordinal) {
+        return genreSets[genreSetByOrdinal[ordinal]];
+    }
+
+    public int artistCount() {
+        return artists.length;
+    }
+
+    public ArtistDTO artist(int artistIndex) {
+        return artists[artistIndex];
+    }
+
+    /**
+     * Artist indexes of the media at {@code ordinal}. The returned array must not be modified.
+     */
+    public int[] artistsOf(int ordinal) {
+        return artistSetIndexes[artistSetByOrdinal[ordinal]];
+    }
+
+    /**
+     * Sorted ordinals of all media in the genre. The returned array must not be modified.
+     */
+    public int[] postings(int genreId) {
+        return postingsByGenre[genreId];
+    }
+
+    /**
+     * Sorted ordinals of all media by the artist. The returned array must not be modified.
+     */
+    public int[] artistPostings(int artistIndex) {
+        return postingsByArtist[artistIndex];
+    }
+
+    public Instant loadedAt() {
+        return loadedAt;
+    }
+
+    public Duration age(Instant now) {
+        return Duration.between(loadedAt, now);
+    }
+
+    public boolean isLoaded() {
+        return this != EMPTY;
+    }
+
+    /**
+     * Collects media one item at a time, so a catalog can be built while its payload is still
+     * being parsed. A record is opened with {@link #beginMedia()}, filled in any field order and
+     * closed with {@link #endMedia()}; records without an id or with an id already seen are
+     * dropped, so the first occurrence wins. Not thread-safe, and the snapshot takes over the
+     * builder's arrays, so a builder must not be used after {@link #build}.
+     */
+    public static final class Builder {
+
+        // set when applying changes to a previous snapshot instead of loading a whole catalog
+        private final CatalogSnapshot base;
+        private final BitSet changed = new BitSet();
+        private final BitSet removed;
+
+        private int size;
+        private long[] ids;
+        private String[] titles;
+        private int[] genreSetByOrdinal;
+        private int[] artistSetByOrdinal;
+        private final LongIntHashMap ordinalsById;
+
+        private final Map<String, Integer> genreIds = new HashMap<>();
+        private final List<String> genreNames = new ArrayList<>();
+        private final Map<Long, ArtistDTO> artistsById = new HashMap<>();
+        private final Map<List<Integer>, Integer> genreSetIds = new HashMap<>();
+        private final List<int[]> genreSets = new ArrayList<>();
+        private final Map<List<ArtistDTO>, Integer> artistSetIds = new HashMap<>();
+        private final List<List<ArtistDTO>> artistSets = new ArrayList<>();
+        private final List<int[]> artistSetIndexes = new ArrayList<>();
+        private final Map<ArtistDTO, Integer> artistIndexes = new HashMap<>();
+        private final List<ArtistDTO> artists = new ArrayList<>();
+
+        // the record being read; reused for every record
+        private boolean hasId;
+        private long id;
+        private boolean deleted;
+        private String title;
+        private final List<String> genres = new ArrayList<>();
+        private final List<ArtistDTO> mediaArtists = new ArrayList<>();
+        private final List<Integer> genreKey = new ArrayList<>();
+
+        public Builder() {
+            this(1024);
+        }
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 16);
+            this.ids = new long[capacity];
+            this.titles = new String[capacity];
+            this.genreSetByOrdinal = new int[capacity];
+            this.artistSetByOrdinal = new int[capacity];
+            this.ordinalsById = new LongIntHashMap(expectedSize, -1);
+            this.base = null;
+            this.removed = new BitSet();
+        }
+
+        /**
+         * Starts from a copy of {@code base} to apply changes to. Here a record with an id already
+         * in the catalog replaces that media at its ordinal, a new id is appended, and a record
+         * marked {@linkplain #deleted deleted} removes the media. {@code base} is not modified.
+         */
+        public Builder(CatalogSnapshot base) {
+            this.base = base;
+            this.size = base.size;
+            // room for the new media of a typical change set before the columns have to grow
+            int capacity = size + Math.max(size / 64, 16);
+            this.ids = Arrays.copyOf(base.ids, capacity);
+            this.titles = Arrays.copyOf(base.titles, capacity);
+            this.genreSetByOrdinal = Arrays.copyOf(base.genreSetByOrdinal, capacity);
+            this.artistSetByOrdinal = Arrays.copyOf(base.artistSetByOrdinal, capacity);
+            this.ordinalsById = new LongIntHashMap(base.ordinalsById);
+            this.removed = (BitSet) base.removed.clone();
+
+            // the dictionaries continue where the base stopped, so existing genre, artist and set ids stay valid
+            genreNames.addAll(Arrays.asList(base.genreNames));
+            genreIds.putAll(base.genreIds);
+            for (int set = 0; set < base.genreSets.length; set++) {
+                genreSets.add(base.genreSets[set]);
+                genreSetIds.put(Arrays.stream(base.genreSets[set]).boxed().toList(), set);
+            }
+            for (int set = 0; set < base.artistSets.length; set++) {
+                artistSets.add(base.artistSets[set]);
+                artistSetIds.put(base.artistSets[set], set);
+                artistSetIndexes.add(base.artistSetIndexes[set]);
+            }
+            for (ArtistDTO artist : base.artists) {
+                artistIndexes.put(artist, artists.size());
+                artists.add(artist);
+                artistsById.putIfAbsent(artist.id(), artist);
+            }
+        }
+
+        static Builder of(List<MediaDetailsDTO> media) {
+            Builder builder = new Builder(media.size());
+            for (MediaDetailsDTO m : media) {
+                builder.add(m);
+            }
+            return builder;
+        }
+
+        public Builder add(MediaDetailsDTO media) {
+            beginMedia();
+            if (media.id() != null) {
+                id(media.id());
+            }
+            title(media.title());
+            if (media.genres() != null) {
+                media.genres().forEach(this::genre);
+            }
+            if (media.artists() != null) {
+                media.artists().forEach(artist -> artist(artist.id(), artist.name()));
+            }
+            endMedia();
+            return this;
+        }
+
+        public void beginMedia() {
+            hasId = false;
+            deleted = false;
+            title = null;
+            genres.clear();
+            mediaArtists.clear();
+        }
+
+        public void id(long id) {
+            this.id = id;
+            this.hasId = true;
+        }
+
+        public void title(String title) {
+            this.title = title;
+        }
+
+        /**
+         * Marks the record as a removal. Only meaningful when applying changes; a full load
+         * drops such records.
+         */
+        public void deleted(boolean deleted) {
+            this.deleted = deleted;
+        }
+
+        /**
+         * Removes the media, when applying changes.
+         *
+         * @return {@code true} if it was in the catalog
+         */
+        public boolean remove(long mediaId) {
+            beginMedia();
+            id(mediaId);
+            deleted(true);
+            return endMedia();
+        }
+
+        public void genre(String genre) {
+            if (genre != null && !genres.contains(genre)) {
+                genres.add(genre);
+            }
+        }
+
+        public void artist(Long id, String name) {
+            // the same artist id can come with another name in a later record; only the exact pair is shared
+            ArtistDTO artist = artistsById.get(id);
+            if (artist == null || !Objects.equals(artist.name(), name)) {
+                artist = new ArtistDTO(id, name);
+                artistsById.putIfAbsent(id, artist);
+            }
+            mediaArtists.add(artist);
+        }
+
+        /**
+         * @return {@code true} if the record was added, replaced or removed, {@code false} if it
+         * was dropped: no id, a duplicate id, or a removal of media that is not in the catalog
+         */
+        public boolean endMedia() {
+            if (base != null) {
+                return hasId && applyChange();
+            }
+            // genres of a dropped record stay out of the dictionary, like the old list-based index
+            if (!hasId || deleted || !ordinalsById.putIfAbsent(id, size)) {
+                return false;
+            }
+            append();
+            return true;
+        }
+
+        private boolean applyChange() {
+            int ordinal = ordinalsById.get(id);
+            if (deleted) {
+                if (ordinal < 0) {
+                    return false;
+                }
+                ordinalsById.remove(id);
+                removed.set(ordinal);
+                changed.set(ordinal);
+                return true;
+            }
+
+            if (ordinal < 0) {
+                changed.set(size);
+                ordinalsById.putIfAbsent(id, size);
+                append();
+            } else {
+                changed.set(ordinal);
+                titles[ordinal] = title;
+                genreSetByOrdinal[ordinal] = genreSet();
+                artistSetByOrdinal[ordinal] = artistSet();
+            }
+            return true;
+        }
+
+        private void append() {
+            if (size == ids.length) {
+                int capacity = Math.max(size * 2, 16);
+                ids = Arrays.copyOf(ids, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+                genreSetByOrdinal = Arrays.copyOf(genreSetByOrdinal, capacity);
+                artistSetByOrdinal = Arrays.copyOf(artistSetByOrdinal, capacity);
+            }
+
+            ids[size] = id;
+            titles[size] = title;
+            genreSetByOrdinal[size] = genreSet();
+            artistSetByOrdinal[size] = artistSet();
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public CatalogSnapshot build(Instant loadedAt) {
+            return new CatalogSnapshot(this, loadedAt);
+        }
+
+        private int genreSet() {
+            genreKey.clear();
+            for (String genre : genres) {
+                Integer genreId = genreIds.get(genre);
+                if (genreId == null) {
+                    genreId = genreNames.size();
+                    genreIds.put(genre, genreId);
+                    genreNames.add(genre);
+                }
+                genreKey.add(genreId);
+            }
+
+            // the scratch key is only copied when the set has not been seen before
+            Integer set = genreSetIds.get(genreKey);
+            if (set == null) {
+                set = genreSets.size();
+                genreSets.add(genreKey.stream().mapToInt(Integer::intValue).toArray());
+                genreSetIds.put(List.copyOf(genreKey), set);
+            }
+            return set;
+        }
+
+        private int artistSet() {
+            Integer set = artistSetIds.get(mediaArtists);
+            if (set == null) {
+                set = artistSets.size();
+                List<ArtistDTO> copy = List.copyOf(mediaArtists);
+                artistSets.add(copy);
+                artistSetIds.put(copy, set);
+
+                // like genres, only artists of records that were kept get an index
+                int[] indexes = new int[copy.size()];
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = artistIndexes.computeIfAbsent(copy.get(i), artist -> {
+                        artists.add(artist);
+                        return artists.size() - 1;
+                    });
+                }
+                artistSetIndexes.add(indexes);
+            }
+            return set;
+        }
+    }
+}
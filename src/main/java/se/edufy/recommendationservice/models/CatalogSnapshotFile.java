@@ -0,0 +1,170 @@
+package se.edufy.recommendationservice.models;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A {@link CatalogSnapshot} with its indexes saved to a compact binary file, so a restarted
+ * service can serve the last catalog it had before the gateway has answered. The file also keeps
+ * the catalog version the snapshot was loaded at, so the first refresh after a restart can ask
+ * for the changes since then. Layout, big-endian:
+ * <pre>
+ * int    magic, version
+ * long   loadedAt       epoch millis
+ * string etag           int byte length (-1 for none), UTF-8 bytes
+ * long   lastModified   epoch millis, Long.MIN_VALUE for none
+ * ...    the snapshot's columns, dictionaries and postings
+ * int    CRC-32 of everything between the version and the checksum
+ * </pre>
+ * The file is memory-mapped and decoded with bulk reads; the snapshot itself lives on the heap
+ * like a downloaded one.
+ */
+public final class CatalogSnapshotFile {
+
+    static final int MAGIC = 0x43415453; // "CATS"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private CatalogSnapshotFile() {
+    }
+
+    public record Contents(
+            CatalogSnapshot snapshot,
+            String etag,
+            Instant lastModified
+    ) {}
+
+    /**
+     * Writes the snapshot next to {@code file} and moves it into place, so a reader never maps
+     * a half-written file.
+     */
+    public static void write(Path file, CatalogSnapshot snapshot, String etag, Instant lastModified)
+            throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+        try {
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024))) {
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+
+                CRC32 crc = new CRC32();
+                DataOutputStream body = new DataOutputStream(new CheckedOutputStream(data, crc));
+                body.writeLong(snapshot.loadedAt().toEpochMilli());
+                writeString(body, etag);
+                body.writeLong(lastModified != null ? lastModified.toEpochMilli() : NO_TIME);
+                snapshot.writeTo(body);
+                body.flush();
+
+                data.writeInt((int) crc.getValue());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Maps and decodes a file written by {@link #write}.
+     *
+     * @throws IOException if the file is not a snapshot of this version, or is truncated or corrupt
+     */
+    public static Contents read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES + Integer.BYTES || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Not a catalog snapshot: " + file + " has " + fileSize + " bytes");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a catalog snapshot of version " + VERSION + ": " + file);
+            }
+            int checksumAt = (int) fileSize - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(HEADER_BYTES, checksumAt - HEADER_BYTES));
+            if ((int) crc.getValue() != buffer.getInt(checksumAt)) {
+                throw new IOException("Corrupt catalog snapshot: " + file + " fails its checksum");
+            }
+
+            ByteBuffer body = buffer.slice(HEADER_BYTES, checksumAt - HEADER_BYTES);
+            try {
+                Instant loadedAt = Instant.ofEpochMilli(body.getLong());
+                String etag = readString(body);
+                long lastModified = body.getLong();
+                CatalogSnapshot snapshot = CatalogSnapshot.readFrom(body, loadedAt);
+                if (body.hasRemaining()) {
+                    throw new IOException("Corrupt catalog snapshot: " + file + " has "
+                            + body.remaining() + " trailing bytes");
+                }
+                return new Contents(snapshot, etag, lastModified != NO_TIME ? Instant.ofEpochMilli(lastModified) : null);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+                throw new IOException("Corrupt catalog snapshot: " + file, e);
+            }
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + values.length * Integer.BYTES);
+        return values;
+    }
+
+    static void writeLongs(DataOutputStream out, long[] values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeLong(values[i]);
+        }
+    }
+
+    static long[] readLongs(ByteBuffer in) {
+        long[] values = new long[in.getInt()];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + values.length * Long.BYTES);
+        return values;
+    }
+}
@@ -0,0 +1,209 @@
+package se.edufy.recommendationservice.models;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Read-only item → item neighbour table: for each media id its top neighbours ("users who played
+ * X also played Y") with a similarity score, highest first.
+ *
+ * <p>The table lives in a compact binary file that is memory-mapped, so it costs no heap beyond
+ * this object and opening it is instant regardless of its size; the OS pages it in on use.
+ * Layout, big-endian:
+ * <pre>
+ * int   magic, version, itemCount, neighbourCount
+ * long  ids[itemCount]               sorted ascending
+ * long  neighbourIds[neighbourCount] grouped by item
+ * int   offsets[itemCount + 1]       item i owns neighbours offsets[i] until offsets[i + 1]
+ * float scores[neighbourCount]
+ * </pre>
+ * Lookups are a binary search over the mapped ids. Absolute reads only, so a table is safe
+ * to share between threads.
+ */
+public final class CooccurrenceTable {
+
+    public static final CooccurrenceTable EMPTY =
+            new CooccurrenceTable(ByteBuffer.allocate(0), 0, 0);
+
+    static final int MAGIC = 0x434F4F43; // "COOC"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int itemCount;
+    private final int neighbourCount;
+    private final int neighboursAt;
+    private final int offsetsAt;
+    private final int scoresAt;
+
+    private CooccurrenceTable(ByteBuffer buffer, int itemCount, int neighbourCount) {
+        this.buffer = buffer;
+        this.itemCount = itemCount;
+        this.neighbourCount = neighbourCount;
+        this.neighboursAt = HEADER_BYTES + itemCount * Long.BYTES;
+        this.offsetsAt = neighboursAt + neighbourCount * Long.BYTES;
+        this.scoresAt = offsetsAt + (itemCount + 1) * Integer.BYTES;
+    }
+
+    /**
+     * Maps a table written by {@link Writer}. The file may be replaced afterwards; this table
+     * keeps reading the version it mapped.
+     */
+    public static CooccurrenceTable map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a co-occurrence table: " + file + " has " + channel.size() + " bytes");
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a co-occurrence table of version " + VERSION + ": " + file);
+            }
+            int itemCount = buffer.getInt(8);
+            int neighbourCount = buffer.getInt(12);
+
+            CooccurrenceTable table = new CooccurrenceTable(buffer, itemCount, neighbourCount);
+            if (table.scoresAt + (long) neighbourCount * Float.BYTES != channel.size()) {
+                throw new IOException("Truncated co-occurrence table: " + file);
+            }
+            return table;
+        }
+    }
+
+    public boolean isLoaded() {
+        return this != EMPTY;
+    }
+
+    public int itemCount() {
+        return itemCount;
+    }
+
+    public int neighbourCount() {
+        return neighbourCount;
+    }
+
+    /**
+     * @return the index of the media in this table, or -1 if it has no neighbours
+     */
+    public int indexOf(long mediaId) {
+        int low = 0;
+        int high = itemCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long id = buffer.getLong(HEADER_BYTES + mid * Long.BYTES);
+            if (id < mediaId) {
+                low = mid + 1;
+            } else if (id > mediaId) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * First neighbour position of the item at {@code index}; its neighbours run until
+     * {@code neighboursFrom(index + 1)}.
+     */
+    public int neighboursFrom(int index) {
+        return buffer.getInt(offsetsAt + index * Integer.BYTES);
+    }
+
+    public long neighbourId(int position) {
+        return buffer.getLong(neighboursAt + position * Long.BYTES);
+    }
+
+    public float score(int position) {
+        return buffer.getFloat(scoresAt + position * Float.BYTES);
+    }
+
+    /**
+     * Collects the neighbour lists item by item, in ascending id order, and writes them as a
+     * table file. Not thread-safe.
+     */
+    public static final class Writer {
+
+        private long[] ids = new long[1024];
+        private int[] offsets = new int[1025];
+        private long[] neighbourIds = new long[4096];
+        private float[] scores = new float[4096];
+        private int itemCount;
+        private int neighbourCount;
+
+        /**
+         * Adds the first {@code count} neighbours of the media, highest score first. Media must be
+         * added in ascending id order.
+         */
+        public Writer add(long mediaId, long[] neighbours, float[] neighbourScores, int count) {
+            if (itemCount > 0 && mediaId <= ids[itemCount - 1]) {
+                throw new IllegalArgumentException("Media ids must be added in ascending order, got "
+                        + mediaId + " after " + ids[itemCount - 1]);
+            }
+            if (itemCount == ids.length) {
+                ids = Arrays.copyOf(ids, itemCount * 2);
+                offsets = Arrays.copyOf(offsets, itemCount * 2 + 1);
+            }
+            if (neighbourCount + count > neighbourIds.length) {
+                int capacity = Math.max(neighbourIds.length * 2, neighbourCount + count);
+                neighbourIds = Arrays.copyOf(neighbourIds, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+
+            ids[itemCount] = mediaId;
+            System.arraycopy(neighbours, 0, neighbourIds, neighbourCount, count);
+            System.arraycopy(neighbourScores, 0, scores, neighbourCount, count);
+            neighbourCount += count;
+            offsets[++itemCount] = neighbourCount;
+            return this;
+        }
+
+        public int itemCount() {
+            return itemCount;
+        }
+
+        /**
+         * Writes the table next to {@code file} and moves it into place, so a reader never maps
+         * a half-written file.
+         */
+        public void write(Path file) throws IOException {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+
+            try {
+                try (OutputStream out = Files.newOutputStream(temp);
+                     DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024))) {
+                    data.writeInt(MAGIC);
+                    data.writeInt(VERSION);
+                    data.writeInt(itemCount);
+                    data.writeInt(neighbourCount);
+                    for (int i = 0; i < itemCount; i++) {
+                        data.writeLong(ids[i]);
+                    }
+                    for (int i = 0; i < neighbourCount; i++) {
+                        data.writeLong(neighbourIds[i]);
+                    }
+                    for (int i = 0; i <= itemCount; i++) {
+                        data.writeInt(offsets[i]);
+                    }
+                    for (int i = 0; i < neighbourCount; i++) {
+                        data.writeFloat(scores[i]);
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package se.edufy.recommendationservice.models;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import se.edufy.recommendationservice.clients.PlayHistoryReader;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A user's plays as two parallel arrays: the media ids, sorted ascending and unique, and how
+ * often each was played. Twelve bytes per played media, against a boxed {@code Long}
+ * and {@code Integer} plus a {@link PlayDTO} and its list slot per play.
+ *
+ * <p>Built with a {@link Builder} while the gateway's payload is parsed, by
+ * {@link PlayHistoryReader} wherever Jackson reads a {@code PlayHistory}. Plays of the same media
+ * are merged by adding their counts. Immutable, so it can be shared through the cache.
+ */
+@JsonDeserialize(using = PlayHistoryReader.class)
+public final class PlayHistory {
+
+    public static final PlayHistory EMPTY = new PlayHistory(new long[0], new int[0]);
+
+    private final long[] mediaIds;
+    private final int[] playCounts;
+
+    private PlayHistory(long[] mediaIds, int[] playCounts) {
+        this.mediaIds = mediaIds;
+        this.playCounts = playCounts;
+    }
+
+    public static PlayHistory of(List<PlayDTO> plays) {
+        Builder builder = new Builder(plays.size());
+        for (PlayDTO play : plays) {
+            if (play.mediaId() != null) {
+                builder.add(play.mediaId(), play.playCount() != null ? play.playCount() : 1);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * A history over arrays that already have its layout, such as those a stored taste profile
+     * keeps.
+     *
+     * @param sortedMediaIds sorted ascending and unique; shared, not copied
+     * @param playCounts     at the same index as their media; shared, not copied
+     */
+    public static PlayHistory ofSorted(long[] sortedMediaIds, int[] playCounts) {
+        if (sortedMediaIds.length != playCounts.length) {
+            throw new IllegalArgumentException("Expected " + sortedMediaIds.length + " play counts, got " + playCounts.length);
+        }
+        return new PlayHistory(sortedMediaIds, playCounts);
+    }
+
+    /**
+     * @return the number of distinct media played
+     */
+    public int size() {
+        return mediaIds.length;
+    }
+
+    public boolean isEmpty() {
+        return mediaIds.length == 0;
+    }
+
+    /**
+     * @param index {@code 0} until {@link #size()}, in ascending order of media id
+     */
+    public long mediaId(int index) {
+        return mediaIds[index];
+    }
+
+    public int playCount(int index) {
+        return playCounts[index];
+    }
+
+    public boolean contains(long mediaId) {
+        return Arrays.binarySearch(mediaIds, mediaId) >= 0;
+    }
+
+    /**
+     * @return how often the media was played, {@code 0} if never
+     */
+    public int playCountOf(long mediaId) {
+        int index = Arrays.binarySearch(mediaIds, mediaId);
+        return index >= 0 ? playCounts[index] : 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PlayHistory other
+                && Arrays.equals(mediaIds, other.mediaIds)
+                && Arrays.equals(playCounts, other.playCounts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mediaIds) + Arrays.hashCode(playCounts);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("PlayHistory[");
+        for (int i = 0; i < mediaIds.length; i++) {
+            result.append(i > 0 ? ", " : "").append(mediaIds[i]).append(':').append(playCounts[i]);
+        }
+        return result.append(']').toString();
+    }
+
+    /**
+     * Collects plays in any order. {@link #build()} sorts them only if they did not arrive
+     * sorted already, and merges plays of the same media. Not thread-safe, and the history may
+     * take over the builder's arrays, so a builder must not be used after {@link #build()}.
+     */
+    public static final class Builder {
+
+        private long[] mediaIds;
+        private int[] playCounts;
+        private int size;
+        // strictly ascending so far, so build() can take the arrays as they are
+        private boolean sorted = true;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 4);
+            this.mediaIds = new long[capacity];
+            this.playCounts = new int[capacity];
+        }
+
+        public Builder add(long mediaId, int playCount) {
+            if (size == mediaIds.length) {
+                mediaIds = Arrays.copyOf(mediaIds, size * 2);
+                playCounts = Arrays.copyOf(playCounts, size * 2);
+            }
+            if (size > 0 && mediaIds[size - 1] >= mediaId) {
+                sorted = false;
+            }
+            mediaIds[size] = mediaId;
+            playCounts[size] = playCount;
+            size++;
+            return this;
+        }
+
+        public PlayHistory build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            if (sorted) {
+                return new PlayHistory(trim(mediaIds, size), trim(playCounts, size));
+            }
+
+            long[] unique = Arrays.copyOf(mediaIds, size);
+            Arrays.sort(unique);
+            int distinct = 1;
+            for (int i = 1; i < size; i++) {
+                if (unique[i] != unique[distinct - 1]) {
+                    unique[distinct++] = unique[i];
+                }
+            }
+
+            int[] merged = new int[distinct];
+            for (int i = 0; i < size; i++) {
+                int index = Arrays.binarySearch(unique, 0, distinct, mediaIds[i]);
+                merged[index] = (int) Math.min((long) merged[index] + playCounts[i], Integer.MAX_VALUE);
+            }
+            return new PlayHistory(trim(unique, distinct), merged);
+        }
+
+        private static long[] trim(long[] array, int length) {
+            return array.length == length ? array : Arrays.copyOf(array, length);
+        }
+
+        private static int[] trim(int[] array, int length) {
+            return array.length == length ? array : Arrays.copyOf(array, length);
+        }
+    }
+}
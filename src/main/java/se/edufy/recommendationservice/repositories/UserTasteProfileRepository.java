@@ -0,0 +1,9 @@
+package se.edufy.recommendationservice.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+
+@Repository
+public interface UserTasteProfileRepository extends JpaRepository<UserTasteProfile, String> {
+}
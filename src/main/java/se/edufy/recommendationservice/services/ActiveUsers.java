@@ -0,0 +1,69 @@
+package se.edufy.recommendationservice.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recently active users by number of recommendation requests, for {@link PrecomputeScheduler}
+ * to pick from, and the number of recommendations being computed for live requests right now,
+ * as a measure of load. A user is forgotten {@code active-window} after the last request, and
+ * at most {@code max-users} are tracked.
+ */
+@Component
+public class ActiveUsers {
+
+    public record Activity(
+            String userId,
+            long requests
+    ) {}
+
+    private final Cache<String, LongAdder> requests;
+    private final AtomicInteger computing = new AtomicInteger();
+
+    public ActiveUsers(
+            @Value("${recommendation.precompute.max-users:1000}") long maxUsers,
+            @Value("${recommendation.precompute.active-window:5m}") Duration activeWindow
+    ) {
+        this.requests = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(activeWindow)
+                .build();
+    }
+
+    public void requested(String userId) {
+        requests.get(userId, id -> new LongAdder()).increment();
+    }
+
+    public void computeStarted() {
+        computing.incrementAndGet();
+    }
+
+    public void computeFinished() {
+        computing.decrementAndGet();
+    }
+
+    /**
+     * @return recommendations being computed on the request path right now
+     */
+    public int computing() {
+        return computing.get();
+    }
+
+    /**
+     * The active users with the most requests first.
+     */
+    public List<Activity> mostActive() {
+        return requests.asMap().entrySet().stream()
+                .map(entry -> new Activity(entry.getKey(), entry.getValue().sum()))
+                .sorted(Comparator.comparingLong(Activity::requests).reversed())
+                .toList();
+    }
+}
@@ -0,0 +1,85 @@
+package se.edufy.recommendationservice.services;
+
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.util.BitSet;
+
+/**
+ * Default {@link Scorer}: the user's affinity for the item's genres plus, with a higher weight,
+ * for its artists. Both affinities are scaled to sum to 1, so the score does not grow with the
+ * length of the history.
+ *
+ * <p>Only items sharing a genre or an artist with the user can score above zero. The scores are
+ * accumulated up front by walking the postings of those few genres and artists, which reads
+ * memory sequentially, and the rest of the catalog is never touched.
+ */
+public final class AffinityScorer implements Scorer {
+
+    // a liked artist is a stronger signal than a shared genre
+    static final double ARTIST_WEIGHT = 2.0;
+
+    // float is plenty for ranking and halves the per-request array
+    private final float[] scores;
+    private final BitSet scored;
+
+    /**
+     * @param genreAffinity  non-negative weight per catalog genre id
+     * @param artistAffinity non-negative weight per catalog artist index
+     */
+    public AffinityScorer(CatalogSnapshot catalog, double[] genreAffinity, double[] artistAffinity) {
+        this.scores = new float[catalog.size()];
+        this.scored = new BitSet(catalog.size());
+
+        double genreScale = scale(genreAffinity, 1.0);
+        for (int genre = 0; genre < genreAffinity.length; genre++) {
+            if (genreAffinity[genre] > 0) {
+                add(catalog.postings(genre), (float) (genreAffinity[genre] * genreScale));
+            }
+        }
+
+        double artistScale = scale(artistAffinity, ARTIST_WEIGHT);
+        for (int artist = 0; artist < artistAffinity.length; artist++) {
+            if (artistAffinity[artist] > 0) {
+                add(catalog.artistPostings(artist), (float) (artistAffinity[artist] * artistScale));
+            }
+        }
+    }
+
+    /**
+     * Adds {@code weight} to the item's score, for signals beyond genres and artists such as
+     * item-to-item neighbours.
+     */
+    public void boost(int ordinal, double weight) {
+        if (weight > 0) {
+            scores[ordinal] += (float) weight;
+            scored.set(ordinal);
+        }
+    }
+
+    @Override
+    public double score(int ordinal) {
+        return scores[ordinal];
+    }
+
+    @Override
+    public BitSet scoredCandidates(BitSet candidates) {
+        BitSet result = (BitSet) scored.clone();
+        result.and(candidates);
+        return result;
+    }
+
+    private void add(int[] postings, float weight) {
+        for (int ordinal : postings) {
+            scores[ordinal] += weight;
+            scored.set(ordinal);
+        }
+    }
+
+    private static double scale(double[] weights, double weight) {
+        double total = 0;
+        for (double w : weights) {
+            total += w;
+        }
+        return total > 0 ? weight / total : 0;
+    }
+}
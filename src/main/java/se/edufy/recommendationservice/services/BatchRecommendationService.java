@@ -0,0 +1,98 @@
+package se.edufy.recommendationservice.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import se.edufy.recommendationservice.dtos.BatchRecommendationDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Computes recommendations for many users against one shared catalog snapshot, e.g. for the
+ * nightly email job. Users are processed in chunks: one profile query per chunk, then the chunk
+ * is computed in parallel on a bounded pool. Results are handed to the sink as soon as they are
+ * done, so memory stays flat regardless of batch size.
+ */
+@Service
+public class BatchRecommendationService {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    @FunctionalInterface
+    public interface Sink {
+        void accept(BatchRecommendationDTO result) throws IOException;
+    }
+
+    private final RecommendationService recommendationService;
+    private final TasteProfileService tasteProfileService;
+    private final MediaCatalog mediaCatalog;
+    private final ExecutorService executor;
+    private final int chunkSize;
+
+    public BatchRecommendationService(
+            RecommendationService recommendationService,
+            TasteProfileService tasteProfileService,
+            MediaCatalog mediaCatalog,
+            @Value("${recommendation.batch.parallelism:0}") int parallelism,
+            @Value("${recommendation.batch.chunk-size:100}") int chunkSize
+    ) {
+        this.recommendationService = recommendationService;
+        this.tasteProfileService = tasteProfileService;
+        this.mediaCatalog = mediaCatalog;
+        this.executor = Executors.newFixedThreadPool(
+                parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.chunkSize = chunkSize;
+    }
+
+    public void recommendAll(List<String> userIds, Sink sink) throws IOException {
+        CatalogSnapshot catalog = mediaCatalog.current();
+        long start = System.nanoTime();
+
+        for (int from = 0; from < userIds.size(); from += chunkSize) {
+            List<String> chunk = userIds.subList(from, Math.min(from + chunkSize, userIds.size()));
+            Map<String, UserTasteProfile> profiles = tasteProfileService.findAll(chunk);
+
+            CompletionService<BatchRecommendationDTO> completion = new ExecutorCompletionService<>(executor);
+            for (String userId : chunk) {
+                completion.submit(() -> compute(userId, profiles.get(userId), catalog));
+            }
+
+            try {
+                for (int i = 0; i < chunk.size(); i++) {
+                    sink.accept(completion.take().get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Batch recommendation was interrupted", e);
+            } catch (ExecutionException e) {
+                // compute() reports failures per user, so this is unexpected
+                throw new IllegalStateException("Batch recommendation failed", e.getCause());
+            }
+        }
+
+        log.info("Computed batch recommendations for {} users in {} ms",
+                userIds.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private BatchRecommendationDTO compute(String userId, UserTasteProfile profile, CatalogSnapshot catalog) {
+        try {
+            return new BatchRecommendationDTO(userId,
+                    recommendationService.recommendFromProfile(userId, profile, catalog), null);
+        } catch (RuntimeException e) {
+            log.warn("Batch recommendation failed for user {}: {}", userId, e.getMessage());
+            return new BatchRecommendationDTO(userId, List.of(), e.getMessage());
+        }
+    }
+}
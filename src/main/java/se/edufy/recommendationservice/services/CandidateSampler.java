@@ -0,0 +1,119 @@
+package se.edufy.recommendationservice.services;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+
+/**
+ * Draws k distinct ordinals uniformly at random from a candidate bitset. It never materializes or
+ * shuffles the full candidate list, so memory is O(k).
+ *
+ * <p>Dense candidate sets (the usual "everything not yet played") use rejection sampling over
+ * the ordinal range, which costs O(k). Sparse sets draw k sorted ranks with Floyd's algorithm and
+ * resolve them in a single pass over the set bits.
+ */
+@Component
+public class CandidateSampler {
+
+    // below this share of set bits rejection sampling starts to waste too many draws
+    private static final int DENSE_RATIO = 4;
+
+    private final Supplier<RandomGenerator> random;
+
+    public CandidateSampler() {
+        this(ThreadLocalRandom::current);
+    }
+
+    /**
+     * Uses the given generator for every draw, e.g. a seeded one for reproducible tests.
+     * The generator must be thread-safe if the sampler is shared.
+     */
+    public CandidateSampler(RandomGenerator random) {
+        this(() -> random);
+    }
+
+    private CandidateSampler(Supplier<RandomGenerator> random) {
+        this.random = random;
+    }
+
+    /**
+     * @return up to {@code k} distinct set bits of {@code candidates}, in random order
+     */
+    public int[] sample(BitSet candidates, int k) {
+        int n = candidates.cardinality();
+        if (k <= 0 || n == 0) {
+            return new int[0];
+        }
+
+        RandomGenerator rnd = random.get();
+        int[] picks = (long) n * DENSE_RATIO >= candidates.length()
+                ? sampleDense(candidates, Math.min(k, n), rnd)
+                : sampleSparse(candidates, n, Math.min(k, n), rnd);
+
+        // partial Fisher–Yates over the k picks only
+        for (int i = picks.length - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int tmp = picks[i];
+            picks[i] = picks[j];
+            picks[j] = tmp;
+        }
+        return picks;
+    }
+
+    private static int[] sampleDense(BitSet candidates, int k, RandomGenerator rnd) {
+        int range = candidates.length();
+        int[] picks = new int[k];
+        int count = 0;
+
+        while (count < k) {
+            int ordinal = rnd.nextInt(range);
+            if (candidates.get(ordinal) && !contains(picks, count, ordinal)) {
+                picks[count++] = ordinal;
+            }
+        }
+        return picks;
+    }
+
+    private static int[] sampleSparse(BitSet candidates, int n, int k, RandomGenerator rnd) {
+        // Floyd's algorithm: k distinct ranks in [0, n), kept sorted
+        int[] ranks = new int[k];
+        int count = 0;
+        for (int j = n - k; j < n; j++) {
+            int rank = rnd.nextInt(j + 1);
+            int pos = Arrays.binarySearch(ranks, 0, count, rank);
+            if (pos >= 0) {
+                rank = j;
+                pos = -(count + 1);
+            }
+            int insertAt = -(pos + 1);
+            System.arraycopy(ranks, insertAt, ranks, insertAt + 1, count - insertAt);
+            ranks[insertAt] = rank;
+            count++;
+        }
+
+        // resolve ranks to ordinals in one pass over the set bits
+        int[] picks = new int[k];
+        int rank = 0;
+        int next = 0;
+        for (int ordinal = candidates.nextSetBit(0); ordinal >= 0 && next < k;
+             ordinal = candidates.nextSetBit(ordinal + 1), rank++) {
+            if (rank == ranks[next]) {
+                picks[next++] = ordinal;
+            }
+        }
+        return picks;
+    }
+
+    private static boolean contains(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
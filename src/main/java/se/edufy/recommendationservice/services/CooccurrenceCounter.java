@@ -0,0 +1,102 @@
+package se.edufy.recommendationservice.services;
+
+import se.edufy.recommendationservice.models.CooccurrenceTable;
+import se.edufy.recommendationservice.utils.LongIntHashMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts how often two media were played by the same user and turns the counts into a
+ * {@link CooccurrenceTable} of the top neighbours per media.
+ *
+ * <p>The similarity is the cosine of the two items' user sets, {@code c(x, y) / sqrt(n(x) n(y))},
+ * so popular items do not become everyone's neighbour. Pairs seen by fewer than
+ * {@code minCount} users are dropped as noise. Not thread-safe.
+ */
+final class CooccurrenceCounter {
+
+    private final int maxItemsPerUser;
+    private final LongIntHashMap itemCounts = new LongIntHashMap(1024, 0);
+    private final Map<Long, LongIntHashMap> pairCounts = new HashMap<>();
+    private int users;
+
+    /**
+     * @param maxItemsPerUser pairs grow with the square of a history, so longer histories are
+     *                        thinned out to this many evenly spread items
+     */
+    CooccurrenceCounter(int maxItemsPerUser) {
+        this.maxItemsPerUser = maxItemsPerUser;
+    }
+
+    void addUser(long[] playedMediaIds) {
+        long[] items = thinned(playedMediaIds);
+        if (items.length == 0) {
+            return;
+        }
+        users++;
+
+        for (int i = 0; i < items.length; i++) {
+            itemCounts.addTo(items[i], 1);
+            LongIntHashMap pairs = pairCounts.computeIfAbsent(items[i], id -> new LongIntHashMap(16, 0));
+            for (int j = 0; j < items.length; j++) {
+                if (i != j) {
+                    pairs.addTo(items[j], 1);
+                }
+            }
+        }
+    }
+
+    int users() {
+        return users;
+    }
+
+    CooccurrenceTable.Writer toTable(int neighbours, int minCount) {
+        long[] ids = pairCounts.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        CooccurrenceTable.Writer writer = new CooccurrenceTable.Writer();
+
+        long[] topIds = new long[neighbours];
+        float[] topScores = new float[neighbours];
+        for (long id : ids) {
+            double itemCount = itemCounts.get(id);
+            int[] size = {0};
+
+            pairCounts.get(id).forEach((neighbour, count) -> {
+                if (count < minCount) {
+                    return;
+                }
+                float score = (float) (count / Math.sqrt(itemCount * itemCounts.get(neighbour)));
+                if (size[0] == neighbours && score <= topScores[size[0] - 1]) {
+                    return;
+                }
+
+                // insertion into the short sorted top list, highest first
+                int i = size[0] < neighbours ? size[0]++ : size[0] - 1;
+                while (i > 0 && topScores[i - 1] < score) {
+                    topIds[i] = topIds[i - 1];
+                    topScores[i] = topScores[i - 1];
+                    i--;
+                }
+                topIds[i] = neighbour;
+                topScores[i] = score;
+            });
+
+            if (size[0] > 0) {
+                writer.add(id, topIds, topScores, size[0]);
+            }
+        }
+        return writer;
+    }
+
+    private long[] thinned(long[] playedMediaIds) {
+        if (playedMediaIds.length <= maxItemsPerUser) {
+            return playedMediaIds;
+        }
+        long[] items = new long[maxItemsPerUser];
+        double step = (double) playedMediaIds.length / maxItemsPerUser;
+        for (int i = 0; i < items.length; i++) {
+            items[i] = playedMediaIds[(int) (i * step)];
+        }
+        return items;
+    }
+}
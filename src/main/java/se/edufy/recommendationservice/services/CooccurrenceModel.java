@@ -0,0 +1,123 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CooccurrenceTable;
+import se.edufy.recommendationservice.repositories.UserTasteProfileRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Item → item neighbours ("users who played X also played Y") served from a memory-mapped
+ * {@link CooccurrenceTable}. The table file is mapped at startup, so a restart serves the last
+ * model at once. A background job rebuilds it from the played media of every stored taste
+ * profile, writes a new file and maps that in its place.
+ */
+@Component
+public class CooccurrenceModel {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    private final UserTasteProfileRepository repository;
+    private final Path file;
+    private final int neighbours;
+    private final int minCount;
+    private final int maxItemsPerUser;
+    private final int pageSize;
+    private final AtomicReference<CooccurrenceTable> table = new AtomicReference<>(CooccurrenceTable.EMPTY);
+
+    public CooccurrenceModel(
+            UserTasteProfileRepository repository,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.cooccurrence.file:data/cooccurrence.bin}") Path file,
+            @Value("${recommendation.cooccurrence.neighbours:20}") int neighbours,
+            @Value("${recommendation.cooccurrence.min-count:2}") int minCount,
+            @Value("${recommendation.cooccurrence.max-items-per-user:200}") int maxItemsPerUser,
+            @Value("${recommendation.cooccurrence.page-size:500}") int pageSize
+    ) {
+        this.repository = repository;
+        this.file = file;
+        this.neighbours = neighbours;
+        this.minCount = minCount;
+        this.maxItemsPerUser = maxItemsPerUser;
+        this.pageSize = pageSize;
+
+        Gauge.builder("recommendation.cooccurrence.items", table, t -> t.get().itemCount())
+                .description("Number of media with neighbours in the mapped co-occurrence table")
+                .register(meterRegistry);
+
+        if (Files.exists(file)) {
+            load();
+        } else {
+            log.info("No co-occurrence table at {} yet, serving without neighbours until it is built", file);
+        }
+    }
+
+    public CooccurrenceTable current() {
+        return table.get();
+    }
+
+    @Scheduled(
+            initialDelayString = "${recommendation.cooccurrence.initial-delay:10m}",
+            fixedDelayString = "${recommendation.cooccurrence.rebuild-interval:6h}"
+    )
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Co-occurrence rebuild failed, keeping the current table: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Counts co-occurrences over all stored profiles, page by page, writes a new table file
+     * and maps it in.
+     *
+     * @return the table in use after the rebuild
+     */
+    public CooccurrenceTable rebuild() throws IOException {
+        long start = System.nanoTime();
+        CooccurrenceCounter counter = new CooccurrenceCounter(maxItemsPerUser);
+
+        PageRequest request = PageRequest.of(0, pageSize, Sort.by("userId"));
+        Page<UserTasteProfile> page;
+        do {
+            page = repository.findAll(request);
+            page.forEach(profile -> counter.addUser(profile.getPlayedMediaIds()));
+            request = request.next();
+        } while (page.hasNext());
+
+        CooccurrenceTable.Writer writer = counter.toTable(neighbours, minCount);
+        writer.write(file);
+        CooccurrenceTable rebuilt = load();
+
+        log.info("Co-occurrence table rebuilt from {} users: {} media, {} neighbours in {} ms",
+                counter.users(), rebuilt.itemCount(), rebuilt.neighbourCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return rebuilt;
+    }
+
+    private CooccurrenceTable load() {
+        try {
+            CooccurrenceTable mapped = CooccurrenceTable.map(file);
+            table.set(mapped);
+            log.info("Mapped co-occurrence table {} with {} media", file, mapped.itemCount());
+        } catch (IOException e) {
+            log.warn("Could not map co-occurrence table {}, keeping the current one: {}", file, e.getMessage());
+        }
+        return table.get();
+    }
+}
@@ -0,0 +1,325 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import se.edufy.recommendationservice.clients.MediaClient;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.CatalogSnapshotFile;
+import se.edufy.recommendationservice.utils.SingleFlight;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Process-wide copy of the media catalog. It is refreshed in the background and on demand,
+ * so recommendation requests read the current snapshot instead of downloading the catalog.
+ * A failed refresh keeps serving the previous snapshot.
+ *
+ * <p>Refreshes are incremental where the gateway allows it: with {@code delta-sync} on, only
+ * the media changed since the last response's {@code Last-Modified} are fetched and applied to
+ * the current snapshot, and full downloads are conditional on its {@code ETag}, so an unchanged
+ * catalog costs a {@code 304} without a body. A full download replaces the snapshot when the
+ * gateway has no changes endpoint, and when removed media leave too many gaps in the ordinals.
+ *
+ * <p>The snapshot is also saved to {@code snapshot-file} periodically and on shutdown. A restart
+ * loads that file, serves from it at once, and the first background refresh only asks the
+ * gateway for what changed since it was saved.
+ */
+@Component
+public class MediaCatalog {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    private static final String CATALOG = "catalog";
+
+    // removed media keep their ordinal until a full download compacts the catalog
+    private static final double MAX_REMOVED_SHARE = 0.25;
+
+    private final MediaClient mediaClient;
+    private final UpstreamGuard upstreamGuard;
+    private final Clock clock;
+    private final Timer refreshTimer;
+    private final Timer failedRefreshTimer;
+    private final AtomicReference<CatalogSnapshot> snapshot = new AtomicReference<>(CatalogSnapshot.EMPTY);
+    private final SingleFlight<String, CatalogSnapshot> refreshes;
+    private final boolean deltaSync;
+    private final Counter fullDownloads;
+    private final Counter changeDownloads;
+    private final Counter notModified;
+    private final Path snapshotFile;
+    private volatile boolean warmStarted;
+
+    // the snapshot and version last written to the file, so an unchanged catalog is not written
+    // again; a not-modified refresh only gives the same catalog a new loadedAt
+    private volatile CatalogSnapshot saved;
+    private volatile MediaClient.CatalogVersion savedVersion;
+
+    // written by the refresh in flight, and by the warm start before any refresh
+    private volatile MediaClient.CatalogVersion version = MediaClient.CatalogVersion.NONE;
+    private volatile boolean changesSupported = true;
+
+    @Autowired
+    public MediaCatalog(
+            MediaClient mediaClient,
+            UpstreamGuard upstreamGuard,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.catalog.delta-sync:true}") boolean deltaSync,
+            @Value("${recommendation.catalog.snapshot-file:data/catalog.bin}") Path snapshotFile
+    ) {
+        this(mediaClient, upstreamGuard, meterRegistry, Clock.systemUTC(), deltaSync, snapshotFile);
+    }
+
+    /**
+     * A catalog with delta sync that is not saved to a file.
+     */
+    public MediaCatalog(MediaClient mediaClient, UpstreamGuard upstreamGuard, MeterRegistry meterRegistry) {
+        this(mediaClient, upstreamGuard, meterRegistry, Clock.systemUTC(), true, null);
+    }
+
+    MediaCatalog(MediaClient mediaClient, UpstreamGuard upstreamGuard, MeterRegistry meterRegistry, Clock clock,
+                 boolean deltaSync, Path snapshotFile) {
+        this.mediaClient = mediaClient;
+        this.upstreamGuard = upstreamGuard;
+        this.clock = clock;
+        this.deltaSync = deltaSync;
+        this.snapshotFile = snapshotFile;
+        this.refreshes = new SingleFlight<>(UpstreamGuard.coalescedCounter(meterRegistry, UpstreamGuard.MEDIA));
+
+        this.refreshTimer = Timer.builder("recommendation.catalog.refresh")
+                .description("Time spent downloading and swapping in a new catalog snapshot")
+                .tag("outcome", "success")
+                .register(meterRegistry);
+        this.failedRefreshTimer = Timer.builder("recommendation.catalog.refresh")
+                .description("Time spent downloading and swapping in a new catalog snapshot")
+                .tag("outcome", "failure")
+                .register(meterRegistry);
+
+        this.fullDownloads = syncCounter(meterRegistry, "full");
+        this.changeDownloads = syncCounter(meterRegistry, "changes");
+        this.notModified = syncCounter(meterRegistry, "not-modified");
+
+        Gauge.builder("recommendation.catalog.size", snapshot, s -> s.get().liveCount())
+                .description("Number of media items in the current catalog snapshot")
+                .register(meterRegistry);
+        TimeGauge.builder("recommendation.catalog.age", snapshot, TimeUnit.MILLISECONDS,
+                        s -> s.get().isLoaded() ? s.get().age(clock.instant()).toMillis() : Double.NaN)
+                .description("Age of the current catalog snapshot")
+                .register(meterRegistry);
+
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            warmStart();
+        }
+    }
+
+    /**
+     * @return {@code true} if the catalog was loaded from the snapshot file at startup
+     */
+    public boolean warmStarted() {
+        return warmStarted;
+    }
+
+    /**
+     * @return {@code false} until the first snapshot is loaded, when {@link #current} would
+     * download the catalog on the calling thread
+     */
+    public boolean isLoaded() {
+        return snapshot.get().isLoaded();
+    }
+
+    /**
+     * Returns the current snapshot. Only the very first call before any successful refresh
+     * loads the catalog on the calling thread.
+     */
+    public CatalogSnapshot current() {
+        CatalogSnapshot current = snapshot.get();
+        if (current.isLoaded()) {
+            return current;
+        }
+
+        refresh();
+
+        current = snapshot.get();
+        if (!current.isLoaded()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Media catalog is not loaded yet");
+        }
+        return current;
+    }
+
+    @Scheduled(
+            initialDelayString = "${recommendation.catalog.initial-delay:0s}",
+            fixedDelayString = "${recommendation.catalog.refresh-interval:5m}"
+    )
+    public void scheduledRefresh() {
+        refresh();
+    }
+
+    /**
+     * Downloads the catalog and swaps it in atomically. Concurrent callers (a cold start under
+     * load, the schedule and the admin endpoint) share the refresh in progress and return the
+     * snapshot it produced.
+     *
+     * @return the snapshot in use after the refresh, which is the previous one if it failed
+     */
+    public CatalogSnapshot refresh() {
+        return refreshes.execute(CATALOG, this::download);
+    }
+
+    @Scheduled(
+            initialDelayString = "${recommendation.catalog.snapshot-interval:10m}",
+            fixedDelayString = "${recommendation.catalog.snapshot-interval:10m}"
+    )
+    public void scheduledSave() {
+        save();
+    }
+
+    @PreDestroy
+    void saveOnShutdown() {
+        save();
+    }
+
+    /**
+     * Writes the current snapshot to the snapshot file, unless it is not loaded yet or the same
+     * catalog at the same version is already saved. A failed write is logged and leaves the
+     * previous file in place.
+     */
+    void save() {
+        // read before the snapshot: a refresh sets the snapshot first, so the version saved is never
+        // newer than the snapshot, and at worst the next refresh asks for changes it already has
+        MediaClient.CatalogVersion currentVersion = version;
+        CatalogSnapshot current = snapshot.get();
+        if (snapshotFile == null || !current.isLoaded()
+                || (current.sameCatalogAs(saved) && currentVersion.equals(savedVersion))) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            CatalogSnapshotFile.write(snapshotFile, current, currentVersion.etag(), currentVersion.lastModified());
+            saved = current;
+            savedVersion = currentVersion;
+            log.debug("Saved media catalog snapshot of {} items to {} in {} ms", current.liveCount(), snapshotFile,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not save the media catalog snapshot to {}: {}", snapshotFile, e.toString());
+        }
+    }
+
+    private void warmStart() {
+        long start = System.nanoTime();
+        try {
+            CatalogSnapshotFile.Contents contents = CatalogSnapshotFile.read(snapshotFile);
+            snapshot.set(contents.snapshot());
+            version = new MediaClient.CatalogVersion(contents.etag(), contents.lastModified());
+            saved = contents.snapshot();
+            savedVersion = version;
+            warmStarted = true;
+            log.info("Media catalog warm-started from {}: {} items as of {} in {} ms", snapshotFile,
+                    contents.snapshot().liveCount(), contents.snapshot().loadedAt(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not warm-start the media catalog from {}, loading it from the gateway: {}",
+                    snapshotFile, e.toString());
+        }
+    }
+
+    private CatalogSnapshot download() {
+        CatalogSnapshot before = snapshot.get();
+        long start = System.nanoTime();
+        try {
+            Refresh refresh = canApplyChanges(before) ? downloadChanges(before) : null;
+            if (refresh == null) {
+                refresh = downloadAll(before);
+            }
+            snapshot.set(refresh.snapshot());
+            version = refresh.version();
+
+            refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.info("Media catalog refreshed ({}, {} records): {} items in {} ms", refresh.kind(), refresh.records(),
+                    refresh.snapshot().liveCount(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            failedRefreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.warn("Media catalog refresh failed, keeping snapshot from {}: {}",
+                    before.isLoaded() ? before.loadedAt() : "never", e.getMessage());
+        }
+        return snapshot.get();
+    }
+
+    private record Refresh(
+            String kind,
+            int records,
+            CatalogSnapshot snapshot,
+            MediaClient.CatalogVersion version
+    ) {}
+
+    private boolean canApplyChanges(CatalogSnapshot current) {
+        return deltaSync
+                && changesSupported
+                && current.isLoaded()
+                && version.lastModified() != null
+                && current.size() - current.liveCount() <= current.size() * MAX_REMOVED_SHARE;
+    }
+
+    /**
+     * @return {@code null} if the gateway cannot serve changes
+     */
+    private Refresh downloadChanges(CatalogSnapshot current) {
+        CatalogSnapshot.Builder changes = new CatalogSnapshot.Builder(current);
+        MediaClient.Fetch fetch = upstreamGuard.call(UpstreamGuard.MEDIA,
+                () -> mediaClient.streamChangedMedia(changes, version));
+
+        return switch (fetch.status()) {
+            case UNSUPPORTED -> {
+                log.info("Gateway serves no media catalog changes, refreshing with full downloads");
+                changesSupported = false;
+                yield null;
+            }
+            case NOT_MODIFIED -> unchanged(current, fetch);
+            case LOADED -> {
+                changeDownloads.increment();
+                yield new Refresh("changes", fetch.records(), changes.build(clock.instant()), fetch.version());
+            }
+        };
+    }
+
+    private Refresh downloadAll(CatalogSnapshot current) {
+        // the previous size is a good guess for the next one and saves rehashing the id index
+        CatalogSnapshot.Builder builder = new CatalogSnapshot.Builder(Math.max(current.size(), 1024));
+        MediaClient.CatalogVersion ifChanged = current.isLoaded() ? version : MediaClient.CatalogVersion.NONE;
+        MediaClient.Fetch fetch = upstreamGuard.call(UpstreamGuard.MEDIA,
+                () -> mediaClient.streamAllMedia(builder, ifChanged));
+
+        if (fetch.status() == MediaClient.Status.NOT_MODIFIED) {
+            return unchanged(current, fetch);
+        }
+        fullDownloads.increment();
+        return new Refresh("full", fetch.records(), builder.build(clock.instant()), fetch.version());
+    }
+
+    private Refresh unchanged(CatalogSnapshot current, MediaClient.Fetch fetch) {
+        notModified.increment();
+        return new Refresh("not modified", 0, current.withLoadedAt(clock.instant()), fetch.version());
+    }
+
+    private static Counter syncCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("recommendation.catalog.sync")
+                .description("Catalog refreshes by what the gateway sent: the full catalog, only changes, or nothing")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
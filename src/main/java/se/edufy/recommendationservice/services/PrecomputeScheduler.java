@@ -0,0 +1,211 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recomputes the default recommendations of recently active users in the background and pins
+ * them to their {@link RecommendationCache} entry, so their requests are served with a cache
+ * lookup instead of a computation.
+ *
+ * <p>Every {@code interval} the {@link ActiveUsers} are queued, most requests first, on a pool of
+ * {@code concurrency} low-priority threads. The queue holds at most {@code queue-capacity} users;
+ * the rest wait for the next round. A round is skipped, and a queued user left for the next
+ * one, while more than {@code max-live-computations} recommendations are being computed for live
+ * requests, so precomputing only uses spare capacity.
+ *
+ * <p>Only users with a cache entry are precomputed: their history can only be fetched with their
+ * own token, so the first request after an entry expires still computes on the request path.
+ * An entry that already holds pinned results is skipped, since its history has not changed.
+ *
+ * <p>Precomputed recommendations are pinned results, so the scheduler only runs with both
+ * {@code recommendation.precompute.enabled} and {@code recommendation.cache.pin-results} set.
+ */
+@Component
+@ConditionalOnProperty(name = {"recommendation.precompute.enabled", "recommendation.cache.pin-results"}, havingValue = "true")
+public class PrecomputeScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    private final RecommendationService recommendationService;
+    private final ActiveUsers activeUsers;
+    private final int maxLiveComputations;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final Timer lag;
+    private final Timer computeTimer;
+    private final Counter stored;
+    private final Counter expired;
+    private final Counter pinned;
+    private final Counter deferred;
+    private final Counter rejected;
+    private final Counter failed;
+
+    public PrecomputeScheduler(
+            RecommendationService recommendationService,
+            ActiveUsers activeUsers,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.precompute.concurrency:1}") int concurrency,
+            @Value("${recommendation.precompute.queue-capacity:1000}") int queueCapacity,
+            @Value("${recommendation.precompute.max-live-computations:2}") int maxLiveComputations
+    ) {
+        this.recommendationService = recommendationService;
+        this.activeUsers = activeUsers;
+        this.maxLiveComputations = maxLiveComputations;
+        this.slots = new Semaphore(queueCapacity);
+
+        AtomicLong threads = new AtomicLong();
+        ThreadFactory threadFactory = task -> {
+            Thread thread = new Thread(task, "precompute-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        };
+        // tasks are Comparable, so the queue runs the most active users first
+        this.executor = new ThreadPoolExecutor(concurrency, concurrency, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), threadFactory);
+
+        Gauge.builder("recommendation.precompute.queue", executor, e -> e.getQueue().size())
+                .description("Users waiting to have their recommendations precomputed")
+                .register(meterRegistry);
+        this.lag = Timer.builder("recommendation.precompute.lag")
+                .description("Time a user waited in the precompute queue")
+                .register(meterRegistry);
+        this.computeTimer = Timer.builder("recommendation.precompute.duration")
+                .description("Time spent precomputing one user's recommendations")
+                .register(meterRegistry);
+        this.stored = resultCounter(meterRegistry, "stored");
+        this.expired = resultCounter(meterRegistry, "expired");
+        this.pinned = resultCounter(meterRegistry, "pinned");
+        this.deferred = resultCounter(meterRegistry, "deferred");
+        this.rejected = resultCounter(meterRegistry, "rejected");
+        this.failed = resultCounter(meterRegistry, "failed");
+    }
+
+    @Scheduled(
+            initialDelayString = "${recommendation.precompute.interval:1m}",
+            fixedDelayString = "${recommendation.precompute.interval:1m}"
+    )
+    public void scheduleRound() {
+        if (busy()) {
+            log.debug("Skipping precompute round, {} live recommendations are being computed", activeUsers.computing());
+            return;
+        }
+
+        int submitted = 0;
+        int full = 0;
+        for (ActiveUsers.Activity user : activeUsers.mostActive()) {
+            if (!queued.add(user.userId())) {
+                continue;
+            }
+            if (!slots.tryAcquire()) {
+                queued.remove(user.userId());
+                full++;
+                continue;
+            }
+            executor.execute(new Task(user.userId(), user.requests(), sequence.incrementAndGet(), System.nanoTime()));
+            submitted++;
+        }
+        rejected.increment(full);
+
+        if (submitted > 0 || full > 0) {
+            log.debug("Queued {} active users for precompute, {} left for the next round with the queue full",
+                    submitted, full);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private boolean busy() {
+        return activeUsers.computing() > maxLiveComputations;
+    }
+
+    private void precompute(Task task) {
+        try {
+            lag.record(System.nanoTime() - task.enqueuedAt, TimeUnit.NANOSECONDS);
+            if (busy()) {
+                deferred.increment();
+                return;
+            }
+
+            long start = System.nanoTime();
+            RecommendationService.Precomputed outcome = recommendationService.precompute(task.userId);
+            switch (outcome) {
+                case STORED -> stored.increment();
+                case EXPIRED -> expired.increment();
+                case PINNED -> pinned.increment();
+            }
+            // nothing was computed for an entry that was already pinned
+            if (outcome != RecommendationService.Precomputed.PINNED) {
+                computeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.warn("Precomputing recommendations failed for user {}: {}", task.userId, e.getMessage());
+        } finally {
+            queued.remove(task.userId);
+            slots.release();
+        }
+    }
+
+    private static Counter resultCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("recommendation.precompute")
+                .description("Precompute attempts by result: stored, the cache entry had expired, the entry "
+                        + "already held pinned results, deferred under load, rejected with the queue full, or failed")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * One user to precompute. Ordered by most requests first, then in queueing order.
+     */
+    private final class Task implements Runnable, Comparable<Task> {
+
+        private final String userId;
+        private final long requests;
+        private final long sequence;
+        private final long enqueuedAt;
+
+        Task(String userId, long requests, long sequence, long enqueuedAt) {
+            this.userId = userId;
+            this.requests = requests;
+            this.sequence = sequence;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byRequests = Long.compare(other.requests, requests);
+            return byRequests != 0 ? byRequests : Long.compare(sequence, other.sequence);
+        }
+
+        @Override
+        public void run() {
+            precompute(this);
+        }
+    }
+}
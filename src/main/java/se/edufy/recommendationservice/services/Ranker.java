@@ -0,0 +1,17 @@
+package se.edufy.recommendationservice.services;
+
+import java.util.BitSet;
+
+/**
+ * Picks the final recommendations among candidate catalog ordinals.
+ */
+public interface Ranker {
+
+    /**
+     * @param candidates  ordinals that may be recommended; not modified
+     * @param size        number of ordinals to return, if there are that many candidates
+     * @param exploration share of {@code size}, between 0 and 1, drawn at random instead of by score
+     * @return the picked ordinals, best-scored first and exploration picks last
+     */
+    int[] rank(BitSet candidates, Scorer scorer, int size, double exploration);
+}
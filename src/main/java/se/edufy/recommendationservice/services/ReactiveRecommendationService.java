@@ -0,0 +1,115 @@
+package se.edufy.recommendationservice.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import se.edufy.recommendationservice.clients.ReactivePlayClient;
+import se.edufy.recommendationservice.clients.ReactiveRatingClient;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.PlayHistory;
+import se.edufy.recommendationservice.services.RecommendationMetrics.Stage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Non-blocking variant of {@link RecommendationService#recommend(Jwt, RecommendationService.Options)},
+ * enabled with {@code recommendation.reactive.enabled}. On a cache miss the plays, the ratings
+ * and the stored taste profile are requested at once and zipped, and no thread waits for the
+ * gateway in the meantime; only the database read, which blocks, runs on the bounded elastic
+ * scheduler. Scoring and ranking are the same steps as the blocking path, run on the parallel
+ * scheduler, or on the bounded elastic one while the catalog is not loaded yet, since the first
+ * {@link MediaCatalog#current()} downloads it on the calling thread.
+ *
+ * <p>Like the blocking path, the request runs in the {@code recommendation.recommend}
+ * observation with the same stage timers, gateway calls go through the same circuit breakers
+ * and bulkheads and are coalesced per user with the blocking ones, and any failure degrades to
+ * the stored profile.
+ */
+@Service
+@ConditionalOnProperty(name = "recommendation.reactive.enabled", havingValue = "true")
+public class ReactiveRecommendationService {
+
+    private final ReactivePlayClient playClient;
+    private final ReactiveRatingClient ratingClient;
+    private final UpstreamGuard upstreamGuard;
+    private final RecommendationService recommendationService;
+    private final RecommendationCache recommendationCache;
+    private final MediaCatalog mediaCatalog;
+    private final RecommendationMetrics metrics;
+    private final Duration playsTimeout;
+    private final Duration ratingsTimeout;
+
+    public ReactiveRecommendationService(
+            ReactivePlayClient playClient,
+            ReactiveRatingClient ratingClient,
+            UpstreamGuard upstreamGuard,
+            RecommendationService recommendationService,
+            RecommendationCache recommendationCache,
+            MediaCatalog mediaCatalog,
+            RecommendationMetrics metrics,
+            @Value("${recommendation.upstream.plays-timeout:3s}") Duration playsTimeout,
+            @Value("${recommendation.upstream.ratings-timeout:3s}") Duration ratingsTimeout
+    ) {
+        this.playClient = playClient;
+        this.ratingClient = ratingClient;
+        this.upstreamGuard = upstreamGuard;
+        this.recommendationService = recommendationService;
+        this.recommendationCache = recommendationCache;
+        this.mediaCatalog = mediaCatalog;
+        this.metrics = metrics;
+        this.playsTimeout = playsTimeout;
+        this.ratingsTimeout = ratingsTimeout;
+    }
+
+    public Mono<RecommendationService.Recommendations> recommend(Jwt jwt, RecommendationService.Options options) {
+        String userId = jwt.getSubject();
+
+        return metrics.observe(userId, Mono.defer(() -> {
+                    long stage = metrics.start();
+                    RecommendationCache.Entry cached = recommendationCache.getIfPresent(userId);
+                    Mono<RecommendationCache.Entry> entry = cached != null ? Mono.just(cached) : load(userId, jwt);
+                    return entry.doOnNext(loaded -> metrics.lap(Stage.HISTORY, stage));
+                })
+                .publishOn(scoringScheduler())
+                .map(entry -> recommendationService.recommend(userId, entry, options)));
+    }
+
+    private Scheduler scoringScheduler() {
+        return mediaCatalog.isLoaded() ? Schedulers.parallel() : Schedulers.boundedElastic();
+    }
+
+    private Mono<RecommendationCache.Entry> load(String userId, Jwt jwt) {
+        // read on subscription, before any call goes out
+        long generation = recommendationCache.generation(userId);
+        Mono<PlayHistory> plays = upstreamGuard.call(UpstreamGuard.PLAYS, userId,
+                withTimeout(playClient.getUserPlays(jwt), UpstreamGuard.PLAYS, playsTimeout));
+        Mono<List<RatingDTO>> ratings = upstreamGuard.call(UpstreamGuard.RATINGS, userId,
+                withTimeout(ratingClient.getRatingsForUser(userId, jwt), UpstreamGuard.RATINGS, ratingsTimeout));
+        Mono<Optional<UserTasteProfile>> profile = Mono
+                .fromCallable(() -> Optional.ofNullable(recommendationService.findProfile(userId)))
+                .subscribeOn(Schedulers.boundedElastic());
+
+        // the first failure cancels the other calls; the fallback reads the profile again on its own
+        return Mono.zip(plays, ratings, profile)
+                .publishOn(Schedulers.boundedElastic())
+                .map(zipped -> recommendationService.loaded(userId,
+                        new UpstreamFetcher.Result(zipped.getT1(), zipped.getT2()), zipped.getT3().orElse(null)))
+                .onErrorResume(e -> profile
+                        .map(stored -> recommendationService.degraded(userId, e, stored.orElse(null))))
+                .doOnNext(entry -> recommendationCache.put(userId, generation, entry));
+    }
+
+    private static <T> Mono<T> withTimeout(Mono<T> call, String name, Duration timeout) {
+        return call.timeout(timeout, Mono.error(() -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                "Upstream call '" + name + "' timed out")));
+    }
+}
@@ -0,0 +1,150 @@
+package se.edufy.recommendationservice.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Bounded per-user cache keyed by JWT subject. It holds the user's fetched play and rating
+ * history and stored taste profile, so a reload skips the gateway round-trips and the
+ * database. With {@code pin-results} enabled it also holds the computed recommendations, so
+ * the page stays stable for the entry's lifetime, and {@link PrecomputeScheduler} pins
+ * recommendations computed in the background the same way.
+ *
+ * <p>Entries expire {@code ttl} after they were loaded; pinning does not extend that, so the
+ * history is fetched again at least once per {@code ttl}. Entries are evicted beyond
+ * {@code max-size}. The play and rating services invalidate a user through the admin endpoint
+ * when their history changes. A load that was already running when its user was invalidated
+ * is not stored, since it may have fetched the history from before the change.
+ */
+@Component
+public class RecommendationCache {
+
+    /**
+     * @param degraded the live history could not be fetched and {@code history} was rebuilt from
+     *                 the stored profile instead
+     */
+    public record Entry(
+            UpstreamFetcher.Result history,
+            UserTasteProfile profile,
+            List<MediaDetailsDTO> pinned,
+            boolean degraded
+    ) {}
+
+    // a power of two, so a user's stripe is a mask of the key's hash
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final Cache<String, Entry> cache;
+    private final boolean pinResults;
+    // bumped on every invalidation of a user hashing to the stripe; users sharing a stripe only
+    // cost each other a skipped store, and the array stays the same size however many users there are
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public RecommendationCache(
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.cache.max-size:10000}") long maxSize,
+            @Value("${recommendation.cache.ttl:5m}") Duration ttl,
+            @Value("${recommendation.cache.pin-results:false}") boolean pinResults
+    ) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(Expiry.creating((String userId, Entry entry) -> ttl))
+                .recordStats()
+                .build();
+        this.pinResults = pinResults;
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "recommendations");
+    }
+
+    /**
+     * Returns the user's entry, loading it with {@code loader} on a miss.
+     * The load runs outside the cache's own locking, since it involves gateway calls.
+     * Degraded entries are not stored, so the next request tries the gateway again, and neither
+     * are entries whose user was invalidated while they loaded.
+     */
+    public Entry get(String userId, Supplier<Entry> loader) {
+        long generation = generation(userId);
+        Entry entry = cache.getIfPresent(userId);
+        if (entry == null) {
+            entry = loader.get();
+            put(userId, generation, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * @return the user's entry, or {@code null} on a miss
+     */
+    public Entry getIfPresent(String userId) {
+        return cache.getIfPresent(userId);
+    }
+
+    /**
+     * Read before loading an entry outside of {@link #get}, and passed on to {@link #put}.
+     */
+    public long generation(String userId) {
+        return generations.get(stripe(userId));
+    }
+
+    /**
+     * Stores an entry loaded outside of {@link #get}, unless it is degraded or the user has been
+     * invalidated since {@code generation} was read. The check and the store are one atomic
+     * step, so an invalidation cannot slip in between them.
+     */
+    public void put(String userId, long generation, Entry entry) {
+        if (!entry.degraded()) {
+            cache.asMap().compute(userId, (id, current) -> generation(id) == generation ? entry : current);
+        }
+    }
+
+    /**
+     * Pins the computed result to the entry it was computed from, unless the entry has been
+     * invalidated or replaced in the meantime. Does nothing when pinning is disabled.
+     */
+    public void pin(String userId, Entry computedFrom, List<MediaDetailsDTO> result) {
+        if (pinResults) {
+            cache.asMap().replace(userId, computedFrom, new Entry(computedFrom.history(), computedFrom.profile(), List.copyOf(result), false));
+        }
+    }
+
+    /**
+     * Pins recommendations computed ahead of time to the entry they were computed from, so the
+     * next request is served from the cache. Does nothing when pinning is disabled.
+     *
+     * @return {@code false} if pinning is disabled, or the entry has been invalidated or replaced
+     * in the meantime
+     */
+    public boolean precomputed(String userId, Entry computedFrom, List<MediaDetailsDTO> result) {
+        return pinResults && cache.asMap().replace(userId, computedFrom,
+                new Entry(computedFrom.history(), computedFrom.profile(), List.copyOf(result), false));
+    }
+
+    public void invalidate(String userId) {
+        // bumped first, so a load that stores after this point sees a changed generation
+        generations.incrementAndGet(stripe(userId));
+        cache.invalidate(userId);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        cache.invalidateAll();
+    }
+
+    private static int stripe(String userId) {
+        int hash = userId.hashCode();
+        return (hash ^ (hash >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+}
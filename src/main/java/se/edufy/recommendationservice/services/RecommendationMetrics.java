@@ -0,0 +1,211 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the recommendation pipeline: a timer per numbered stage of
+ * {@link RecommendationService}, histograms of catalog size, candidate count and result size,
+ * and an observation (timer + trace span) around each whole recommendation, which the gateway
+ * calls join as child spans. The time from JVM start to the first recommendation served is
+ * reported once, tagged with whether the catalog was warm-started from its snapshot file.
+ *
+ * <p>Stages are timed lap by lap on one {@code long} of nanos, so the hot path allocates
+ * nothing. With {@code recommendation.metrics.enabled=false} every method returns at once
+ * without reading the clock.
+ */
+@Component
+public class RecommendationMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    public enum Stage {
+        HISTORY("history"),
+        PLAYS("plays"),
+        DISLIKES("dislikes"),
+        CANDIDATES("candidates"),
+        GENRES("genres"),
+        LIKES("likes"),
+        COOCCURRENCE("cooccurrence"),
+        RANK("rank"),
+        MATERIALIZE("materialize");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final boolean enabled;
+    private final ObservationRegistry observationRegistry;
+    private final Timer[] stageTimers;
+    private final DistributionSummary catalogSize;
+    private final DistributionSummary candidates;
+    private final DistributionSummary results;
+    private final Counter degraded;
+    private final MeterRegistry meterRegistry;
+    private final AtomicBoolean firstServed = new AtomicBoolean();
+
+    @Autowired
+    public RecommendationMetrics(
+            MeterRegistry meterRegistry,
+            ObservationRegistry observationRegistry,
+            @Value("${recommendation.metrics.enabled:true}") boolean enabled
+    ) {
+        this.enabled = enabled;
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = enabled ? observationRegistry : ObservationRegistry.NOOP;
+
+        this.stageTimers = new Timer[Stage.values().length];
+        for (Stage stage : Stage.values()) {
+            stageTimers[stage.ordinal()] = enabled
+                    ? Timer.builder("recommendation.stage")
+                            .description("Time spent in one stage of a recommendation request")
+                            .tag("stage", stage.tag)
+                            .register(meterRegistry)
+                    : null;
+        }
+        this.catalogSize = enabled ? summary(meterRegistry, "recommendation.request.catalog.size",
+                "Catalog items a recommendation was computed against") : null;
+        this.candidates = enabled ? summary(meterRegistry, "recommendation.request.candidates",
+                "Candidates left after filtering played and disliked media") : null;
+        this.results = enabled ? summary(meterRegistry, "recommendation.request.results",
+                "Recommendations returned per request") : null;
+
+        // degraded responses are counted even with the pipeline meters disabled
+        this.degraded = Counter.builder("recommendation.degraded")
+                .description("Recommendations served from the stored profile because plays or ratings were unavailable")
+                .register(meterRegistry);
+    }
+
+    public RecommendationMetrics(MeterRegistry meterRegistry) {
+        this(meterRegistry, ObservationRegistry.NOOP, true);
+    }
+
+    /**
+     * Runs a whole recommendation inside the {@code recommendation.recommend} observation.
+     */
+    public <T> T observe(String userId, Supplier<T> recommendation) {
+        if (!enabled) {
+            return recommendation.get();
+        }
+        return observation(userId).observe(recommendation);
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #observe(String, Supplier)}: the observation runs from
+     * subscription until the recommendation completes, fails or is cancelled, and is put in the
+     * Reactor context, so the WebClient calls join it as child spans.
+     */
+    public <T> Mono<T> observe(String userId, Mono<T> recommendation) {
+        if (!enabled) {
+            return recommendation;
+        }
+        return Mono.defer(() -> {
+            Observation observation = observation(userId).start();
+            return recommendation
+                    .doOnError(observation::error)
+                    .doOnTerminate(observation::stop)
+                    .doOnCancel(observation::stop)
+                    .contextWrite(context -> context.put(ObservationThreadLocalAccessor.KEY, observation));
+        });
+    }
+
+    private Observation observation(String userId) {
+        return Observation.createNotStarted("recommendation.recommend", observationRegistry)
+                .contextualName("recommend")
+                .highCardinalityKeyValue("user.hash", userHash(userId));
+    }
+
+    /**
+     * The first 8 bytes of the SHA-256 of the user id, hex-encoded: the raw id never leaves the
+     * process with a span, but one user's traces can still be found together.
+     */
+    static String userHash(String userId) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(userId.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * @return the start of the first stage, to pass to {@link #lap}
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the stage as having run since {@code since}.
+     *
+     * @return the start of the next stage
+     */
+    public long lap(Stage stage, long since) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        stageTimers[stage.ordinal()].record(now - since, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void sizes(int catalogItems, int candidateCount, int resultCount) {
+        if (enabled) {
+            catalogSize.record(catalogItems);
+            candidates.record(candidateCount);
+            results.record(resultCount);
+        }
+    }
+
+    public void degraded() {
+        degraded.increment();
+    }
+
+    /**
+     * Called for every recommendation served; the first call records the time since JVM start as
+     * {@code recommendation.startup.first.served}. Later calls cost one volatile read.
+     */
+    public void served(boolean warmCatalog) {
+        if (firstServed.get() || !firstServed.compareAndSet(false, true)) {
+            return;
+        }
+        long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        TimeGauge.builder("recommendation.startup.first.served", () -> uptimeMillis, TimeUnit.MILLISECONDS)
+                .description("Time from JVM start to the first recommendation served")
+                .tag("catalog", warmCatalog ? "warm" : "cold")
+                .register(meterRegistry);
+        log.info("First recommendation served {} ms after JVM start ({} catalog)",
+                uptimeMillis, warmCatalog ? "warm-started" : "cold");
+    }
+
+    private static DistributionSummary summary(MeterRegistry meterRegistry, String name, String description) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
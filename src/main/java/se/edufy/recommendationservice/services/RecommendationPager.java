@@ -0,0 +1,147 @@
+package se.edufy.recommendationservice.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Pages through a user's recommendations. The first page ranks the user's {@code depth} best
+ * candidates once and keeps that ranking for {@code ttl}; the next pages are slices of it, found
+ * through the opaque cursor the previous page returned, so they cost a lookup instead of a
+ * recompute.
+ *
+ * <p>Each user has one ranking: requesting a first page again replaces it, and cursors into
+ * the old one expire. A ranking keeps the catalog snapshot it was computed against, and is not
+ * dropped when the user's {@link RecommendationCache} entry is invalidated, so paging through it
+ * stays consistent until it expires.
+ */
+@Component
+public class RecommendationPager {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    /**
+     * @param nextCursor {@code null} on the last page
+     */
+    public record Page(
+            List<MediaDetailsDTO> media,
+            String nextCursor,
+            boolean degraded
+    ) {}
+
+    private record Ranking(
+            long id,
+            CatalogSnapshot catalog,
+            int[] ordinals,
+            boolean degraded
+    ) {}
+
+    private final RecommendationService recommendationService;
+    private final Cache<String, Ranking> rankings;
+    private final int depth;
+
+    public RecommendationPager(
+            RecommendationService recommendationService,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.pages.depth:200}") int depth,
+            @Value("${recommendation.pages.max-size:10000}") long maxSize,
+            @Value("${recommendation.pages.ttl:2m}") Duration ttl
+    ) {
+        this.recommendationService = recommendationService;
+        this.depth = depth;
+        this.rankings = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, rankings, "recommendation-pages");
+    }
+
+    /**
+     * @param options the page size and exploration share; the exploration share only applies to
+     *                the first page, later pages continue its ranking
+     * @param cursor  the previous page's {@link Page#nextCursor}, or {@code null} for the first page
+     */
+    public Page page(Jwt jwt, RecommendationService.Options options, String cursor) {
+        if (cursor == null) {
+            return firstPage(jwt, options);
+        }
+
+        String userId = jwt.getSubject();
+        long rankingId;
+        int offset;
+        try {
+            int dot = cursor.indexOf('.');
+            rankingId = Long.parseUnsignedLong(cursor.substring(0, dot), Character.MAX_RADIX);
+            offset = Integer.parseInt(cursor.substring(dot + 1));
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+
+        Ranking ranking = rankings.getIfPresent(userId);
+        if (ranking == null || ranking.id() != rankingId || offset < 0 || offset > ranking.ordinals().length) {
+            throw new ResponseStatusException(HttpStatus.GONE, "Cursor has expired, request the first page again");
+        }
+
+        log.debug("Serving recommendations {}-{} of user {} from a stored ranking",
+                offset, offset + options.size(), userId);
+        return slice(ranking, offset, options.size());
+    }
+
+    private Page firstPage(Jwt jwt, RecommendationService.Options options) {
+        int rankingDepth = Math.max(depth, options.size());
+        RecommendationService.Ranked ranked = recommendationService.rank(jwt, rankingDepth, options.exploration());
+
+        int[] ordinals = interleave(ranked.ordinals(), rankingDepth, options.size(), options.exploration());
+        Ranking ranking = new Ranking(ThreadLocalRandom.current().nextLong(), ranked.catalog(), ordinals,
+                ranked.degraded());
+        rankings.put(jwt.getSubject(), ranking);
+
+        return slice(ranking, 0, options.size());
+    }
+
+    private static Page slice(Ranking ranking, int offset, int size) {
+        int end = Math.min(offset + size, ranking.ordinals().length);
+        String nextCursor = end < ranking.ordinals().length
+                ? Long.toUnsignedString(ranking.id(), Character.MAX_RADIX) + "." + end
+                : null;
+        return new Page(RecommendationService.toMedia(ranking.catalog(), ranking.ordinals(), offset, end),
+                nextCursor, ranking.degraded());
+    }
+
+    /**
+     * Spreads the exploration picks of a ranking over its pages. The ranker puts them after all
+     * scored picks, which would leave the first pages without any; here every page of
+     * {@code pageSize} gets the share a single request of that size would have.
+     *
+     * @param ranked scored picks first, then exploration picks, as requested with {@code depth}
+     */
+    static int[] interleave(int[] ranked, int depth, int pageSize, double exploration) {
+        int scoredCount = Math.min(depth - (int) Math.round(depth * exploration), ranked.length);
+        int scoredPerPage = pageSize - (int) Math.round(pageSize * exploration);
+
+        int[] pages = new int[ranked.length];
+        int scored = 0;
+        int explored = scoredCount;
+        for (int n = 0; n < pages.length; n++) {
+            boolean takeScored = n % pageSize < scoredPerPage ? scored < scoredCount : explored == ranked.length;
+            pages[n] = takeScored ? ranked[scored++] : ranked[explored++];
+        }
+        return pages;
+    }
+}
@@ -2,132 +2,452 @@ package se.edufy.recommendationservice.services;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Service;
-import se.edufy.recommendationservice.clients.*;
 import se.edufy.recommendationservice.dtos.*;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.CooccurrenceTable;
+import se.edufy.recommendationservice.models.PlayHistory;
+import se.edufy.recommendationservice.services.RecommendationMetrics.Stage;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class RecommendationService {
 
     private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
 
-    private final RatingClient ratingClient;
-    private final PlayClient playClient;
-    private final MediaClient mediaClient;
+    // a like says more about taste than a single play
+    private static final double LIKE_WEIGHT = 2.0;
+
+    // "users who played X also played Y" counts a bit more than genres, less than a liked artist
+    private static final double NEIGHBOUR_WEIGHT = 1.5;
+
+    private static final long[] NO_IDS = new long[0];
+    private static final int[] NO_COUNTS = new int[0];
+
+    private final UpstreamFetcher upstreamFetcher;
+    private final MediaCatalog mediaCatalog;
+    private final Ranker ranker;
+    private final CooccurrenceModel cooccurrenceModel;
+    private final RecommendationCache recommendationCache;
+    private final TasteProfileService tasteProfileService;
+    private final RecommendationMetrics metrics;
+    private final ActiveUsers activeUsers;
 
     public RecommendationService(
-            RatingClient ratingClient,
-            PlayClient playClient,
-            MediaClient mediaClient
+            UpstreamFetcher upstreamFetcher,
+            MediaCatalog mediaCatalog,
+            Ranker ranker,
+            CooccurrenceModel cooccurrenceModel,
+            RecommendationCache recommendationCache,
+            TasteProfileService tasteProfileService,
+            RecommendationMetrics metrics,
+            ActiveUsers activeUsers
     ) {
-        this.ratingClient = ratingClient;
-        this.playClient = playClient;
-        this.mediaClient = mediaClient;
+        this.upstreamFetcher = upstreamFetcher;
+        this.mediaCatalog = mediaCatalog;
+        this.ranker = ranker;
+        this.cooccurrenceModel = cooccurrenceModel;
+        this.recommendationCache = recommendationCache;
+        this.tasteProfileService = tasteProfileService;
+        this.metrics = metrics;
+        this.activeUsers = activeUsers;
+    }
+
+    /**
+     * @param degraded the live play or rating history was unavailable, so the result is based on
+     *                 the stored taste profile (or only the catalog) instead
+     */
+    public record Recommendations(
+            List<MediaDetailsDTO> media,
+            boolean degraded
+    ) {}
+
+    /**
+     * @param size        number of recommendations, at most {@link #MAX_SIZE}
+     * @param exploration share of the recommendations, between 0 and 1, drawn at random from the
+     *                    catalog instead of by score
+     */
+    public record Options(
+            int size,
+            double exploration
+    ) {
+        public static final int MAX_SIZE = 100;
+        public static final Options DEFAULT = new Options(10, 0.2);
+
+        public Options {
+            if (size < 1 || size > MAX_SIZE) {
+                throw new IllegalArgumentException("size must be between 1 and " + MAX_SIZE);
+            }
+            if (!(exploration >= 0 && exploration <= 1)) {
+                throw new IllegalArgumentException("exploration must be between 0 and 1");
+            }
+        }
     }
 
-    public List<MediaDetailsDTO> recommend(Jwt jwt) {
+    public Recommendations recommend(Jwt jwt) {
+        return recommend(jwt, Options.DEFAULT);
+    }
 
+    public Recommendations recommend(Jwt jwt, Options options) {
         String userId = jwt.getSubject();
-        log.info("Generating recommendations for user {}", userId);
+        return metrics.observe(userId, () -> recommend(userId, jwt, options));
+    }
 
-        // 1. FETCH PLAYS
-        List<PlayDTO> plays = playClient.getUserPlays(jwt);
-        Set<Long> playedMedia = plays.stream()
-                .map(PlayDTO::mediaId)
-                .collect(Collectors.toSet());
+    private Recommendations recommend(String userId, Jwt jwt, Options options) {
 
-        log.debug("User {} has played {} media items", userId, playedMedia.size());
+        log.debug("Generating recommendations for user {}", userId);
 
-        // 2. FETCH RATINGS (DISLIKES)
-        List<RatingDTO> ratings = ratingClient.getRatingsForUser(userId, jwt);
+        // 0. PER-USER CACHE: pinned result, or cached history + taste profile (loaded on a miss).
+        //    Only the default options are pinned.
+        long stage = metrics.start();
+        RecommendationCache.Entry cached = recommendationCache.get(userId, () -> load(userId, jwt));
+        metrics.lap(Stage.HISTORY, stage);
+        return recommend(userId, cached, options);
+    }
 
-        Set<Long> dislikedMedia = ratings.stream()
-                .filter(r -> !r.liked())
-                .map(r -> Long.valueOf(r.mediaId()))
-                .collect(Collectors.toSet());
+    /**
+     * @param catalog  the snapshot the ordinals refer to
+     * @param ordinals ranked like {@link Ranker#rank}: best-scored first, exploration picks last
+     */
+    record Ranked(
+            CatalogSnapshot catalog,
+            int[] ordinals,
+            boolean degraded
+    ) {}
 
-        log.debug("User {} has disliked {} media items", userId, dislikedMedia.size());
+    /**
+     * Steps 0-9 without materializing the media: the user's {@code depth} best ordinals in the
+     * current catalog, for {@link RecommendationPager} to serve page by page. Never pinned.
+     */
+    Ranked rank(Jwt jwt, int depth, double exploration) {
+        String userId = jwt.getSubject();
+        return metrics.observe(userId, () -> {
+            long stage = metrics.start();
+            RecommendationCache.Entry cached = recommendationCache.get(userId, () -> load(userId, jwt));
+            metrics.lap(Stage.HISTORY, stage);
 
-        // 3. FETCH ALL MEDIA
-        List<MediaDetailsDTO> allMedia = mediaClient.getAllMedia(jwt);
+            activeUsers.requested(userId);
+            activeUsers.computeStarted();
+            try {
+                CatalogSnapshot catalog = mediaCatalog.current();
+                int[] ordinals = rank(userId, cached.history(), cached.profile(), catalog, depth, exploration);
+                metrics.served(mediaCatalog.warmStarted());
+                return new Ranked(catalog, ordinals, cached.degraded());
+            } finally {
+                activeUsers.computeFinished();
+            }
+        });
+    }
 
-        // 4. FILTER OUT played + disliked
-        List<MediaDetailsDTO> available = allMedia.stream()
-                .filter(m -> !playedMedia.contains(m.id()))
-                .filter(m -> !dislikedMedia.contains(m.id()))
-                .collect(Collectors.toList());
+    /**
+     * Steps 1-9 on a loaded cache entry, shared with the non-blocking path in
+     * {@link ReactiveRecommendationService}.
+     */
+    Recommendations recommend(String userId, RecommendationCache.Entry cached, Options options) {
+        activeUsers.requested(userId);
+        boolean pinnable = options.equals(Options.DEFAULT);
+        if (pinnable && cached.pinned() != null) {
+            log.debug("Returning pinned recommendations for user {}", userId);
+            return new Recommendations(cached.pinned(), false);
+        }
 
-        log.info("Found {} available media for recommendation", available.size());
+        List<MediaDetailsDTO> result;
+        activeUsers.computeStarted();
+        try {
+            result = recommend(userId, cached.history(), cached.profile(), mediaCatalog.current(), options);
+        } finally {
+            activeUsers.computeFinished();
+        }
+        if (pinnable) {
+            recommendationCache.pin(userId, cached, result);
+        }
+        metrics.served(mediaCatalog.warmStarted());
+        return new Recommendations(result, cached.degraded());
+    }
 
-        // 5. FALLBACK IF NOTHING AVAILABLE
-        if (available.isEmpty()) {
-            log.warn("User {} has played all media. Falling back (ignoring disliked)", userId);
+    /**
+     * Outcome of {@link #precompute}.
+     */
+    enum Precomputed {
+        /** Computed and pinned to the user's entry. */
+        STORED,
+        /** No entry to compute from, or it was invalidated or replaced during the computation. */
+        EXPIRED,
+        /** The entry already holds pinned results, computed from the same history. */
+        PINNED
+    }
+
+    /**
+     * Computes a user's default recommendations ahead of time, from the history in their cache
+     * entry, and pins them to it, so their next request is a cache lookup. Without an entry the
+     * history would have to be fetched, which needs the user's token. An entry that already
+     * holds pinned results is left as it is, so the user's page stays stable for its lifetime.
+     */
+    Precomputed precompute(String userId) {
+        RecommendationCache.Entry cached = recommendationCache.getIfPresent(userId);
+        if (cached == null) {
+            return Precomputed.EXPIRED;
+        }
+        if (cached.pinned() != null) {
+            return Precomputed.PINNED;
+        }
+        List<MediaDetailsDTO> result = recommend(userId, cached.history(), cached.profile(),
+                mediaCatalog.current(), Options.DEFAULT);
+        return recommendationCache.precomputed(userId, cached, result) ? Precomputed.STORED : Precomputed.EXPIRED;
+    }
+
+    /**
+     * Recommendations computed only from a stored taste profile, without any gateway calls.
+     * Used for batch runs, where there is no user token to fetch a live history with.
+     */
+    public List<MediaDetailsDTO> recommendFromProfile(String userId, UserTasteProfile profile, CatalogSnapshot catalog) {
+        return recommend(userId, historyOf(userId, profile), profile, catalog, Options.DEFAULT);
+    }
+
+    private static UpstreamFetcher.Result historyOf(String userId, UserTasteProfile profile) {
+        if (profile == null) {
+            return new UpstreamFetcher.Result(PlayHistory.EMPTY, List.of());
+        }
+
+        // the profile's arrays are replaced on every change, never modified, so they can be shared
+        PlayHistory plays = PlayHistory.ofSorted(profile.getPlayedMediaIds(), profile.getPlayCounts());
+
+        List<RatingDTO> ratings = new ArrayList<>();
+        for (long mediaId : profile.getLikedMediaIds()) {
+            ratings.add(new RatingDTO(null, userId, Long.toString(mediaId), true));
+        }
+        for (long mediaId : profile.getDislikedMediaIds()) {
+            ratings.add(new RatingDTO(null, userId, Long.toString(mediaId), false));
+        }
+
+        return new UpstreamFetcher.Result(plays, ratings);
+    }
+
+    private RecommendationCache.Entry load(String userId, Jwt jwt) {
+        UpstreamFetcher.Result history;
+        try {
+            history = upstreamFetcher.fetch(jwt);
+        } catch (RuntimeException e) {
+            return degraded(userId, e, findProfile(userId));
+        }
+        return loaded(userId, history, findProfile(userId));
+    }
 
-            available = allMedia.stream()
-                    .filter(m -> !dislikedMedia.contains(m.id()))
-                    .collect(Collectors.toList());
+    /**
+     * Entry for a freshly fetched history; plays and likes the stored profile has missed are
+     * folded into it.
+     */
+    RecommendationCache.Entry loaded(String userId, UpstreamFetcher.Result history, UserTasteProfile profile) {
+        tasteProfileService.reconcile(userId, profile, history.plays(), history.ratings(), mediaCatalog.current());
+
+        return new RecommendationCache.Entry(history, profile, null, false);
+    }
+
+    /**
+     * DEGRADED: plays or ratings are down, open or saturated → fall back to the stored history.
+     */
+    RecommendationCache.Entry degraded(String userId, Throwable cause, UserTasteProfile profile) {
+        log.warn("Upstream history unavailable for user {}, serving degraded recommendations: {}",
+                userId, cause.toString());
+        metrics.degraded();
+
+        return new RecommendationCache.Entry(historyOf(userId, profile), profile, null, true);
+    }
+
+    UserTasteProfile findProfile(String userId) {
+        try {
+            return tasteProfileService.find(userId).orElse(null);
+        } catch (DataAccessException e) {
+            log.warn("Could not read taste profile for user {}, deriving it from play history: {}",
+                    userId, e.getMessage());
+            return null;
         }
+    }
+
+    private List<MediaDetailsDTO> recommend(String userId, UpstreamFetcher.Result upstream,
+                                            UserTasteProfile profile, CatalogSnapshot catalog, Options options) {
+        int[] ranked = rank(userId, upstream, profile, catalog, options.size(), options.exploration());
+
+        long stage = metrics.start();
+        List<MediaDetailsDTO> result = toMedia(catalog, ranked, 0, ranked.length);
+        metrics.lap(Stage.MATERIALIZE, stage);
+
+        log.debug("Returning {} final recommendations (exploration {})", result.size(), options.exploration());
+
+        return result;
+    }
+
+    private int[] rank(String userId, UpstreamFetcher.Result upstream, UserTasteProfile profile,
+                       CatalogSnapshot catalog, int size, double exploration) {
 
-        // 6. DETERMINE TOP 3 GENRES FROM PLAY HISTORY
-        Map<String, Integer> genreCounts = new HashMap<>();
+        long stage = metrics.start();
 
-        for (PlayDTO play : plays) {
-            allMedia.stream()
-                    .filter(m -> m.id().equals(play.mediaId()))
-                    .findFirst()
-                    .ifPresent(media -> {
-                        for (String genre : media.genres()) {
-                            genreCounts.merge(genre, 1, Integer::sum);
-                        }
-                    });
+        // 1. PLAYS → bitset over catalog ordinals, and in the same pass the genre affinity of the
+        //    plays the stored profile does not reflect yet, new media or more plays of known ones,
+        //    weighted by play count. The history and the profile's played ids are both sorted, so
+        //    they are walked side by side
+        PlayHistory plays = upstream.plays();
+        BitSet playedMedia = new BitSet(catalog.size());
+        double[] genreAffinity = new double[catalog.genreCount()];
+        long[] profiled = profile != null ? profile.getPlayedMediaIds() : NO_IDS;
+        int[] profiledCounts = profile != null ? profile.getPlayCounts() : NO_COUNTS;
+        int next = 0;
+        for (int i = 0; i < plays.size(); i++) {
+            long mediaId = plays.mediaId(i);
+            int ordinal = catalog.ordinalOf(mediaId);
+            if (ordinal < 0) {
+                continue;
+            }
+            playedMedia.set(ordinal);
+
+            while (next < profiled.length && profiled[next] < mediaId) {
+                next++;
+            }
+            int stored = next < profiled.length && profiled[next] == mediaId ? profiledCounts[next] : 0;
+            double weight = UserTasteProfile.playWeightGain(stored, plays.playCount(i));
+            if (weight == 0) {
+                continue;
+            }
+            for (int genre : catalog.genresOf(ordinal)) {
+                genreAffinity[genre] += weight;
+            }
         }
 
-        List<String> topGenres = genreCounts.entrySet().stream()
-                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
-                .limit(3)
-                .map(Map.Entry::getKey)
-                .toList();
+        log.debug("User {} has played {} media items", userId, plays.size());
+        stage = metrics.lap(Stage.PLAYS, stage);
 
-        log.info("User {} top genres: {}", userId, topGenres);
+        // 2. RATINGS (DISLIKES) → bitset over catalog ordinals
+        List<RatingDTO> ratings = upstream.ratings();
+        BitSet dislikedMedia = new BitSet(catalog.size());
+        for (RatingDTO rating : ratings) {
+            if (!rating.liked()) {
+                int ordinal = catalog.ordinalOf(Long.parseLong(rating.mediaId()));
+                if (ordinal >= 0) {
+                    dislikedMedia.set(ordinal);
+                }
+            }
+        }
 
-        // 7. IF NO GENRES → return random 10
-        if (topGenres.isEmpty()) {
-            log.info("User {} has no play history → generating random 10", userId);
+        if (log.isDebugEnabled()) {
+            log.debug("User {} has disliked {} media items", userId, dislikedMedia.cardinality());
+        }
+        stage = metrics.lap(Stage.DISLIKES, stage);
 
-            Collections.shuffle(available);
-            return available.stream().limit(10).toList();
+        // 3. CANDIDATE MASK: every ordinal of the catalog, except removed media
+        BitSet available = catalog.liveOrdinals();
+
+        // 4. FILTER OUT played + disliked
+        available.andNot(playedMedia);
+        available.andNot(dislikedMedia);
+
+        // 5. FALLBACK IF NOTHING AVAILABLE
+        if (available.isEmpty()) {
+            log.warn("User {} has played all media. Falling back (ignoring disliked)", userId);
+
+            available = catalog.liveOrdinals();
+            available.andNot(dislikedMedia);
+        }
+        int candidateCount = available.cardinality();
+        log.debug("Found {} available media for recommendation", candidateCount);
+        stage = metrics.lap(Stage.CANDIDATES, stage);
+
+        // 6. GENRE AFFINITY: the stored taste profile, on top of the plays it missed from step 1
+        if (profile != null) {
+            profile.getGenreWeights().forEach((genre, weight) -> {
+                int genreId = catalog.genreId(genre);
+                if (genreId >= 0) {
+                    genreAffinity[genreId] += weight;
+                }
+            });
         }
 
-        // 8. SPLIT INTO preferred + other genres
-        List<MediaDetailsDTO> preferred = new ArrayList<>();
-        List<MediaDetailsDTO> others = new ArrayList<>();
+        stage = metrics.lap(Stage.GENRES, stage);
 
-        for (MediaDetailsDTO media : available) {
-            if (media.genres().stream().anyMatch(topGenres::contains)) {
-                preferred.add(media);
-            } else {
-                others.add(media);
+        // 7. LIKES → genre + artist affinity
+        double[] artistAffinity = new double[catalog.artistCount()];
+        int likes = 0;
+        for (RatingDTO rating : ratings) {
+            if (!rating.liked()) {
+                continue;
+            }
+            int ordinal = catalog.ordinalOf(Long.parseLong(rating.mediaId()));
+            if (ordinal >= 0) {
+                likes++;
+                for (int genre : catalog.genresOf(ordinal)) {
+                    genreAffinity[genre] += LIKE_WEIGHT;
+                }
+                for (int artist : catalog.artistsOf(ordinal)) {
+                    artistAffinity[artist] += 1;
+                }
             }
         }
 
-        Collections.shuffle(preferred);
-        Collections.shuffle(others);
+        log.debug("User {} has liked {} media items", userId, likes);
+        stage = metrics.lap(Stage.LIKES, stage);
 
-        // 9. 80/20 SPLIT (8 preferred, 2 others)
-        int preferredCount = Math.min(8, preferred.size());
-        int otherCount = Math.min(2, others.size());
+        // 8. CO-OCCURRENCE: neighbours of the played media, from the memory-mapped table
+        AffinityScorer scorer = new AffinityScorer(catalog, genreAffinity, artistAffinity);
+        blendNeighbours(scorer, catalog, cooccurrenceModel.current(), plays);
+        stage = metrics.lap(Stage.COOCCURRENCE, stage);
 
-        List<MediaDetailsDTO> result = new ArrayList<>();
-        result.addAll(preferred.subList(0, preferredCount));
-        result.addAll(others.subList(0, otherCount));
+        // 9. SCORE + RANK: top scored candidates, plus an exploration share drawn at random
+        //    (a user without history gets only random picks)
+        int[] ranked = ranker.rank(available, scorer, size, exploration);
 
-        log.info("Returning {} final recommendations ({} preferred, {} others)",
-                result.size(), preferredCount, otherCount);
+        metrics.lap(Stage.RANK, stage);
+        metrics.sizes(catalog.liveCount(), candidateCount, ranked.length);
 
-        return result;
+        return ranked;
+    }
+
+    /**
+     * Boosts the neighbours of every played media by their similarity, weighted like the play
+     * itself. The boosts are scaled to sum to {@link #NEIGHBOUR_WEIGHT}, like the genre and artist
+     * affinities, so a long history does not drown them out or inflate them.
+     */
+    private static void blendNeighbours(AffinityScorer scorer, CatalogSnapshot catalog,
+                                        CooccurrenceTable neighbours, PlayHistory plays) {
+        if (!neighbours.isLoaded()) {
+            return;
+        }
+
+        double total = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            double scale = pass == 0 ? 0 : NEIGHBOUR_WEIGHT / total;
+            for (int i = 0; i < plays.size(); i++) {
+                int index = neighbours.indexOf(plays.mediaId(i));
+                if (index < 0) {
+                    continue;
+                }
+                double playWeight = UserTasteProfile.playWeight(plays.playCount(i));
+                for (int n = neighbours.neighboursFrom(index), end = neighbours.neighboursFrom(index + 1); n < end; n++) {
+                    int ordinal = catalog.ordinalOf(neighbours.neighbourId(n));
+                    if (ordinal < 0) {
+                        continue;
+                    }
+                    double weight = playWeight * neighbours.score(n);
+                    if (pass == 0) {
+                        total += weight;
+                    } else {
+                        scorer.boost(ordinal, weight * scale);
+                    }
+                }
+            }
+            if (total == 0) {
+                return;
+            }
+        }
+    }
+
+    static List<MediaDetailsDTO> toMedia(CatalogSnapshot catalog, int[] ordinals, int from, int to) {
+        List<MediaDetailsDTO> media = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            media.add(catalog.media(ordinals[i]));
+        }
+        return media;
     }
 }
@@ -0,0 +1,23 @@
+package se.edufy.recommendationservice.services;
+
+import java.util.BitSet;
+
+/**
+ * Relevance of a catalog item for one user. Higher is better; zero means no known affinity.
+ * Implementations are built per request and are called once per candidate, so they should do
+ * no more than a few array reads per call.
+ */
+public interface Scorer {
+
+    double score(int ordinal);
+
+    /**
+     * The candidates that may score above zero. A ranker only needs to score these, so a scorer
+     * that knows its non-zero items (e.g. from postings) can spare it a pass over the catalog.
+     *
+     * @param candidates not modified
+     */
+    default BitSet scoredCandidates(BitSet candidates) {
+        return candidates;
+    }
+}
@@ -0,0 +1,254 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.PlayHistory;
+import se.edufy.recommendationservice.repositories.UserTasteProfileRepository;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps {@link UserTasteProfile} rows up to date. Updates from play/rating events and from
+ * freshly fetched histories are queued per user in memory. A scheduled flush applies them in
+ * batches: one read and one batched write per group of users.
+ *
+ * <p>At most {@code max-pending-users} users are queued; updates for further users are dropped,
+ * and a later history fetch reconciles what they missed. A batch that fails on the database
+ * being unreachable is retried whole next round. Any other failure is retried one user per
+ * transaction, so one bad row does not hold back the rest, and a user whose updates fail
+ * {@code max-attempts} rounds in a row is dropped.
+ */
+@Service
+public class TasteProfileService {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    private final UserTasteProfileRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final MediaCatalog mediaCatalog;
+    private final int batchSize;
+    private final int maxPendingUsers;
+    private final int maxAttempts;
+    private final ConcurrentMap<String, PendingUpdates> pending = new ConcurrentHashMap<>();
+    private final Counter droppedFull;
+    private final Counter droppedFailed;
+
+    public TasteProfileService(
+            UserTasteProfileRepository repository,
+            PlatformTransactionManager transactionManager,
+            MediaCatalog mediaCatalog,
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.profiles.batch-size:200}") int batchSize,
+            @Value("${recommendation.profiles.max-pending-users:10000}") int maxPendingUsers,
+            @Value("${recommendation.profiles.max-attempts:5}") int maxAttempts
+    ) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.mediaCatalog = mediaCatalog;
+        this.batchSize = batchSize;
+        this.maxPendingUsers = maxPendingUsers;
+        this.maxAttempts = maxAttempts;
+
+        Gauge.builder("recommendation.profiles.pending", pending, Map::size)
+                .description("Users with taste profile updates waiting to be flushed")
+                .register(meterRegistry);
+        this.droppedFull = droppedCounter(meterRegistry, "full");
+        this.droppedFailed = droppedCounter(meterRegistry, "failed");
+    }
+
+    public Optional<UserTasteProfile> find(String userId) {
+        return repository.findById(userId);
+    }
+
+    public Map<String, UserTasteProfile> findAll(Collection<String> userIds) {
+        Map<String, UserTasteProfile> profiles = new HashMap<>();
+        repository.findAllById(userIds).forEach(profile -> profiles.put(profile.getUserId(), profile));
+        return profiles;
+    }
+
+    public void recordPlay(String userId, long mediaId, int playCount) {
+        List<String> genres = genresOf(mediaCatalog.current(), mediaId);
+        enqueue(userId, profile -> addGenreWeight(profile, genres, profile.recordPlay(mediaId, playCount)));
+    }
+
+    public void recordRating(String userId, long mediaId, boolean liked) {
+        enqueue(userId, profile -> profile.recordRating(mediaId, liked));
+    }
+
+    /**
+     * Queues whatever part of a freshly fetched history the stored profile does not reflect yet:
+     * media it has not seen, and media played more often than it knows of. With no stored
+     * profile this seeds a new one from the full history.
+     */
+    public void reconcile(String userId, UserTasteProfile profile, PlayHistory plays,
+                          List<RatingDTO> ratings, CatalogSnapshot catalog) {
+        List<Consumer<UserTasteProfile>> updates = new ArrayList<>();
+
+        for (int i = 0; i < plays.size(); i++) {
+            long mediaId = plays.mediaId(i);
+            int playCount = plays.playCount(i);
+            if (profile != null && profile.playCountOf(mediaId) >= playCount) {
+                continue;
+            }
+            List<String> genres = genresOf(catalog, mediaId);
+            updates.add(p -> addGenreWeight(p, genres, p.recordHistoricPlay(mediaId, playCount)));
+        }
+
+        for (RatingDTO rating : ratings) {
+            long mediaId = Long.parseLong(rating.mediaId());
+            if (profile == null || !profile.hasRated(mediaId, rating.liked())) {
+                updates.add(p -> p.recordRating(mediaId, rating.liked()));
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            log.debug("Queueing {} taste profile updates for user {}", updates.size(), userId);
+            updates.forEach(update -> enqueue(userId, update));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${recommendation.profiles.flush-interval:5s}")
+    public void flush() {
+        List<String> userIds = new ArrayList<>(pending.keySet());
+        for (int from = 0; from < userIds.size(); from += batchSize) {
+            flushBatch(userIds.subList(from, Math.min(from + batchSize, userIds.size())));
+        }
+    }
+
+    int pendingUsers() {
+        return pending.size();
+    }
+
+    private void flushBatch(List<String> userIds) {
+        Map<String, PendingUpdates> batch = new HashMap<>();
+        for (String userId : userIds) {
+            PendingUpdates updates = pending.remove(userId);
+            if (updates != null) {
+                batch.put(userId, updates);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            save(batch);
+            log.debug("Flushed taste profile updates for {} users", batch.size());
+        } catch (TransientDataAccessException e) {
+            log.warn("Taste profile flush failed for {} users, retrying next round: {}", batch.size(), e.getMessage());
+            batch.forEach(this::requeue);
+        } catch (RuntimeException e) {
+            log.warn("Taste profile flush failed for {} users, retrying them one by one: {}", batch.size(), e.getMessage());
+            batch.forEach(this::flushAlone);
+        }
+    }
+
+    private void flushAlone(String userId, PendingUpdates updates) {
+        try {
+            save(Map.of(userId, updates));
+        } catch (TransientDataAccessException e) {
+            requeue(userId, updates);
+        } catch (RuntimeException e) {
+            if (updates.failures + 1 >= maxAttempts) {
+                log.warn("Dropping {} taste profile updates for user {} after {} failed attempts: {}",
+                        updates.list.size(), userId, maxAttempts, e.getMessage());
+                droppedFailed.increment();
+                return;
+            }
+            updates.failures++;
+            requeue(userId, updates);
+        }
+    }
+
+    private void save(Map<String, PendingUpdates> batch) {
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<String, UserTasteProfile> profiles = new HashMap<>();
+            repository.findAllById(batch.keySet()).forEach(p -> profiles.put(p.getUserId(), p));
+
+            Instant now = Instant.now();
+            List<UserTasteProfile> changed = new ArrayList<>(batch.size());
+            batch.forEach((userId, updates) -> {
+                UserTasteProfile profile = profiles.computeIfAbsent(userId, UserTasteProfile::new);
+                updates.list.forEach(update -> update.accept(profile));
+                profile.setUpdatedAt(now);
+                changed.add(profile);
+            });
+
+            repository.saveAll(changed);
+        });
+    }
+
+    /**
+     * Puts the updates back in front of anything queued for the user meanwhile. Not bounded by
+     * {@code max-pending-users}: these users were counted when they were first queued.
+     */
+    private void requeue(String userId, PendingUpdates updates) {
+        pending.merge(userId, updates, (newer, older) -> {
+            older.list.addAll(newer.list);
+            return older;
+        });
+    }
+
+    private void enqueue(String userId, Consumer<UserTasteProfile> update) {
+        // may run a little over the bound when users are queued concurrently
+        if (pending.size() >= maxPendingUsers && !pending.containsKey(userId)) {
+            log.debug("Taste profile queue is full, dropping an update for user {}", userId);
+            droppedFull.increment();
+            return;
+        }
+        pending.compute(userId, (key, updates) -> {
+            PendingUpdates queued = updates != null ? updates : new PendingUpdates();
+            queued.list.add(update);
+            return queued;
+        });
+    }
+
+    private static Counter droppedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("recommendation.profiles.dropped")
+                .description("Taste profile updates dropped by reason: the queue was full, or the user's "
+                        + "updates kept failing")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static void addGenreWeight(UserTasteProfile profile, List<String> genres, double gain) {
+        if (gain > 0) {
+            genres.forEach(genre -> profile.addGenreWeight(genre, gain));
+        }
+    }
+
+    private static List<String> genresOf(CatalogSnapshot catalog, long mediaId) {
+        int ordinal = catalog.ordinalOf(mediaId);
+        if (ordinal < 0) {
+            return List.of();
+        }
+        MediaDetailsDTO media = catalog.media(ordinal);
+        return media.genres() != null ? media.genres() : List.of();
+    }
+
+    /**
+     * A user's queued updates, in order, and how many flushes of them have failed in a row.
+     */
+    private static final class PendingUpdates {
+
+        private final List<Consumer<UserTasteProfile>> list = new ArrayList<>();
+        private int failures;
+    }
+}
@@ -0,0 +1,151 @@
+package se.edufy.recommendationservice.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Default {@link Ranker}: one pass over the candidates the scorer can score keeps the best ones
+ * in a bounded min-heap on two primitive arrays, so ranking costs O(n log k) time and O(k)
+ * memory. Exploration picks, and any slots left when fewer candidates have a positive score,
+ * are drawn uniformly from the remaining candidates by the {@link CandidateSampler}.
+ *
+ * <p>The pass starts at a random ordinal and wraps around. Ties keep the first item seen, so
+ * equally scored items take turns instead of the lowest ordinals always winning.
+ */
+@Component
+public class TopKRanker implements Ranker {
+
+    private final CandidateSampler candidateSampler;
+    private final IntUnaryOperator startOrdinal;
+
+    @Autowired
+    public TopKRanker(CandidateSampler candidateSampler) {
+        this(candidateSampler, bound -> ThreadLocalRandom.current().nextInt(bound));
+    }
+
+    /**
+     * @param startOrdinal picks the ordinal, below the given bound, where the pass starts
+     */
+    TopKRanker(CandidateSampler candidateSampler, IntUnaryOperator startOrdinal) {
+        this.candidateSampler = candidateSampler;
+        this.startOrdinal = startOrdinal;
+    }
+
+    @Override
+    public int[] rank(BitSet candidates, Scorer scorer, int size, double exploration) {
+        if (size <= 0 || candidates.isEmpty()) {
+            return new int[0];
+        }
+
+        int explore = (int) Math.round(size * Math.clamp(exploration, 0.0, 1.0));
+        Heap heap = new Heap(size - explore);
+
+        if (heap.capacity > 0) {
+            BitSet scored = scorer.scoredCandidates(candidates);
+            if (!scored.isEmpty()) {
+                int start = startOrdinal.applyAsInt(scored.length());
+                offerAll(heap, scored, scorer, start, scored.length());
+                offerAll(heap, scored, scorer, 0, start);
+            }
+        }
+
+        int[] top = heap.drainDescending();
+
+        BitSet rest = (BitSet) candidates.clone();
+        for (int ordinal : top) {
+            rest.clear(ordinal);
+        }
+        int[] explored = candidateSampler.sample(rest, size - top.length);
+
+        int[] result = Arrays.copyOf(top, top.length + explored.length);
+        System.arraycopy(explored, 0, result, top.length, explored.length);
+        return result;
+    }
+
+    private static void offerAll(Heap heap, BitSet candidates, Scorer scorer, int from, int to) {
+        for (int ordinal = candidates.nextSetBit(from); ordinal >= 0 && ordinal < to;
+             ordinal = candidates.nextSetBit(ordinal + 1)) {
+            double score = scorer.score(ordinal);
+            if (score > 0) {
+                heap.offer(ordinal, score);
+            }
+        }
+    }
+
+    /**
+     * Min-heap of at most {@code capacity} (ordinal, score) pairs, the lowest score at the root.
+     */
+    private static final class Heap {
+
+        private final int capacity;
+        private final int[] ordinals;
+        private final double[] scores;
+        private int size;
+
+        Heap(int capacity) {
+            this.capacity = capacity;
+            this.ordinals = new int[capacity];
+            this.scores = new double[capacity];
+        }
+
+        void offer(int ordinal, double score) {
+            if (size < capacity) {
+                siftUp(size++, ordinal, score);
+            } else if (score > scores[0]) {
+                siftDown(0, ordinal, score, size);
+            }
+        }
+
+        /**
+         * Empties the heap into an array ordered by score, highest first.
+         */
+        int[] drainDescending() {
+            int[] result = new int[size];
+            while (size > 0) {
+                result[size - 1] = ordinals[0];
+                size--;
+                if (size > 0) {
+                    siftDown(0, ordinals[size], scores[size], size);
+                }
+            }
+            return result;
+        }
+
+        private void siftUp(int i, int ordinal, double score) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) {
+                    break;
+                }
+                ordinals[i] = ordinals[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ordinals[i] = ordinal;
+            scores[i] = score;
+        }
+
+        private void siftDown(int i, int ordinal, double score, int length) {
+            int half = length >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < length && scores[child + 1] < scores[child]) {
+                    child++;
+                }
+                if (score <= scores[child]) {
+                    break;
+                }
+                ordinals[i] = ordinals[child];
+                scores[i] = scores[child];
+                i = child;
+            }
+            ordinals[i] = ordinal;
+            scores[i] = score;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import se.edufy.recommendationservice.clients.PlayClient;
+import se.edufy.recommendationservice.clients.RatingClient;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Fetches a user's plays and ratings from the gateway concurrently on virtual threads.
+ * Each call has its own timeout, and the first failure cancels the calls still in flight,
+ * so a request costs the slowest round-trip instead of the sum. Every call goes through the
+ * client's circuit breaker and bulkhead in {@link UpstreamGuard}, and runs in the caller's
+ * tracing context.
+ */
+@Component
+public class UpstreamFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger("RecommendationLogger");
+
+    private final RatingClient ratingClient;
+    private final PlayClient playClient;
+    private final UpstreamGuard upstreamGuard;
+    private final ExecutorService executor;
+    private final Duration playsTimeout;
+    private final Duration ratingsTimeout;
+
+    @Autowired
+    public UpstreamFetcher(
+            RatingClient ratingClient,
+            PlayClient playClient,
+            UpstreamGuard upstreamGuard,
+            @Value("${recommendation.upstream.plays-timeout:3s}") Duration playsTimeout,
+            @Value("${recommendation.upstream.ratings-timeout:3s}") Duration ratingsTimeout
+    ) {
+        this(ratingClient, playClient, upstreamGuard, propagatingContext(Executors.newVirtualThreadPerTaskExecutor()),
+                playsTimeout, ratingsTimeout);
+    }
+
+    UpstreamFetcher(
+            RatingClient ratingClient,
+            PlayClient playClient,
+            UpstreamGuard upstreamGuard,
+            ExecutorService executor,
+            Duration playsTimeout,
+            Duration ratingsTimeout
+    ) {
+        this.ratingClient = ratingClient;
+        this.playClient = playClient;
+        this.upstreamGuard = upstreamGuard;
+        this.executor = executor;
+        this.playsTimeout = playsTimeout;
+        this.ratingsTimeout = ratingsTimeout;
+    }
+
+    public record Result(
+            PlayHistory plays,
+            List<RatingDTO> ratings
+    ) {}
+
+    public Result fetch(Jwt jwt) {
+        String userId = jwt.getSubject();
+        long start = System.nanoTime();
+
+        // several tabs of the same user share the in-flight calls
+        FetchScope scope = new FetchScope(userId);
+        Future<PlayHistory> plays = scope.fork(UpstreamGuard.PLAYS,
+                () -> playClient.getUserPlays(jwt));
+        Future<List<RatingDTO>> ratings = scope.fork(UpstreamGuard.RATINGS,
+                () -> ratingClient.getRatingsForUser(userId, jwt));
+
+        Result result = new Result(
+                nullToEmpty(scope.join(plays, UpstreamGuard.PLAYS, start, playsTimeout)),
+                nullToEmpty(scope.join(ratings, UpstreamGuard.RATINGS, start, ratingsTimeout))
+        );
+
+        log.debug("Fetched upstream data for user {} in {} ms",
+                userId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        return result;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Carries the caller's thread-local context (current observation and trace span, MDC) into
+     * the virtual threads, so the gateway calls are child spans of the request and forward its
+     * trace headers.
+     */
+    static ExecutorService propagatingContext(ExecutorService executor) {
+        ContextSnapshotFactory snapshots = ContextSnapshotFactory.builder().build();
+        return ContextExecutorService.wrap(executor, snapshots::captureAll);
+    }
+
+    private static PlayHistory nullToEmpty(PlayHistory plays) {
+        return plays != null ? plays : PlayHistory.EMPTY;
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list != null ? list : List.of();
+    }
+
+    /**
+     * Tracks the calls of a single fetch. The first failure is recorded and every sibling
+     * is cancelled with interruption, which also unblocks any join waiting on them.
+     */
+    private final class FetchScope {
+
+        private final String userId;
+        private final List<Future<?>> futures = new ArrayList<>(2);
+        private RuntimeException failure;
+
+        FetchScope(String userId) {
+            this.userId = userId;
+        }
+
+        <T> Future<T> fork(String name, Supplier<T> call) {
+            Future<T> future = executor.submit(() -> {
+                try {
+                    return upstreamGuard.call(name, userId, call);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    throw e;
+                }
+            });
+
+            synchronized (this) {
+                futures.add(future);
+                if (failure != null) {
+                    future.cancel(true);
+                }
+            }
+            return future;
+        }
+
+        <T> T join(Future<T> future, String name, long startNanos, Duration timeout) {
+            long remaining = startNanos + timeout.toNanos() - System.nanoTime();
+            try {
+                return future.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                log.warn("Upstream call '{}' timed out after {} ms", name, timeout.toMillis());
+                upstreamGuard.recordTimeout(name, timeout);
+                fail(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT,
+                        "Upstream call '" + name + "' timed out"));
+            } catch (ExecutionException e) {
+                fail(e.getCause() instanceof RuntimeException re
+                        ? re
+                        : new IllegalStateException("Upstream call '" + name + "' failed", e.getCause()));
+            } catch (CancellationException e) {
+                // cancelled because a sibling failed; rethrow that failure below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new IllegalStateException("Interrupted while waiting for upstream call '" + name + "'", e));
+            }
+            throw firstFailure();
+        }
+
+        private synchronized void fail(RuntimeException e) {
+            if (failure == null) {
+                failure = e;
+            }
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        private synchronized RuntimeException firstFailure() {
+            return failure != null ? failure : new CancellationException("Upstream fetch was cancelled");
+        }
+    }
+}
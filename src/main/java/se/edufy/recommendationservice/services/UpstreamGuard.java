@@ -0,0 +1,219 @@
+package se.edufy.recommendationservice.services;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import se.edufy.recommendationservice.utils.SingleFlight;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * One circuit breaker and one bulkhead per gateway client. The bulkhead caps the calls in
+ * flight, so a slow upstream cannot tie up every request; the circuit breaker stops calling an
+ * upstream that keeps failing or answering slowly and lets probes through after a while.
+ * Rejected calls fail immediately with {@code BulkheadFullException} or
+ * {@code CallNotPermittedException}. Identical per-user calls can be coalesced in front of both.
+ */
+@Component
+public class UpstreamGuard {
+
+    public static final String MEDIA = "media";
+    public static final String PLAYS = "plays";
+    public static final String RATINGS = "ratings";
+
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final BulkheadRegistry bulkheads;
+    private final Map<String, SingleFlight<String, Object>> flights;
+
+    @Autowired
+    public UpstreamGuard(
+            MeterRegistry meterRegistry,
+            @Value("${recommendation.resilience.failure-rate-threshold:50}") float failureRateThreshold,
+            @Value("${recommendation.resilience.slow-call-duration:2s}") Duration slowCallDuration,
+            @Value("${recommendation.resilience.slow-call-rate-threshold:80}") float slowCallRateThreshold,
+            @Value("${recommendation.resilience.sliding-window-size:20}") int slidingWindowSize,
+            @Value("${recommendation.resilience.minimum-calls:10}") int minimumCalls,
+            @Value("${recommendation.resilience.open-duration:10s}") Duration openDuration,
+            @Value("${recommendation.resilience.max-concurrent-calls:50}") int maxConcurrentCalls,
+            @Value("${recommendation.resilience.catalog-slow-call-duration:60s}") Duration catalogSlowCallDuration
+    ) {
+        this(
+                meterRegistry,
+                CircuitBreakerConfig.custom()
+                        .failureRateThreshold(failureRateThreshold)
+                        .slowCallDurationThreshold(slowCallDuration)
+                        .slowCallRateThreshold(slowCallRateThreshold)
+                        .slidingWindowSize(slidingWindowSize)
+                        .minimumNumberOfCalls(minimumCalls)
+                        .waitDurationInOpenState(openDuration)
+                        .automaticTransitionFromOpenToHalfOpenEnabled(true)
+                        .build(),
+                BulkheadConfig.custom()
+                        .maxConcurrentCalls(maxConcurrentCalls)
+                        .maxWaitDuration(Duration.ZERO)
+                        .build(),
+                catalogSlowCallDuration
+        );
+    }
+
+    public UpstreamGuard(MeterRegistry meterRegistry, CircuitBreakerConfig circuitBreakerConfig,
+                         BulkheadConfig bulkheadConfig, Duration catalogSlowCallDuration) {
+        this.circuitBreakers = CircuitBreakerRegistry.of(circuitBreakerConfig);
+        this.bulkheads = BulkheadRegistry.of(bulkheadConfig);
+
+        // created up front, so their metrics exist before the first call; a full catalog
+        // download is expected to take far longer than a user's plays or ratings
+        circuitBreakers.circuitBreaker(MEDIA, CircuitBreakerConfig.from(circuitBreakerConfig)
+                .slowCallDurationThreshold(catalogSlowCallDuration)
+                .build());
+        for (String client : List.of(MEDIA, PLAYS, RATINGS)) {
+            circuitBreakers.circuitBreaker(client);
+            bulkheads.bulkhead(client);
+        }
+
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheads).bindTo(meterRegistry);
+
+        // per-user calls; catalog downloads are coalesced by MediaCatalog around the whole refresh
+        this.flights = Map.of(
+                PLAYS, new SingleFlight<>(coalescedCounter(meterRegistry, PLAYS)),
+                RATINGS, new SingleFlight<>(coalescedCounter(meterRegistry, RATINGS))
+        );
+    }
+
+    static Counter coalescedCounter(MeterRegistry meterRegistry, String client) {
+        return Counter.builder("recommendation.upstream.coalesced")
+                .description("Calls that joined an identical gateway call already in flight instead of making their own")
+                .tag("client", client)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Like {@link #call(String, Supplier)}, but concurrent calls to the same client with the same
+     * key share a single gateway call and its outcome. Callers that join an in-flight call take
+     * no bulkhead permit of their own.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(String client, String key, Supplier<T> call) {
+        return (T) flights.get(client).execute(key, () -> call(client, call));
+    }
+
+    /**
+     * Runs {@code call} through the client's bulkhead and circuit breaker. A call rejected by
+     * the bulkhead is not recorded by the circuit breaker, so load alone does not open it, and
+     * neither is a call cancelled by the caller: an interrupted call says nothing about the
+     * upstream. Callers that give up on a call because it was too slow report that with
+     * {@link #recordTimeout}.
+     */
+    public <T> T call(String client, Supplier<T> call) {
+        Bulkhead bulkhead = bulkheads.bulkhead(client);
+        CircuitBreaker circuitBreaker = circuitBreakers.circuitBreaker(client);
+
+        bulkhead.acquirePermission();
+        try {
+            circuitBreaker.acquirePermission();
+            long start = System.nanoTime();
+            try {
+                T result = call.get();
+                circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return result;
+            } catch (Throwable e) {
+                if (isCancellation(e)) {
+                    circuitBreaker.releasePermission();
+                } else {
+                    circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                }
+                throw e;
+            }
+        } finally {
+            bulkhead.onComplete();
+        }
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #call(String, String, Supplier)}, sharing its in-flight
+     * calls, so a user's blocking and non-blocking requests are coalesced together.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> call(String client, String key, Mono<T> call) {
+        return (Mono<T>) flights.get(client).execute(key, call(client, call).cast(Object.class));
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #call(String, Supplier)}: the permits are taken on
+     * subscription and given back when the call completes, fails or is cancelled, without
+     * holding a thread in between. A cancelled call is not recorded by the circuit breaker.
+     */
+    public <T> Mono<T> call(String client, Mono<T> call) {
+        return Mono.defer(() -> {
+            Bulkhead bulkhead = bulkheads.bulkhead(client);
+            CircuitBreaker circuitBreaker = circuitBreakers.circuitBreaker(client);
+
+            bulkhead.acquirePermission();
+            try {
+                circuitBreaker.acquirePermission();
+            } catch (RuntimeException e) {
+                bulkhead.onComplete();
+                throw e;
+            }
+
+            long start = System.nanoTime();
+            AtomicBoolean recorded = new AtomicBoolean();
+            return call
+                    .doOnSuccess(result -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            circuitBreaker.onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            circuitBreaker.onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            circuitBreaker.releasePermission();
+                        }
+                    })
+                    .doFinally(signal -> bulkhead.onComplete());
+        });
+    }
+
+    public void recordTimeout(String client, Duration timeout) {
+        circuitBreakers.circuitBreaker(client).onError(timeout.toNanos(), TimeUnit.NANOSECONDS,
+                new TimeoutException("Upstream call '" + client + "' timed out"));
+    }
+
+    public CircuitBreaker.State state(String client) {
+        return circuitBreakers.circuitBreaker(client).getState();
+    }
+
+    private static boolean isCancellation(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,5 +1,11 @@
 package se.edufy.recommendationservice.utils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
@@ -11,6 +17,7 @@ import org.springframework.security.oauth2.server.resource.authentication.JwtAut
 import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -20,25 +27,42 @@ import java.util.stream.Stream;
 @Component
 public class JwtAuthConverter implements Converter<Jwt, AbstractAuthenticationToken> {
 
+    private static final Logger log = LoggerFactory.getLogger(JwtAuthConverter.class);
+
     private final JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter =
             new JwtGrantedAuthoritiesConverter();
 
-    @Value("${jwt.auth.converter.resource-id.name}")
-    private String resourceIdName;
-
-    @Value("${jwt.auth.converter.principal-attribute}")
-    private String principalAttribute;
+    private final String resourceIdName;
+    private final String principalAttribute;
+
+    // samma token kommer tillbaka vid varje anrop, så rollerna behöver bara räknas fram en gång per jti.
+    // tokenets signatur och giltighet kontrolleras ändå före konverteringen
+    private final Cache<String, Collection<GrantedAuthority>> authoritiesByTokenId;
+
+    public JwtAuthConverter(
+            MeterRegistry meterRegistry,
+            @Value("${jwt.auth.converter.resource-id.name}") String resourceIdName,
+            @Value("${jwt.auth.converter.principal-attribute}") String principalAttribute,
+            @Value("${jwt.auth.converter.authorities-cache.max-size:10000}") long cacheSize,
+            @Value("${jwt.auth.converter.authorities-cache.ttl:5m}") Duration cacheTtl
+    ) {
+        this.resourceIdName = resourceIdName;
+        this.principalAttribute = principalAttribute;
+        this.authoritiesByTokenId = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, authoritiesByTokenId, "jwt-authorities");
+    }
 
     @Override
     public AbstractAuthenticationToken convert(Jwt source) {
-        System.out.println("JWT claims: " + source.getClaims());
-
-        Collection<GrantedAuthority> authorities = Stream.concat(
-                jwtGrantedAuthoritiesConverter.convert(source).stream(),
-                extractResourceRoles(source).stream()
-        ).collect(Collectors.toSet());
-
-        System.out.println("Extracted roles: " + authorities);
+        String tokenId = source.getId();
+        Collection<GrantedAuthority> authorities = tokenId != null
+                ? authoritiesByTokenId.get(tokenId, id -> extractAuthorities(source))
+                : extractAuthorities(source);
 
         return new JwtAuthenticationToken(
                 source,
@@ -47,6 +71,16 @@ public class JwtAuthConverter implements Converter<Jwt, AbstractAuthenticationTo
         );
     }
 
+    private Collection<GrantedAuthority> extractAuthorities(Jwt source) {
+        Collection<GrantedAuthority> authorities = Stream.concat(
+                jwtGrantedAuthoritiesConverter.convert(source).stream(),
+                extractResourceRoles(source).stream()
+        ).collect(Collectors.toUnmodifiableSet());
+
+        log.debug("Extracted roles {} for subject {}", authorities, source.getSubject());
+        return authorities;
+    }
+
     private Collection<? extends GrantedAuthority> extractResourceRoles(Jwt jwt) {
 
         if (!jwt.hasClaim("resource_access")) {
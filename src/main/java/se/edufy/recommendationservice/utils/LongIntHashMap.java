@@ -0,0 +1,182 @@
+package se.edufy.recommendationservice.utils;
+
+/**
+ * Open-addressing hash map from primitive {@code long} keys to {@code int} values.
+ * Avoids boxing both sides, which matters for catalog-sized id lookups.
+ * Not thread-safe while being built; safe to share once fully populated.
+ */
+public final class LongIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public LongIntHashMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Copy of {@code source} that can be changed without affecting it.
+     */
+    public LongIntHashMap(LongIntHashMap source) {
+        this.missingValue = source.missingValue;
+        this.keys = source.keys.clone();
+        this.values = source.values.clone();
+        this.used = source.used.clone();
+        this.size = source.size;
+        this.mask = source.mask;
+    }
+
+    public int get(long key) {
+        int slot = slot(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        int slot = slot(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Stores the value unless the key is already present.
+     *
+     * @return {@code true} if the key was added
+     */
+    public boolean putIfAbsent(long key, int value) {
+        if (size + 1 > keys.length * LOAD_FACTOR) {
+            resize(keys.length << 1);
+        }
+
+        int slot = slot(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds {@code delta} to the value of the key; a missing key starts at zero.
+     *
+     * @return the new value
+     */
+    public int addTo(long key, int delta) {
+        if (size + 1 > keys.length * LOAD_FACTOR) {
+            resize(keys.length << 1);
+        }
+
+        int slot = slot(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = delta;
+        size++;
+        return delta;
+    }
+
+    /**
+     * Removes the key. The entries probed after it are shifted back into the gap, so no
+     * tombstones are left behind and lookups stay as short as before.
+     *
+     * @return {@code true} if the key was present
+     */
+    public boolean remove(long key) {
+        int slot = slot(key);
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                int gap = slot;
+                for (int next = (gap + 1) & mask; used[next]; next = (next + 1) & mask) {
+                    // an entry may fill the gap only if the gap lies between its home slot and its slot
+                    if (((next - slot(keys[next])) & mask) >= ((next - gap) & mask)) {
+                        keys[gap] = keys[next];
+                        values[gap] = values[next];
+                        gap = next;
+                    }
+                }
+                used[gap] = false;
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Visits every entry, in no particular order.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                putIfAbsent(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+}
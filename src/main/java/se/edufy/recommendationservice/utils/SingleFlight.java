@@ -0,0 +1,139 @@
+package se.edufy.recommendationservice.utils;
+
+import io.micrometer.core.instrument.Counter;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key: the first caller runs the call, and everyone
+ * who asks for that key while it is in flight waits for and shares its outcome. A call that
+ * completes is forgotten at once, so later callers always get a fresh result.
+ *
+ * <p>If the leading caller is cancelled (interrupted), the waiting callers do not inherit the
+ * cancellation; one of them runs the call again.
+ *
+ * <p>Blocking and non-blocking callers share the same in-flight calls.
+ */
+public final class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    /**
+     * @param coalesced incremented for every caller that joins a call already in flight
+     */
+    public SingleFlight(Counter coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    public V execute(K key, Supplier<V> call) {
+        while (true) {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            CompletableFuture<V> leader = inFlight.putIfAbsent(key, mine);
+            if (leader == null) {
+                return lead(key, mine, call);
+            }
+
+            coalesced.increment();
+            try {
+                return leader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a coalesced call");
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof LeaderCancelled)) {
+                    throw rethrow(e.getCause());
+                }
+                // the leader was cancelled, not the call; try again, possibly as the new leader
+            }
+        }
+    }
+
+    /**
+     * Non-blocking counterpart of {@link #execute(Object, Supplier)}: the first subscriber for
+     * {@code key} subscribes to {@code call}, later ones wait for its outcome without holding a
+     * thread. A subscriber that joined and then cancels does not cancel the shared call.
+     */
+    public Mono<V> execute(K key, Mono<V> call) {
+        return Mono.defer(() -> {
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            CompletableFuture<V> leader = inFlight.putIfAbsent(key, mine);
+            if (leader == null) {
+                // forgotten before the followers are woken up, so one that retries can lead
+                return call
+                        .doOnSuccess(value -> {
+                            inFlight.remove(key, mine);
+                            mine.complete(value);
+                        })
+                        .doOnError(e -> {
+                            inFlight.remove(key, mine);
+                            mine.completeExceptionally(e);
+                        })
+                        .doOnCancel(() -> {
+                            inFlight.remove(key, mine);
+                            mine.completeExceptionally(LeaderCancelled.INSTANCE);
+                        });
+            }
+
+            coalesced.increment();
+            // a copy, so a follower that cancels only cancels its own wait, not the shared call.
+            // The leader was cancelled, not the call; try again, possibly as the new leader
+            return Mono.fromFuture(leader.copy())
+                    .onErrorResume(LeaderCancelled.class, e -> execute(key, call));
+        });
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private V lead(K key, CompletableFuture<V> mine, Supplier<V> call) {
+        try {
+            V value = call.get();
+            mine.complete(value);
+            return value;
+        } catch (Throwable e) {
+            mine.completeExceptionally(wasCancelled(e) ? LeaderCancelled.INSTANCE : e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private static boolean wasCancelled(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException e) {
+            return e;
+        }
+        if (cause instanceof Error e) {
+            throw e;
+        }
+        return new IllegalStateException("Coalesced call failed", cause);
+    }
+
+    private static final class LeaderCancelled extends RuntimeException {
+
+        static final LeaderCancelled INSTANCE = new LeaderCancelled();
+
+        private LeaderCancelled() {
+            super("Leading call was cancelled", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package se.edufy.recommendationservice.clients;
+
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import brave.Tracing;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.Tracer;
+import io.micrometer.tracing.brave.bridge.BraveBaggageManager;
+import io.micrometer.tracing.brave.bridge.BraveCurrentTraceContext;
+import io.micrometer.tracing.brave.bridge.BravePropagator;
+import io.micrometer.tracing.brave.bridge.BraveTracer;
+import io.micrometer.tracing.handler.DefaultTracingObservationHandler;
+import io.micrometer.tracing.handler.PropagatingSenderTracingObservationHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.client.RestClient;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.PlayHistory;
+import se.edufy.recommendationservice.utils.GzipResponseInterceptor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GatewayTransportTest {
+
+    private final StubGateway gateway = new StubGateway();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Jwt jwt = Jwt.withTokenValue("token")
+            .header("alg", "none")
+            .subject("user1")
+            .build();
+
+    private RestClient restClient;
+
+    @BeforeEach
+    void setUp() {
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+
+        restClient = RestClient.builder()
+                .requestFactory(new JdkClientHttpRequestFactory())
+                .observationRegistry(observationRegistry)
+                .requestInterceptor(new GzipResponseInterceptor())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        gateway.close();
+    }
+
+    @Test
+    void testGzipResponseIsDecompressed() {
+        gateway.respond("/users/plays", new StubGateway.Response(200, "[{\"mediaId\":1,\"playCount\":3}]", true));
+
+        PlayHistory plays = new PlayClient(restClient, gateway.url()).getUserPlays(jwt);
+
+        assertEquals(PlayHistory.of(List.of(new PlayDTO(1L, 3))), plays);
+        assertEquals("gzip", gateway.requests().get(0).header("Accept-Encoding"));
+        assertEquals("Bearer token", gateway.requests().get(0).header("Authorization"));
+    }
+
+    @Test
+    void testUncompressedResponsePassesThrough() {
+        gateway.respond("/ratings/user/user1", "[{\"id\":9,\"userId\":\"user1\",\"mediaId\":\"2\",\"liked\":true}]");
+
+        List<RatingDTO> ratings = new RatingClient(restClient, gateway.url()).getRatingsForUser("user1", jwt);
+
+        assertEquals(1, ratings.size());
+        assertNull(gateway.requests().get(0).header("Content-Encoding"));
+        assertEquals(new RatingDTO(9L, "user1", "2", true), ratings.get(0));
+    }
+
+    @Test
+    void testLatencyIsTaggedPerClient() {
+        gateway.respond("/users/plays", "[]");
+        gateway.respond("/ratings/user/user1", "[]");
+
+        new PlayClient(restClient, gateway.url()).getUserPlays(jwt);
+        new RatingClient(restClient, gateway.url()).getRatingsForUser("user1", jwt);
+
+        assertEquals(1, meterRegistry.get("http.client.requests").tag("client.name", "plays").timer().count());
+        assertEquals(1, meterRegistry.get("http.client.requests")
+                .tag("client.name", "ratings")
+                .tag("uri", "/edufy/v1/ratings/user/{userId}")
+                .timer().count());
+    }
+
+    @Test
+    void testTraceContextIsForwarded() {
+        Tracing tracing = Tracing.newBuilder().build();
+        Tracer tracer = new BraveTracer(tracing.tracer(),
+                new BraveCurrentTraceContext(tracing.currentTraceContext()), new BraveBaggageManager());
+
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(
+                new ObservationHandler.FirstMatchingCompositeObservationHandler(
+                        new PropagatingSenderTracingObservationHandler<>(tracer, new BravePropagator(tracing)),
+                        new DefaultTracingObservationHandler(tracer)));
+        RestClient tracedClient = restClient.mutate().observationRegistry(observationRegistry).build();
+        gateway.respond("/users/plays", "[]");
+
+        Observation request = Observation.start("recommendation.recommend", observationRegistry);
+        String traceId;
+        try (Observation.Scope scope = request.openScope()) {
+            traceId = tracer.currentSpan().context().traceId();
+            new PlayClient(tracedClient, gateway.url()).getUserPlays(jwt);
+        } finally {
+            request.stop();
+            tracing.close();
+        }
+
+        assertEquals(traceId, gateway.requests().get(0).header("X-B3-TraceId"));
+    }
+
+    @Test
+    void testCatalogDownloadIsConditional() {
+        MediaClient mediaClient = new MediaClient(restClient, request -> null, gateway.url());
+        gateway.respond("/media/details", new StubGateway.Response(200, "[{\"id\":1,\"title\":\"Media 1\"}]", true,
+                Duration.ZERO, Map.of("ETag", "\"v1\"", "Last-Modified", "Thu, 01 Oct 2026 10:00:00 GMT")));
+
+        MediaClient.Fetch loaded = mediaClient.streamAllMedia(new CatalogSnapshot.Builder(), MediaClient.CatalogVersion.NONE);
+
+        assertEquals(MediaClient.Status.LOADED, loaded.status());
+        assertEquals(new MediaClient.CatalogVersion("\"v1\"", Instant.parse("2026-10-01T10:00:00Z")), loaded.version());
+        assertNull(gateway.requests().get(0).header("If-None-Match"));
+
+        gateway.respond("/media/details", new StubGateway.Response(304, "", false));
+        MediaClient.Fetch unchanged = mediaClient.streamAllMedia(new CatalogSnapshot.Builder(), loaded.version());
+
+        assertEquals(MediaClient.Status.NOT_MODIFIED, unchanged.status());
+        assertEquals("\"v1\"", gateway.requests().get(1).header("If-None-Match"));
+        assertEquals("Thu, 01 Oct 2026 10:00:00 GMT", gateway.requests().get(1).header("If-Modified-Since"));
+    }
+
+    @Test
+    void testCatalogChangesAreApplied() {
+        MediaClient mediaClient = new MediaClient(restClient, request -> null, gateway.url());
+        CatalogSnapshot base = new CatalogSnapshot(List.of(
+                new MediaDetailsDTO(1L, "Media 1", List.of("Action"), List.of()),
+                new MediaDetailsDTO(2L, "Media 2", List.of("Comedy"), List.of())
+        ), Instant.now());
+        MediaClient.CatalogVersion version = new MediaClient.CatalogVersion("\"v1\"", Instant.parse("2026-10-01T10:00:00Z"));
+        gateway.respond("/media/details/changes", new StubGateway.Response(200,
+                "[{\"id\":1,\"deleted\":true},{\"id\":3,\"title\":\"Media 3\",\"genres\":[\"Comedy\"]}]", false,
+                Duration.ZERO, Map.of("ETag", "\"v2\"", "Last-Modified", "Thu, 01 Oct 2026 10:05:00 GMT")));
+
+        CatalogSnapshot.Builder changes = new CatalogSnapshot.Builder(base);
+        MediaClient.Fetch fetch = mediaClient.streamChangedMedia(changes, version);
+        CatalogSnapshot changed = changes.build(Instant.now());
+
+        assertEquals(MediaClient.Status.LOADED, fetch.status());
+        assertEquals("since=2026-10-01T10:00:00Z", gateway.requests().get(0).query());
+        assertEquals(-1, changed.ordinalOf(1L));
+        assertArrayEquals(new int[]{1, 2}, changed.postings(changed.genreId("Comedy")));
+        assertEquals("\"v2\"", fetch.version().etag());
+    }
+
+    @Test
+    void testCatalogChangesUnsupported() {
+        MediaClient mediaClient = new MediaClient(restClient, request -> null, gateway.url());
+        MediaClient.CatalogVersion version = new MediaClient.CatalogVersion(null, Instant.parse("2026-10-01T10:00:00Z"));
+
+        // the stub answers 404 for paths without a response
+        MediaClient.Fetch fetch = mediaClient.streamChangedMedia(
+                new CatalogSnapshot.Builder(CatalogSnapshot.EMPTY), version);
+
+        assertEquals(MediaClient.Status.UNSUPPORTED, fetch.status());
+    }
+}
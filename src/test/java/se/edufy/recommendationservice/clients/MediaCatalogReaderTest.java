@@ -0,0 +1,87 @@
+package se.edufy.recommendationservice.clients;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MediaCatalogReaderTest {
+
+    @Test
+    void testRead_buildsCatalog() throws IOException {
+        String json = """
+                [
+                  {"id": 1, "title": "Media 1", "genres": ["Action", "Drama"],
+                   "artists": [{"id": 7, "name": "Artist A"}], "releaseYear": 2001},
+                  {"title": "Media 2", "artists": [{"name": "Artist B", "id": 8}], "genres": ["Drama", "Action"], "id": 2},
+                  {"id": 3, "title": null, "genres": null, "artists": [], "extra": {"nested": [1, 2]}},
+                  {"id": 1, "title": "Duplicate 1", "genres": ["Horror"], "artists": []},
+                  {"title": "No id", "genres": ["Jazz"]}
+                ]
+                """;
+        CatalogSnapshot.Builder builder = new CatalogSnapshot.Builder();
+
+        int read = MediaCatalogReader.read(stream(json), builder);
+        CatalogSnapshot catalog = builder.build(Instant.now());
+
+        assertEquals(5, read);
+        assertEquals(3, catalog.size());
+        assertEquals(new MediaDetailsDTO(1L, "Media 1", List.of("Action", "Drama"),
+                List.of(new ArtistDTO(7L, "Artist A"))), catalog.media(0));
+        assertEquals(new MediaDetailsDTO(2L, "Media 2", List.of("Drama", "Action"),
+                List.of(new ArtistDTO(8L, "Artist B"))), catalog.media(catalog.ordinalOf(2L)));
+        assertEquals(new MediaDetailsDTO(3L, null, List.of(), List.of()), catalog.media(catalog.ordinalOf(3L)));
+        assertEquals("Media 1", catalog.title(catalog.ordinalOf(1L)));
+        // dropped records do not leak genres into the dictionary
+        assertEquals(-1, catalog.genreId("Horror"));
+        assertEquals(-1, catalog.genreId("Jazz"));
+        assertEquals(2, catalog.genreCount());
+    }
+
+    @Test
+    void testRead_internsGenresAndArtists() throws IOException {
+        String json = """
+                [
+                  {"id": 1, "title": "Media 1", "genres": ["Rock"], "artists": [{"id": 7, "name": "Artist A"}]},
+                  {"id": 2, "title": "Media 2", "genres": ["Rock"], "artists": [{"id": 7, "name": "Artist A"}]}
+                ]
+                """;
+        CatalogSnapshot.Builder builder = new CatalogSnapshot.Builder();
+
+        MediaCatalogReader.read(stream(json), builder);
+        CatalogSnapshot catalog = builder.build(Instant.now());
+
+        assertSame(catalog.genresOf(0), catalog.genresOf(1));
+        assertSame(catalog.media(0).genres(), catalog.media(1).genres());
+        assertSame(catalog.media(0).artists().get(0), catalog.media(1).artists().get(0));
+    }
+
+    @Test
+    void testRead_emptyAndNullPayload() throws IOException {
+        assertEquals(0, MediaCatalogReader.read(stream("[]"), new CatalogSnapshot.Builder()));
+        assertEquals(0, MediaCatalogReader.read(stream("null"), new CatalogSnapshot.Builder()));
+        assertEquals(0, MediaCatalogReader.read(stream(""), new CatalogSnapshot.Builder()));
+    }
+
+    @Test
+    void testRead_rejectsMalformedPayload() {
+        assertThrows(JsonParseException.class,
+                () -> MediaCatalogReader.read(stream("{\"id\": 1}"), new CatalogSnapshot.Builder()));
+        assertThrows(IOException.class,
+                () -> MediaCatalogReader.read(stream("[{\"id\": 1, \"genres\": [\"Rock\""), new CatalogSnapshot.Builder()));
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,67 @@
+package se.edufy.recommendationservice.clients;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.jupiter.api.Test;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlayHistoryReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testRead_sortsAndMergesPlays() throws IOException {
+        String json = """
+                [
+                  {"mediaId": 9, "playCount": 2, "playedAt": "2024-05-01T10:00:00Z"},
+                  {"mediaId": 3, "playCount": 5, "media": {"title": "Media 3", "genres": ["Rock"]}},
+                  {"mediaId": 9, "playCount": 1},
+                  {"playCount": 4},
+                  {"mediaId": null, "playCount": 4},
+                  {"mediaId": 5, "playCount": null},
+                  {"mediaId": 7}
+                ]
+                """;
+
+        PlayHistory plays = objectMapper.readValue(json, PlayHistory.class);
+
+        assertEquals(4, plays.size());
+        assertEquals(List.of(3L, 5L, 7L, 9L), List.of(plays.mediaId(0), plays.mediaId(1), plays.mediaId(2), plays.mediaId(3)));
+        assertEquals(5, plays.playCountOf(3L));
+        // a missing play count counts as one play
+        assertEquals(1, plays.playCountOf(5L));
+        assertEquals(1, plays.playCountOf(7L));
+        assertEquals(3, plays.playCountOf(9L));
+        assertFalse(plays.contains(4L));
+        assertEquals(0, plays.playCountOf(4L));
+    }
+
+    @Test
+    void testRead_sameAsFromDtos() throws IOException {
+        String json = "[{\"mediaId\":1,\"playCount\":3},{\"mediaId\":2,\"playCount\":1},{\"mediaId\":4,\"playCount\":7}]";
+
+        PlayHistory plays = objectMapper.readValue(json, PlayHistory.class);
+
+        assertEquals(PlayHistory.of(List.of(new PlayDTO(4L, 7), new PlayDTO(1L, 3), new PlayDTO(2L, 1))), plays);
+    }
+
+    @Test
+    void testRead_emptyAndNull() throws IOException {
+        assertSame(PlayHistory.EMPTY, objectMapper.readValue("[]", PlayHistory.class));
+        assertSame(PlayHistory.EMPTY, objectMapper.readValue("null", PlayHistory.class));
+    }
+
+    @Test
+    void testRead_rejectsAnObject() {
+        assertThrows(MismatchedInputException.class,
+                () -> objectMapper.readValue("{\"mediaId\": 1}", PlayHistory.class));
+        assertThrows(MismatchedInputException.class,
+                () -> objectMapper.readValue("[1, 2]", PlayHistory.class));
+    }
+}
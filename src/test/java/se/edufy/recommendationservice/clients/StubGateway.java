@@ -0,0 +1,125 @@
+package se.edufy.recommendationservice.clients;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process stand-in for the gateway, serving canned JSON per path on a random local port.
+ * Requests are recorded so tests can check what the clients sent.
+ */
+public class StubGateway implements AutoCloseable {
+
+    public record Response(int status, String body, boolean gzip, Duration delay, Map<String, String> headers) {
+
+        public Response(int status, String body, boolean gzip, Duration delay) {
+            this(status, body, gzip, delay, Map.of());
+        }
+
+        public Response(int status, String body, boolean gzip) {
+            this(status, body, gzip, Duration.ZERO);
+        }
+    }
+
+    public record Request(String method, String path, String query, Map<String, List<String>> headers) {
+
+        public String header(String name) {
+            return headers.entrySet().stream()
+                    .filter(e -> e.getKey().equalsIgnoreCase(name))
+                    .map(e -> e.getValue().get(0))
+                    .findFirst()
+                    .orElse(null);
+        }
+    }
+
+    private final HttpServer server;
+    private final Map<String, Response> responses = new ConcurrentHashMap<>();
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+
+    public StubGateway() {
+        try {
+            // room for bursts of new connections, the default backlog is 50
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/", this::handle);
+        // delayed responses must not hold up the others
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+    }
+
+    /**
+     * Base URL that replaces {@code http://gateway:4646/edufy/v1} in the clients.
+     */
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/edufy/v1";
+    }
+
+    public StubGateway respond(String path, String json) {
+        return respond(path, new Response(200, json, false));
+    }
+
+    public StubGateway respond(String path, Response response) {
+        responses.put("/edufy/v1" + path, response);
+        return this;
+    }
+
+    public List<Request> requests() {
+        return requests;
+    }
+
+    public long requestCount(String path) {
+        return requests.stream().filter(r -> r.path().equals("/edufy/v1" + path)).count();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        requests.add(new Request(exchange.getRequestMethod(), path, exchange.getRequestURI().getQuery(),
+                Map.copyOf(exchange.getRequestHeaders())));
+
+        Response response = responses.getOrDefault(path, new Response(404, "{\"error\":\"no stub for " + path + "\"}", false));
+        if (!response.delay().isZero()) {
+            try {
+                Thread.sleep(response.delay());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+        if (response.gzip()) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(body);
+            }
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        response.headers().forEach(exchange.getResponseHeaders()::set);
+        // a 304 has no body
+        exchange.sendResponseHeaders(response.status(), response.status() == 304 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
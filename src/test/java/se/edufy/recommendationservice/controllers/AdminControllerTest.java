@@ -0,0 +1,71 @@
+package se.edufy.recommendationservice.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import se.edufy.recommendationservice.services.MediaCatalog;
+import se.edufy.recommendationservice.services.RecommendationCache;
+import se.edufy.recommendationservice.services.TasteProfileService;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class AdminControllerTest {
+
+    private final RecommendationCache recommendationCache = mock(RecommendationCache.class);
+    private final TasteProfileService tasteProfileService = mock(TasteProfileService.class);
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders
+                .standaloneSetup(new AdminController(mock(MediaCatalog.class), recommendationCache, tasteProfileService))
+                .build();
+    }
+
+    @Test
+    void testRatingEvent_recordsLikeAndDislike() throws Exception {
+        postRating("{\"userId\": \"user1\", \"mediaId\": \"5\", \"liked\": true}").andExpect(status().isAccepted());
+        postRating("{\"userId\": \"user1\", \"mediaId\": \"6\", \"liked\": false}").andExpect(status().isAccepted());
+
+        verify(tasteProfileService).recordRating("user1", 5L, true);
+        verify(tasteProfileService).recordRating("user1", 6L, false);
+        verify(recommendationCache, times(2)).invalidate("user1");
+    }
+
+    @Test
+    void testRatingEvent_missingLikedIsRejected() throws Exception {
+        postRating("{\"userId\": \"user1\", \"mediaId\": \"5\"}").andExpect(status().isBadRequest());
+        postRating("{\"userId\": \"user1\", \"mediaId\": \"5\", \"liked\": null}").andExpect(status().isBadRequest());
+
+        verifyNoInteractions(tasteProfileService, recommendationCache);
+    }
+
+    @Test
+    void testRatingEvent_nonNumericMediaIdIsRejected() throws Exception {
+        postRating("{\"userId\": \"user1\", \"mediaId\": \"abc\", \"liked\": true}").andExpect(status().isBadRequest());
+
+        verifyNoInteractions(tasteProfileService, recommendationCache);
+    }
+
+    @Test
+    void testPlayEvent_nonPositivePlayCountIsRejected() throws Exception {
+        mockMvc.perform(post("/edufy/v1/recommendations/admin/events/plays")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"userId\": \"user1\", \"mediaId\": 5, \"playCount\": 0}"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(tasteProfileService, recommendationCache);
+    }
+
+    private ResultActions postRating(String body) throws Exception {
+        return mockMvc.perform(post("/edufy/v1/recommendations/admin/events/ratings")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(body));
+    }
+}
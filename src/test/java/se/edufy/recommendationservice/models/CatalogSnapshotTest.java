@@ -0,0 +1,195 @@
+package se.edufy.recommendationservice.models;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotTest {
+
+    private final CatalogSnapshot snapshot = new CatalogSnapshot(List.of(
+            new MediaDetailsDTO(10L, "Media 10", List.of("Action"), List.of(new ArtistDTO(1L, "Artist A"))),
+            new MediaDetailsDTO(20L, "Media 20", List.of("Comedy", "Action"), List.of()),
+            new MediaDetailsDTO(30L, "Media 30", List.of("Drama"), List.of()),
+            new MediaDetailsDTO(10L, "Duplicate 10", List.of("Horror"), List.of()),
+            new MediaDetailsDTO(40L, "Media 40", null, List.of())
+    ), Instant.now());
+
+    @Test
+    void testOrdinalIndex() {
+        assertEquals(4, snapshot.size());
+        assertEquals(0, snapshot.ordinalOf(10L));
+        assertEquals(3, snapshot.ordinalOf(40L));
+        assertEquals(-1, snapshot.ordinalOf(99L));
+        // first occurrence of a duplicate id wins
+        assertEquals("Media 10", snapshot.media(snapshot.ordinalOf(10L)).title());
+    }
+
+    @Test
+    void testGenrePostings() {
+        int action = snapshot.genreId("Action");
+
+        assertArrayEquals(new int[]{0, 1}, snapshot.postings(action));
+        assertArrayEquals(new int[]{2}, snapshot.postings(snapshot.genreId("Drama")));
+        assertEquals(-1, snapshot.genreId("Horror"));
+        assertEquals(0, snapshot.genresOf(3).length);
+        assertTrue(Arrays.stream(snapshot.genresOf(1)).anyMatch(g -> g == action));
+    }
+
+    @Test
+    void testArtistDictionary() {
+        CatalogSnapshot catalog = new CatalogSnapshot(List.of(
+                new MediaDetailsDTO(1L, "Media 1", List.of("Action"), List.of(new ArtistDTO(7L, "Artist A"))),
+                new MediaDetailsDTO(2L, "Media 2", List.of("Comedy"), List.of(new ArtistDTO(7L, "Artist A"),
+                        new ArtistDTO(8L, "Artist B"))),
+                new MediaDetailsDTO(3L, "Media 3", List.of("Action"), List.of(new ArtistDTO(7L, "Artist A"))),
+                new MediaDetailsDTO(1L, "Duplicate 1", List.of(), List.of(new ArtistDTO(9L, "Artist C")))
+        ), Instant.now());
+
+        // the artist of the dropped duplicate gets no index
+        assertEquals(2, catalog.artistCount());
+        assertEquals(new ArtistDTO(7L, "Artist A"), catalog.artist(catalog.artistsOf(0)[0]));
+        assertEquals(2, catalog.artistsOf(1).length);
+
+        assertArrayEquals(new int[]{0, 1, 2}, catalog.artistPostings(catalog.artistsOf(0)[0]));
+    }
+
+    @Test
+    void testChangesKeepOrdinalsAndMatchAFullLoad() {
+        SplittableRandom random = new SplittableRandom(3);
+        Map<Long, MediaDetailsDTO> expected = new LinkedHashMap<>();
+        for (long id = 1; id <= 500; id++) {
+            expected.put(id, randomMedia(id, random));
+        }
+        CatalogSnapshot base = new CatalogSnapshot(new ArrayList<>(expected.values()), Instant.now());
+        int[] basePostings = base.postings(0).clone();
+
+        CatalogSnapshot.Builder changes = new CatalogSnapshot.Builder(base);
+        for (int i = 0; i < 150; i++) {
+            long id = 1 + random.nextInt(600);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id) != null, changes.remove(id));
+            } else {
+                MediaDetailsDTO media = randomMedia(id, random);
+                expected.put(id, media);
+                changes.add(media);
+            }
+        }
+        CatalogSnapshot changed = changes.build(Instant.now());
+
+        // the base snapshot is untouched
+        assertArrayEquals(basePostings, base.postings(0));
+        assertEquals(500, base.liveCount());
+
+        assertEquals(expected.size(), changed.liveCount());
+        for (long id = 1; id <= 600; id++) {
+            int ordinal = changed.ordinalOf(id);
+            if (!expected.containsKey(id)) {
+                assertEquals(-1, ordinal);
+                continue;
+            }
+            assertTrue(changed.isLive(ordinal));
+            assertEquals(expected.get(id), changed.media(ordinal));
+            if (base.ordinalOf(id) >= 0) {
+                assertEquals(base.ordinalOf(id), ordinal);
+            }
+        }
+
+        for (int genre = 0; genre < changed.genreCount(); genre++) {
+            String name = changed.genreName(genre);
+            TreeSet<Integer> ordinals = new TreeSet<>();
+            expected.values().stream()
+                    .filter(media -> media.genres().contains(name))
+                    .forEach(media -> ordinals.add(changed.ordinalOf(media.id())));
+            assertArrayEquals(ordinals.stream().mapToInt(Integer::intValue).toArray(), changed.postings(genre), name);
+        }
+        for (int artist = 0; artist < changed.artistCount(); artist++) {
+            ArtistDTO dto = changed.artist(artist);
+            TreeSet<Integer> ordinals = new TreeSet<>();
+            expected.values().stream()
+                    .filter(media -> media.artists().contains(dto))
+                    .forEach(media -> ordinals.add(changed.ordinalOf(media.id())));
+            assertArrayEquals(ordinals.stream().mapToInt(Integer::intValue).toArray(),
+                    changed.artistPostings(artist), dto.toString());
+        }
+    }
+
+    @Test
+    void testFileRoundTrip(@TempDir Path dir) throws IOException {
+        SplittableRandom random = new SplittableRandom(5);
+        List<MediaDetailsDTO> media = new ArrayList<>();
+        for (long id = 1; id <= 300; id++) {
+            media.add(randomMedia(id, random));
+        }
+        media.add(new MediaDetailsDTO(301L, null, List.of("Genre 1"), List.of(new ArtistDTO(null, "Nameless"))));
+        CatalogSnapshot.Builder changes = new CatalogSnapshot.Builder(new CatalogSnapshot(media, Instant.now()));
+        changes.remove(7L);
+        changes.add(randomMedia(400L, random));
+        CatalogSnapshot original = changes.build(Instant.parse("2026-10-01T10:00:00.123Z"));
+
+        Path file = dir.resolve("catalog.bin");
+        Instant lastModified = Instant.parse("2026-10-01T09:59:00Z");
+        CatalogSnapshotFile.write(file, original, "\"v7\"", lastModified);
+        CatalogSnapshotFile.Contents contents = CatalogSnapshotFile.read(file);
+        CatalogSnapshot restored = contents.snapshot();
+
+        assertEquals("\"v7\"", contents.etag());
+        assertEquals(lastModified, contents.lastModified());
+        assertEquals(original.loadedAt(), restored.loadedAt());
+        assertEquals(original.size(), restored.size());
+        assertEquals(original.liveCount(), restored.liveCount());
+        assertEquals(original.liveOrdinals(), restored.liveOrdinals());
+        for (int ordinal = 0; ordinal < original.size(); ordinal++) {
+            assertEquals(original.media(ordinal), restored.media(ordinal));
+            assertArrayEquals(original.genresOf(ordinal), restored.genresOf(ordinal));
+            assertArrayEquals(original.artistsOf(ordinal), restored.artistsOf(ordinal));
+        }
+        assertEquals(-1, restored.ordinalOf(7L));
+        assertEquals(original.ordinalOf(400L), restored.ordinalOf(400L));
+        for (int genre = 0; genre < original.genreCount(); genre++) {
+            assertEquals(genre, restored.genreId(original.genreName(genre)));
+            assertArrayEquals(original.postings(genre), restored.postings(genre));
+        }
+        for (int artist = 0; artist < original.artistCount(); artist++) {
+            assertEquals(original.artist(artist), restored.artist(artist));
+            assertArrayEquals(original.artistPostings(artist), restored.artistPostings(artist));
+        }
+    }
+
+    @Test
+    void testFileRejectsCorruption(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("catalog.bin");
+        CatalogSnapshotFile.write(file, snapshot, null, null);
+        assertNull(CatalogSnapshotFile.read(file).lastModified());
+
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> CatalogSnapshotFile.read(file));
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        assertThrows(IOException.class, () -> CatalogSnapshotFile.read(file));
+    }
+
+    private static MediaDetailsDTO randomMedia(long id, SplittableRandom random) {
+        List<String> genres = random.ints(1 + random.nextInt(3), 0, 25)
+                .distinct().mapToObj(g -> "Genre " + g).toList();
+        List<ArtistDTO> artists = random.ints(1 + random.nextInt(2), 0, 40)
+                .distinct().mapToObj(a -> new ArtistDTO((long) a, "Artist " + a)).toList();
+        return new MediaDetailsDTO(id, "Media " + id + "." + random.nextInt(), genres, artists);
+    }
+}
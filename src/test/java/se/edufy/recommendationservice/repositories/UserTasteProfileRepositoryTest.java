@@ -0,0 +1,54 @@
+package se.edufy.recommendationservice.repositories;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class UserTasteProfileRepositoryTest {
+
+    @Autowired
+    private UserTasteProfileRepository repository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    void testSaveAndLoad_roundTripsCompactColumns() {
+        UserTasteProfile profile = new UserTasteProfile("user1");
+        profile.recordPlay(42L, 3);
+        profile.recordPlay(7L, 1);
+        profile.recordRating(9L, false);
+        profile.addGenreWeight("Action", 2.0);
+        repository.saveAndFlush(profile);
+        entityManager.clear();
+
+        UserTasteProfile loaded = repository.findById("user1").orElseThrow();
+
+        assertArrayEquals(new long[]{7L, 42L}, loaded.getPlayedMediaIds());
+        assertArrayEquals(new int[]{1, 3}, loaded.getPlayCounts());
+        assertArrayEquals(new long[]{9L}, loaded.getDislikedMediaIds());
+        assertEquals(4, loaded.getTotalPlays());
+        assertEquals(2.0, loaded.getGenreWeights().get("Action"));
+    }
+
+    @Test
+    void testUpdate_isPersisted() {
+        repository.saveAndFlush(new UserTasteProfile("user2"));
+        entityManager.clear();
+
+        UserTasteProfile profile = repository.findById("user2").orElseThrow();
+        profile.addGenreWeight("Drama", 1.0);
+        profile.recordRating(3L, true);
+        repository.saveAndFlush(profile);
+        entityManager.clear();
+
+        UserTasteProfile loaded = repository.findById("user2").orElseThrow();
+        assertEquals(1.0, loaded.getGenreWeights().get("Drama"));
+        assertArrayEquals(new long[]{3L}, loaded.getLikedMediaIds());
+    }
+}
@@ -0,0 +1,67 @@
+package se.edufy.recommendationservice.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.BatchRecommendationDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchRecommendationServiceTest {
+
+    @Mock
+    private RecommendationService recommendationService;
+
+    @Mock
+    private TasteProfileService tasteProfileService;
+
+    @Mock
+    private MediaCatalog mediaCatalog;
+
+    @Test
+    void testRecommendAll_sharesOneSnapshotAndStreamsEveryUser() throws IOException {
+        CatalogSnapshot catalog = new CatalogSnapshot(List.of(
+                new MediaDetailsDTO(1L, "Media 1", List.of("Action"), List.of(new ArtistDTO(1L, "Artist A")))
+        ), Instant.now());
+        UserTasteProfile profile = new UserTasteProfile("user-3");
+
+        when(mediaCatalog.current()).thenReturn(catalog);
+        when(tasteProfileService.findAll(anyCollection())).thenAnswer(inv -> {
+            Collection<String> ids = inv.getArgument(0);
+            return ids.contains("user-3") ? Map.of("user-3", profile) : Map.of();
+        });
+        when(recommendationService.recommendFromProfile(anyString(), any(), same(catalog)))
+                .thenReturn(List.of(catalog.media(0)));
+        when(recommendationService.recommendFromProfile(eq("user-7"), any(), same(catalog)))
+                .thenThrow(new IllegalStateException("boom"));
+
+        BatchRecommendationService batch = new BatchRecommendationService(
+                recommendationService, tasteProfileService, mediaCatalog, 4, 5);
+        List<String> userIds = IntStream.range(0, 12).mapToObj(i -> "user-" + i).toList();
+
+        List<BatchRecommendationDTO> results = new ArrayList<>();
+        batch.recommendAll(userIds, results::add);
+
+        assertEquals(new HashSet<>(userIds), results.stream().map(BatchRecommendationDTO::userId).collect(Collectors.toSet()));
+        assertEquals("boom", results.stream().filter(r -> r.userId().equals("user-7")).findFirst().orElseThrow().error());
+        verify(mediaCatalog, times(1)).current();
+        verify(tasteProfileService, times(3)).findAll(anyCollection());
+        verify(recommendationService).recommendFromProfile("user-3", profile, catalog);
+
+        batch.shutdown();
+    }
+}
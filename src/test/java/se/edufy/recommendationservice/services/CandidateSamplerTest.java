@@ -0,0 +1,85 @@
+package se.edufy.recommendationservice.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CandidateSamplerTest {
+
+    @Test
+    void testSample_denseCandidates() {
+        BitSet candidates = new BitSet();
+        candidates.set(0, 1_000);
+        candidates.clear(500);
+
+        int[] picks = new CandidateSampler(new SplittableRandom(1)).sample(candidates, 10);
+
+        assertEquals(10, picks.length);
+        assertEquals(10, Arrays.stream(picks).distinct().count());
+        assertTrue(Arrays.stream(picks).allMatch(candidates::get));
+    }
+
+    @Test
+    void testSample_sparseCandidates() {
+        BitSet candidates = new BitSet();
+        candidates.set(3);
+        candidates.set(40_000);
+        candidates.set(70_000);
+        candidates.set(99_999);
+
+        int[] picks = new CandidateSampler(new SplittableRandom(1)).sample(candidates, 3);
+
+        assertEquals(3, picks.length);
+        assertEquals(3, Arrays.stream(picks).distinct().count());
+        assertTrue(Arrays.stream(picks).allMatch(candidates::get));
+    }
+
+    @Test
+    void testSample_fewerCandidatesThanK() {
+        BitSet candidates = new BitSet();
+        candidates.set(2);
+        candidates.set(7);
+
+        int[] picks = new CandidateSampler(new SplittableRandom(1)).sample(candidates, 10);
+
+        Arrays.sort(picks);
+        assertArrayEquals(new int[]{2, 7}, picks);
+        assertEquals(0, new CandidateSampler().sample(new BitSet(), 10).length);
+    }
+
+    @Test
+    void testSample_seededIsReproducible() {
+        BitSet candidates = new BitSet();
+        candidates.set(0, 10_000);
+
+        int[] first = new CandidateSampler(new SplittableRandom(42)).sample(candidates, 10);
+        int[] second = new CandidateSampler(new SplittableRandom(42)).sample(candidates, 10);
+
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    void testSample_isRoughlyUniform() {
+        BitSet candidates = new BitSet();
+        for (int i = 0; i < 100; i += 10) {
+            candidates.set(i);
+        }
+        CandidateSampler sampler = new CandidateSampler(new SplittableRandom(7));
+
+        int[] hits = new int[100];
+        for (int round = 0; round < 10_000; round++) {
+            for (int ordinal : sampler.sample(candidates, 2)) {
+                hits[ordinal]++;
+            }
+        }
+
+        // each of the 10 candidates should be drawn about 2000 times
+        for (int i = 0; i < 100; i += 10) {
+            assertTrue(hits[i] > 1_700 && hits[i] < 2_300, "ordinal " + i + " drawn " + hits[i] + " times");
+        }
+    }
+}
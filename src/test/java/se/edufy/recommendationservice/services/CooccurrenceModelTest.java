@@ -0,0 +1,108 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CooccurrenceTable;
+import se.edufy.recommendationservice.repositories.UserTasteProfileRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CooccurrenceModelTest {
+
+    @Mock
+    private UserTasteProfileRepository repository;
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void testRebuild_writesAndMapsTopNeighbours() throws IOException {
+        // fixture: 1 and 2 are played together by three users, 1 and 3 by two, 1 and 4 by one
+        List<UserTasteProfile> profiles = List.of(
+                profile("a", 1L, 2L, 3L),
+                profile("b", 1L, 2L, 3L),
+                profile("c", 1L, 2L),
+                profile("d", 1L, 4L),
+                profile("e", 5L)
+        );
+        // two profiles per page
+        when(repository.findAll(any(Pageable.class))).thenAnswer(inv -> {
+            Pageable page = inv.getArgument(0);
+            int from = (int) page.getOffset();
+            return new PageImpl<>(profiles.subList(from, Math.min(from + 2, profiles.size())), page, profiles.size());
+        });
+
+        Path file = tempDir.resolve("models/cooccurrence.bin");
+        CooccurrenceModel model = newModel(file);
+        assertFalse(model.current().isLoaded());
+
+        CooccurrenceTable table = model.rebuild();
+
+        assertTrue(Files.exists(file));
+        assertSame(table, model.current());
+        // media 4 and 5 have no neighbour seen by at least two users
+        assertEquals(3, table.itemCount());
+        assertEquals(-1, table.indexOf(4L));
+
+        int item = table.indexOf(1L);
+        assertEquals(2, table.neighboursFrom(item + 1) - table.neighboursFrom(item));
+        int first = table.neighboursFrom(item);
+        assertEquals(2L, table.neighbourId(first));
+        assertEquals(3L, table.neighbourId(first + 1));
+        // cosine: 3 / sqrt(4 * 3)
+        assertEquals(3 / Math.sqrt(12), table.score(first), 1e-6);
+        assertTrue(table.score(first) > table.score(first + 1));
+    }
+
+    @Test
+    void testStartup_mapsExistingTable() throws IOException {
+        Path file = tempDir.resolve("cooccurrence.bin");
+        new CooccurrenceTable.Writer()
+                .add(10L, new long[]{20L, 30L}, new float[]{0.8f, 0.5f}, 2)
+                .add(20L, new long[]{10L}, new float[]{0.8f}, 1)
+                .write(file);
+
+        CooccurrenceTable table = newModel(file).current();
+
+        assertTrue(table.isLoaded());
+        assertEquals(2, table.itemCount());
+        assertEquals(1, table.indexOf(20L));
+        assertEquals(10L, table.neighbourId(table.neighboursFrom(1)));
+        assertEquals(-1, table.indexOf(30L));
+    }
+
+    @Test
+    void testStartup_ignoresCorruptTable() throws IOException {
+        Path file = tempDir.resolve("cooccurrence.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+
+        assertFalse(newModel(file).current().isLoaded());
+    }
+
+    private CooccurrenceModel newModel(Path file) {
+        return new CooccurrenceModel(repository, new SimpleMeterRegistry(), file, 20, 2, 200, 2);
+    }
+
+    private static UserTasteProfile profile(String userId, long... played) {
+        UserTasteProfile profile = new UserTasteProfile(userId);
+        for (long mediaId : played) {
+            profile.recordPlay(mediaId, 1);
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,298 @@
+package se.edufy.recommendationservice.services;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.server.ResponseStatusException;
+import se.edufy.recommendationservice.clients.MediaClient;
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MediaCatalogTest {
+
+    @Mock
+    private MediaClient mediaClient;
+
+    private static final MediaClient.CatalogVersion V1 =
+            new MediaClient.CatalogVersion("\"v1\"", Instant.parse("2026-10-01T10:00:00Z"));
+    private static final MediaClient.CatalogVersion V2 =
+            new MediaClient.CatalogVersion("\"v2\"", Instant.parse("2026-10-01T10:05:00Z"));
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private MediaCatalog mediaCatalog;
+
+    private final List<MediaDetailsDTO> media = List.of(
+            new MediaDetailsDTO(1L, "Media 1", List.of("Action"), List.of(new ArtistDTO(1L, "Artist A"))),
+            new MediaDetailsDTO(2L, "Media 2", List.of("Comedy"), List.of(new ArtistDTO(2L, "Artist B")))
+    );
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        UpstreamGuard upstreamGuard = new UpstreamGuard(meterRegistry, CircuitBreakerConfig.ofDefaults(),
+                BulkheadConfig.ofDefaults(), Duration.ofMinutes(1));
+        mediaCatalog = new MediaCatalog(mediaClient, upstreamGuard, meterRegistry);
+    }
+
+    @Test
+    void testCurrent_loadsOnFirstUse() {
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(this::streamMedia);
+
+        CatalogSnapshot snapshot = mediaCatalog.current();
+
+        assertEquals(2, snapshot.size());
+        assertSame(snapshot, mediaCatalog.current());
+        verify(mediaClient, times(1)).streamAllMedia(any(), any());
+    }
+
+    @Test
+    void testRefresh_failureKeepsPreviousSnapshot() {
+        when(mediaClient.streamAllMedia(any(), any()))
+                .thenAnswer(this::streamMedia)
+                .thenThrow(new RestClientException("gateway down"));
+
+        CatalogSnapshot first = mediaCatalog.refresh();
+        CatalogSnapshot afterFailure = mediaCatalog.refresh();
+
+        assertSame(first, afterFailure);
+        assertEquals(2, mediaCatalog.current().size());
+        assertEquals(1, meterRegistry.get("recommendation.catalog.refresh").tag("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void testCurrent_neverLoaded() {
+        when(mediaClient.streamAllMedia(any(), any())).thenThrow(new RestClientException("gateway down"));
+
+        assertThrows(ResponseStatusException.class, () -> mediaCatalog.current());
+    }
+
+    @Test
+    void testMetrics() {
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(this::streamMedia);
+
+        mediaCatalog.refresh();
+
+        assertEquals(2.0, meterRegistry.get("recommendation.catalog.size").gauge().value());
+        assertFalse(Double.isNaN(meterRegistry.get("recommendation.catalog.age").timeGauge().value()));
+        assertEquals(1, meterRegistry.get("recommendation.catalog.refresh").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void testRefresh_concurrentCallersShareOneDownload() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(invocation -> {
+            release.await();
+            return streamMedia(invocation);
+        });
+
+        List<Future<CatalogSnapshot>> snapshots = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 5; i++) {
+                snapshots.add(executor.submit(mediaCatalog::current));
+            }
+            Counter coalesced = meterRegistry.get("recommendation.upstream.coalesced").tag("client", "media").counter();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            while (coalesced.count() < 4 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            for (Future<CatalogSnapshot> snapshot : snapshots) {
+                assertSame(snapshots.get(0).get(), snapshot.get());
+            }
+            assertEquals(4.0, coalesced.count());
+        }
+        verify(mediaClient, times(1)).streamAllMedia(any(), any());
+    }
+
+    @Test
+    void testRefresh_appliesChangesSinceLastModified() {
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(invocation -> {
+            streamMedia(invocation);
+            return new MediaClient.Fetch(MediaClient.Status.LOADED, 2, V1);
+        });
+        when(mediaClient.streamChangedMedia(any(), eq(V1))).thenAnswer(invocation -> {
+            CatalogSnapshot.Builder changes = invocation.getArgument(0);
+            changes.add(new MediaDetailsDTO(2L, "Media 2 (remastered)", List.of("Action"), List.of(new ArtistDTO(2L, "Artist B"))));
+            changes.add(new MediaDetailsDTO(3L, "Media 3", List.of("Drama"), List.of(new ArtistDTO(1L, "Artist A"))));
+            changes.remove(1L);
+            return new MediaClient.Fetch(MediaClient.Status.LOADED, 3, V2);
+        });
+
+        mediaCatalog.refresh();
+        CatalogSnapshot changed = mediaCatalog.refresh();
+
+        // ordinals are kept, the new media is appended and the removed one leaves a gap
+        assertEquals(-1, changed.ordinalOf(1L));
+        assertEquals(1, changed.ordinalOf(2L));
+        assertEquals(2, changed.ordinalOf(3L));
+        assertEquals("Media 2 (remastered)", changed.title(1));
+        assertEquals(2, changed.liveCount());
+        assertEquals(BitSet.valueOf(new long[]{0b110}), changed.liveOrdinals());
+        assertArrayEquals(new int[]{1}, changed.postings(changed.genreId("Action")));
+        assertArrayEquals(new int[0], changed.postings(changed.genreId("Comedy")));
+
+        verify(mediaClient, times(1)).streamAllMedia(any(), any());
+        assertEquals(1, meterRegistry.get("recommendation.catalog.sync").tag("result", "changes").counter().count());
+        assertEquals(2.0, meterRegistry.get("recommendation.catalog.size").gauge().value());
+    }
+
+    @Test
+    void testRefresh_notModifiedKeepsCatalog() {
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(invocation -> {
+            streamMedia(invocation);
+            return new MediaClient.Fetch(MediaClient.Status.LOADED, 2, V1);
+        });
+        when(mediaClient.streamChangedMedia(any(), eq(V1)))
+                .thenReturn(new MediaClient.Fetch(MediaClient.Status.NOT_MODIFIED, 0, V1));
+
+        CatalogSnapshot first = mediaCatalog.refresh();
+        CatalogSnapshot second = mediaCatalog.refresh();
+
+        assertEquals(first.ordinalOf(2L), second.ordinalOf(2L));
+        assertSame(first.media(1).genres(), second.media(1).genres());
+        assertEquals(1, meterRegistry.get("recommendation.catalog.sync").tag("result", "not-modified").counter().count());
+    }
+
+    @Test
+    void testRefresh_fullConditionalDownloadWithoutChangesEndpoint() {
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(invocation -> {
+            streamMedia(invocation);
+            return new MediaClient.Fetch(MediaClient.Status.LOADED, 2, V1);
+        });
+        when(mediaClient.streamChangedMedia(any(), any()))
+                .thenReturn(new MediaClient.Fetch(MediaClient.Status.UNSUPPORTED, 0, V1));
+
+        mediaCatalog.refresh();
+        mediaCatalog.refresh();
+        mediaCatalog.refresh();
+
+        // the changes endpoint is only tried once; later downloads send the validators
+        verify(mediaClient, times(1)).streamChangedMedia(any(), any());
+        verify(mediaClient).streamAllMedia(any(), eq(MediaClient.CatalogVersion.NONE));
+        verify(mediaClient, times(2)).streamAllMedia(any(), eq(V1));
+    }
+
+    @Test
+    void testRefresh_deltaSyncDisabled() {
+        mediaCatalog = new MediaCatalog(mediaClient, new UpstreamGuard(meterRegistry, CircuitBreakerConfig.ofDefaults(),
+                BulkheadConfig.ofDefaults(), Duration.ofMinutes(1)), meterRegistry, Clock.systemUTC(), false, null);
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(invocation -> {
+            streamMedia(invocation);
+            return new MediaClient.Fetch(MediaClient.Status.LOADED, 2, V1);
+        });
+
+        mediaCatalog.refresh();
+        mediaCatalog.refresh();
+
+        verify(mediaClient, never()).streamChangedMedia(any(), any());
+        verify(mediaClient, times(2)).streamAllMedia(any(), any());
+    }
+
+    @Test
+    void testWarmStart_servesSavedSnapshotAndAsksForChanges(@TempDir Path dir) {
+        Path file = dir.resolve("catalog.bin");
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(invocation -> {
+            streamMedia(invocation);
+            return new MediaClient.Fetch(MediaClient.Status.LOADED, 2, V1);
+        });
+        MediaCatalog before = catalogWithFile(file);
+        before.refresh();
+        before.save();
+
+        MediaCatalog restarted = catalogWithFile(file);
+        CatalogSnapshot warm = restarted.current();
+
+        assertTrue(restarted.warmStarted());
+        assertEquals(2, warm.liveCount());
+        assertEquals("Media 2", warm.media(warm.ordinalOf(2L)).title());
+        verify(mediaClient, times(1)).streamAllMedia(any(), any());
+
+        // the first refresh after the restart continues from the saved version
+        when(mediaClient.streamChangedMedia(any(), eq(V1)))
+                .thenReturn(new MediaClient.Fetch(MediaClient.Status.NOT_MODIFIED, 0, V1));
+        restarted.refresh();
+        verify(mediaClient).streamChangedMedia(any(), eq(V1));
+    }
+
+    @Test
+    void testWarmStart_corruptFileLoadsFromGateway(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("catalog.bin");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(this::streamMedia);
+
+        MediaCatalog catalog = catalogWithFile(file);
+
+        assertFalse(catalog.warmStarted());
+        assertEquals(2, catalog.current().liveCount());
+        verify(mediaClient).streamAllMedia(any(), eq(MediaClient.CatalogVersion.NONE));
+    }
+
+    @Test
+    void testSave_skipsUnloadedAndUnchangedSnapshots(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("catalog.bin");
+        MediaCatalog catalog = catalogWithFile(file);
+
+        catalog.save();
+        assertFalse(Files.exists(file));
+
+        when(mediaClient.streamAllMedia(any(), any())).thenAnswer(invocation -> {
+            streamMedia(invocation);
+            return new MediaClient.Fetch(MediaClient.Status.LOADED, 2, V1);
+        });
+        catalog.refresh();
+        catalog.save();
+        Files.delete(file);
+        catalog.save();
+        assertFalse(Files.exists(file));
+
+        // a not-modified refresh confirms the same catalog at a new time, which is not worth a write
+        when(mediaClient.streamChangedMedia(any(), eq(V1)))
+                .thenReturn(new MediaClient.Fetch(MediaClient.Status.NOT_MODIFIED, 0, V1));
+        catalog.refresh();
+        catalog.save();
+        assertFalse(Files.exists(file));
+    }
+
+    private MediaCatalog catalogWithFile(Path file) {
+        UpstreamGuard upstreamGuard = new UpstreamGuard(meterRegistry, CircuitBreakerConfig.ofDefaults(),
+                BulkheadConfig.ofDefaults(), Duration.ofMinutes(1));
+        return new MediaCatalog(mediaClient, upstreamGuard, meterRegistry, Clock.systemUTC(), true, file);
+    }
+
+    private MediaClient.Fetch streamMedia(InvocationOnMock invocation) {
+        CatalogSnapshot.Builder builder = invocation.getArgument(0);
+        media.forEach(builder::add);
+        return new MediaClient.Fetch(MediaClient.Status.LOADED, media.size(), MediaClient.CatalogVersion.NONE);
+    }
+}
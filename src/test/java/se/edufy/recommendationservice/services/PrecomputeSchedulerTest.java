@@ -0,0 +1,113 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PrecomputeSchedulerTest {
+
+    private final RecommendationService recommendationService = mock(RecommendationService.class);
+    private final ActiveUsers activeUsers = new ActiveUsers(100, Duration.ofMinutes(5));
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private PrecomputeScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void testRound_mostActiveFirstWithinQueueCapacity() throws InterruptedException {
+        scheduler = new PrecomputeScheduler(recommendationService, activeUsers, meterRegistry, 1, 3, 2);
+        request("blocker", 100);
+        CountDownLatch blockerStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        when(recommendationService.precompute(anyString())).thenAnswer(invocation -> {
+            String userId = invocation.getArgument(0);
+            if (userId.equals("blocker")) {
+                blockerStarted.countDown();
+                release.await();
+            } else {
+                order.add(userId);
+            }
+            done.countDown();
+            return RecommendationService.Precomputed.STORED;
+        });
+
+        // the only thread is busy with the blocker while the others queue up
+        scheduler.scheduleRound();
+        assertTrue(blockerStarted.await(1, TimeUnit.SECONDS));
+        request("rare", 1);
+        request("frequent", 5);
+        request("medium", 3);
+        request("overflow", 2);
+        scheduler.scheduleRound();
+
+        assertEquals(2.0, meterRegistry.get("recommendation.precompute.queue").gauge().value());
+        release.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+
+        // three slots: the blocker and two users; the least active two wait for the next round
+        assertEquals(List.of("frequent", "medium"), order);
+        assertEquals(2, meterRegistry.get("recommendation.precompute").tag("result", "rejected").counter().count());
+        awaitCount("stored", 3);
+        assertEquals(3, meterRegistry.get("recommendation.precompute.lag").timer().count());
+    }
+
+    @Test
+    void testRound_skippedUnderLoad() {
+        scheduler = new PrecomputeScheduler(recommendationService, activeUsers, meterRegistry, 1, 10, 0);
+        request("user1", 1);
+
+        activeUsers.computeStarted();
+        scheduler.scheduleRound();
+        activeUsers.computeFinished();
+
+        verifyNoInteractions(recommendationService);
+        assertEquals(0.0, meterRegistry.get("recommendation.precompute.queue").gauge().value());
+    }
+
+    @Test
+    void testRound_countsExpiredPinnedAndFailedUsers() throws InterruptedException {
+        scheduler = new PrecomputeScheduler(recommendationService, activeUsers, meterRegistry, 1, 10, 2);
+        request("expired", 3);
+        request("pinned", 2);
+        request("failing", 1);
+        when(recommendationService.precompute("expired")).thenReturn(RecommendationService.Precomputed.EXPIRED);
+        when(recommendationService.precompute("pinned")).thenReturn(RecommendationService.Precomputed.PINNED);
+        when(recommendationService.precompute("failing")).thenThrow(new IllegalStateException("catalog down"));
+
+        scheduler.scheduleRound();
+
+        awaitCount("expired", 1);
+        awaitCount("pinned", 1);
+        awaitCount("failed", 1);
+    }
+
+    private void request(String userId, int times) {
+        for (int i = 0; i < times; i++) {
+            activeUsers.requested(userId);
+        }
+    }
+
+    private void awaitCount(String result, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (meterRegistry.get("recommendation.precompute").tag("result", result).counter().count() < expected
+                && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, meterRegistry.get("recommendation.precompute").tag("result", result).counter().count());
+    }
+}
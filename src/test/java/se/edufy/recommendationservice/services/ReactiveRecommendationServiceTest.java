@@ -0,0 +1,180 @@
+package se.edufy.recommendationservice.services;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import se.edufy.recommendationservice.clients.ReactivePlayClient;
+import se.edufy.recommendationservice.clients.ReactiveRatingClient;
+import se.edufy.recommendationservice.clients.StubGateway;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the WebClient-based gateway clients against a local stub gateway; scoring is mocked.
+ */
+class ReactiveRecommendationServiceTest {
+
+    private static final String PLAYS = "/users/plays";
+    private static final String RATINGS = "/ratings/user/user1";
+    private static final List<MediaDetailsDTO> MEDIA = List.of(new MediaDetailsDTO(1L, "Song", List.of(), List.of()));
+
+    private final StubGateway gateway = new StubGateway();
+    private final RecommendationService recommendationService = mock(RecommendationService.class);
+    private final MediaCatalog mediaCatalog = mock(MediaCatalog.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RecommendationCache recommendationCache =
+            new RecommendationCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(5), false);
+    private final Jwt jwt = Jwt.withTokenValue("token")
+            .header("alg", "none")
+            .subject("user1")
+            .build();
+
+    private ReactiveRecommendationService service;
+
+    @BeforeEach
+    void setUp() {
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new JdkClientHttpConnector())
+                .build();
+        service = new ReactiveRecommendationService(
+                new ReactivePlayClient(webClient, gateway.url()),
+                new ReactiveRatingClient(webClient, gateway.url()),
+                new UpstreamGuard(meterRegistry, CircuitBreakerConfig.ofDefaults(),
+                        BulkheadConfig.ofDefaults(), Duration.ofMinutes(1)),
+                recommendationService,
+                recommendationCache,
+                mediaCatalog,
+                new RecommendationMetrics(meterRegistry, observationRegistry, true),
+                Duration.ofSeconds(2),
+                Duration.ofMillis(500)
+        );
+
+        when(mediaCatalog.isLoaded()).thenReturn(true);
+        when(recommendationService.loaded(eq("user1"), any(), isNull()))
+                .thenAnswer(inv -> new RecommendationCache.Entry(inv.getArgument(1), null, null, false));
+        when(recommendationService.degraded(eq("user1"), any(), isNull()))
+                .thenReturn(new RecommendationCache.Entry(new UpstreamFetcher.Result(PlayHistory.EMPTY, List.of()), null, null, true));
+        when(recommendationService.recommend(eq("user1"), any(RecommendationCache.Entry.class), any()))
+                .thenAnswer(inv -> new RecommendationService.Recommendations(MEDIA,
+                        inv.<RecommendationCache.Entry>getArgument(1).degraded()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        gateway.close();
+    }
+
+    @Test
+    void testRecommend_zipsConcurrentCalls() {
+        gateway.respond(PLAYS, new StubGateway.Response(200, "[{\"mediaId\":1,\"playCount\":3}]", false, Duration.ofMillis(300)));
+        gateway.respond(RATINGS, new StubGateway.Response(200,
+                "[{\"id\":1,\"userId\":\"user1\",\"mediaId\":\"2\",\"liked\":true}]", false, Duration.ofMillis(300)));
+
+        long start = System.nanoTime();
+        RecommendationService.Recommendations result = service.recommend(jwt, RecommendationService.Options.DEFAULT)
+                .block(Duration.ofSeconds(5));
+
+        // both calls were in flight at once
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 550);
+        assertEquals(MEDIA, result.media());
+        assertFalse(result.degraded());
+
+        RecommendationCache.Entry cached = recommendationCache.getIfPresent("user1");
+        assertEquals(PlayHistory.of(List.of(new PlayDTO(1L, 3))), cached.history().plays());
+        assertEquals(List.of(new RatingDTO(1L, "user1", "2", true)), cached.history().ratings());
+    }
+
+    @Test
+    void testRecommend_cacheHitSkipsGateway() {
+        gateway.respond(PLAYS, "[]");
+        gateway.respond(RATINGS, "[]");
+
+        service.recommend(jwt, RecommendationService.Options.DEFAULT).block(Duration.ofSeconds(5));
+        service.recommend(jwt, RecommendationService.Options.DEFAULT).block(Duration.ofSeconds(5));
+
+        assertEquals(1, gateway.requestCount(PLAYS));
+        assertEquals(1, gateway.requestCount(RATINGS));
+    }
+
+    @Test
+    void testRecommend_degradesWhenUpstreamTimesOut() {
+        gateway.respond(PLAYS, "[]");
+        gateway.respond(RATINGS, new StubGateway.Response(200, "[]", false, Duration.ofSeconds(3)));
+
+        RecommendationService.Recommendations result = service.recommend(jwt, RecommendationService.Options.DEFAULT)
+                .block(Duration.ofSeconds(5));
+
+        assertTrue(result.degraded());
+        verify(recommendationService).degraded(eq("user1"), isA(ResponseStatusException.class), isNull());
+        // the next request tries the gateway again
+        assertNull(recommendationCache.getIfPresent("user1"));
+    }
+
+    @Test
+    void testRecommend_coalescesConcurrentRequests() {
+        gateway.respond(PLAYS, new StubGateway.Response(200, "[]", false, Duration.ofMillis(100)));
+        gateway.respond(RATINGS, new StubGateway.Response(200, "[]", false, Duration.ofMillis(100)));
+
+        Mono.zip(service.recommend(jwt, RecommendationService.Options.DEFAULT),
+                        service.recommend(jwt, RecommendationService.Options.DEFAULT))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(1, gateway.requestCount(PLAYS));
+        assertEquals(1, gateway.requestCount(RATINGS));
+        assertEquals(1.0, meterRegistry.get("recommendation.upstream.coalesced").tag("client", "plays").counter().count());
+    }
+
+    @Test
+    void testRecommend_observedWithStageTimers() {
+        gateway.respond(PLAYS, "[]");
+        gateway.respond(RATINGS, "[]");
+
+        service.recommend(jwt, RecommendationService.Options.DEFAULT).block(Duration.ofSeconds(5));
+
+        assertEquals(1, meterRegistry.get("recommendation.recommend").timer().count());
+        assertEquals(1, meterRegistry.get("recommendation.stage").tag("stage", "history").timer().count());
+    }
+
+    @Test
+    void testRecommend_coldCatalogScoresOffParallelScheduler() {
+        gateway.respond(PLAYS, "[]");
+        gateway.respond(RATINGS, "[]");
+        when(mediaCatalog.isLoaded()).thenReturn(false);
+        AtomicReference<String> scoredOn = new AtomicReference<>();
+        when(recommendationService.recommend(eq("user1"), any(RecommendationCache.Entry.class), any()))
+                .thenAnswer(inv -> {
+                    scoredOn.set(Thread.currentThread().getName());
+                    return new RecommendationService.Recommendations(MEDIA, false);
+                });
+
+        service.recommend(jwt, RecommendationService.Options.DEFAULT).block(Duration.ofSeconds(5));
+
+        // the first MediaCatalog.current() downloads the catalog, which must not block a parallel thread
+        assertTrue(scoredOn.get().startsWith("boundedElastic"), scoredOn.get());
+    }
+}
@@ -0,0 +1,78 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecommendationCacheTest {
+
+    private final RecommendationCache cache =
+            new RecommendationCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1), false);
+
+    @Test
+    void testGet_loadsOnceAndSkipsDegraded() {
+        AtomicInteger loads = new AtomicInteger();
+        RecommendationCache.Entry entry = entry(false);
+
+        assertSame(entry, cache.get("user1", () -> { loads.incrementAndGet(); return entry; }));
+        assertSame(entry, cache.get("user1", () -> { loads.incrementAndGet(); return entry(false); }));
+        assertEquals(1, loads.get());
+
+        cache.get("user2", () -> entry(true));
+        assertNull(cache.getIfPresent("user2"));
+    }
+
+    @Test
+    void testGet_invalidatedWhileLoading_notStored() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RecommendationCache.Entry stale = entry(false);
+
+        CompletableFuture<RecommendationCache.Entry> load = CompletableFuture.supplyAsync(() -> cache.get("user1", () -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return stale;
+        }));
+        assertTrue(loading.await(1, TimeUnit.SECONDS));
+        // a play event arrives while the history from before it is still loading
+        cache.invalidate("user1");
+        release.countDown();
+
+        // the running request still gets what it loaded, but it is not kept
+        assertSame(stale, load.get(1, TimeUnit.SECONDS));
+        assertNull(cache.getIfPresent("user1"));
+
+        RecommendationCache.Entry fresh = entry(false);
+        assertSame(fresh, cache.get("user1", () -> fresh));
+        assertSame(fresh, cache.getIfPresent("user1"));
+    }
+
+    @Test
+    void testPut_afterInvalidateAll_notStored() {
+        long generation = cache.generation("user1");
+        cache.invalidateAll();
+
+        cache.put("user1", generation, entry(false));
+        assertNull(cache.getIfPresent("user1"));
+
+        cache.put("user1", cache.generation("user1"), entry(false));
+        assertNotNull(cache.getIfPresent("user1"));
+    }
+
+    private static RecommendationCache.Entry entry(boolean degraded) {
+        return new RecommendationCache.Entry(new UpstreamFetcher.Result(PlayHistory.EMPTY, List.of()), null, null, degraded);
+    }
+}
@@ -0,0 +1,41 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecommendationMetricsTest {
+
+    @Test
+    void testObserve_spanCarriesHashedUserId() {
+        AtomicReference<Observation.Context> observed = new AtomicReference<>();
+        ObservationRegistry observationRegistry = ObservationRegistry.create();
+        observationRegistry.observationConfig().observationHandler(new ObservationHandler<>() {
+            @Override
+            public void onStop(Observation.Context context) {
+                observed.set(context);
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return true;
+            }
+        });
+        RecommendationMetrics metrics = new RecommendationMetrics(new SimpleMeterRegistry(), observationRegistry, true);
+
+        assertEquals("result", metrics.observe("user1", () -> "result"));
+
+        KeyValue userHash = observed.get().getHighCardinalityKeyValue("user.hash");
+        assertEquals(RecommendationMetrics.userHash("user1"), userHash.getValue());
+        assertEquals(16, userHash.getValue().length());
+        assertNotEquals(RecommendationMetrics.userHash("user2"), userHash.getValue());
+        assertTrue(observed.get().getAllKeyValues().stream().noneMatch(kv -> kv.getValue().contains("user1")));
+    }
+}
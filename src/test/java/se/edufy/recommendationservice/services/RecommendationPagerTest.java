@@ -0,0 +1,125 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.server.ResponseStatusException;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Ranking is mocked: ordinal i of the catalog is the i-th ranked media, so a page's ids show
+ * which part of the ranking it was served from.
+ */
+class RecommendationPagerTest {
+
+    private static final int DEPTH = 25;
+
+    private final RecommendationService recommendationService = mock(RecommendationService.class);
+    private final Jwt jwt = Jwt.withTokenValue("token")
+            .header("alg", "none")
+            .subject("user1")
+            .build();
+
+    private CatalogSnapshot catalog;
+    private RecommendationPager pager;
+
+    @BeforeEach
+    void setUp() {
+        List<MediaDetailsDTO> media = IntStream.range(0, DEPTH)
+                .mapToObj(i -> new MediaDetailsDTO((long) i, "Media " + i, List.of(), List.of()))
+                .toList();
+        catalog = new CatalogSnapshot(media, Instant.now());
+        pager = new RecommendationPager(recommendationService, new SimpleMeterRegistry(), DEPTH, 100,
+                Duration.ofMinutes(1));
+    }
+
+    @Test
+    void testPages_continueOneRanking() {
+        when(recommendationService.rank(jwt, DEPTH, 0.0))
+                .thenReturn(new RecommendationService.Ranked(catalog, IntStream.range(0, DEPTH).toArray(), false));
+        RecommendationService.Options options = new RecommendationService.Options(10, 0.0);
+
+        List<Long> ids = new ArrayList<>();
+        RecommendationPager.Page page = pager.page(jwt, options, null);
+        ids.addAll(ids(page));
+        page = pager.page(jwt, options, page.nextCursor());
+        ids.addAll(ids(page));
+        page = pager.page(jwt, options, page.nextCursor());
+        ids.addAll(ids(page));
+
+        assertEquals(idsUpTo(DEPTH), ids);
+        assertNull(page.nextCursor());
+        verify(recommendationService, times(1)).rank(any(), anyInt(), anyDouble());
+    }
+
+    @Test
+    void testPages_keepTheExplorationShare() {
+        // the ranker returns 20 scored picks, then 5 exploration picks
+        when(recommendationService.rank(jwt, DEPTH, 0.2))
+                .thenReturn(new RecommendationService.Ranked(catalog, IntStream.range(0, DEPTH).toArray(), false));
+
+        RecommendationPager.Page first = pager.page(jwt, new RecommendationService.Options(5, 0.2), null);
+        RecommendationPager.Page second = pager.page(jwt, new RecommendationService.Options(5, 0.2), first.nextCursor());
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 20L), ids(first));
+        assertEquals(List.of(4L, 5L, 6L, 7L, 21L), ids(second));
+    }
+
+    @Test
+    void testInterleave_runsOutOfOneKind() {
+        // 3 scored picks and 1 exploration pick, in pages of 2 with one exploration slot each
+        assertArrayEquals(new int[]{0, 3, 1, 2}, RecommendationPager.interleave(new int[]{0, 1, 2, 3}, 4, 2, 0.25));
+        // a short ranking: every pick is scored
+        assertArrayEquals(new int[]{0, 1, 2}, RecommendationPager.interleave(new int[]{0, 1, 2}, 10, 2, 0.0));
+    }
+
+    @Test
+    void testCursor_expiresWithANewFirstPage() {
+        when(recommendationService.rank(jwt, DEPTH, 0.0))
+                .thenReturn(new RecommendationService.Ranked(catalog, IntStream.range(0, DEPTH).toArray(), true));
+        RecommendationService.Options options = new RecommendationService.Options(10, 0.0);
+
+        RecommendationPager.Page old = pager.page(jwt, options, null);
+        RecommendationPager.Page current = pager.page(jwt, options, null);
+
+        assertTrue(current.degraded());
+        ResponseStatusException expired = assertThrows(ResponseStatusException.class,
+                () -> pager.page(jwt, options, old.nextCursor()));
+        assertEquals(HttpStatus.GONE, expired.getStatusCode());
+        assertEquals(10, pager.page(jwt, options, current.nextCursor()).media().size());
+    }
+
+    @Test
+    void testCursor_invalid() {
+        RecommendationService.Options options = new RecommendationService.Options(10, 0.0);
+
+        for (String cursor : List.of("", "abc", "abc.x", "zzzzzzzzzzzzzzzzz.1")) {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                    () -> pager.page(jwt, options, cursor), cursor);
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode(), cursor);
+        }
+        ResponseStatusException unknown = assertThrows(ResponseStatusException.class,
+                () -> pager.page(jwt, options, "abc.10"));
+        assertEquals(HttpStatus.GONE, unknown.getStatusCode());
+    }
+
+    private static List<Long> ids(RecommendationPager.Page page) {
+        return page.media().stream().map(MediaDetailsDTO::id).toList();
+    }
+
+    private static List<Long> idsUpTo(int count) {
+        return IntStream.range(0, count).mapToObj(i -> (long) i).toList();
+    }
+}
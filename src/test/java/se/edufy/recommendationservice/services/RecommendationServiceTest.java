@@ -1,20 +1,32 @@
 package se.edufy.recommendationservice.services;
 
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.oauth2.jwt.Jwt;
-import se.edufy.recommendationservice.clients.MediaClient;
+import org.springframework.web.client.RestClientException;
 import se.edufy.recommendationservice.clients.PlayClient;
 import se.edufy.recommendationservice.clients.RatingClient;
 import se.edufy.recommendationservice.dtos.ArtistDTO;
 import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
 import se.edufy.recommendationservice.dtos.PlayDTO;
 import se.edufy.recommendationservice.dtos.RatingDTO;
-
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.CooccurrenceTable;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,18 +42,38 @@ class RecommendationServiceTest {
     private PlayClient playClient;
 
     @Mock
-    private MediaClient mediaClient;
+    private MediaCatalog mediaCatalog;
+
+    @Mock
+    private TasteProfileService tasteProfileService;
+
+    @Mock
+    private CooccurrenceModel cooccurrenceModel;
+
+    @TempDir
+    private Path tempDir;
 
     @Mock
     private Jwt jwt;
 
-    @InjectMocks
+    private RecommendationCache recommendationCache;
+
+    private ActiveUsers activeUsers;
+
+    private SimpleMeterRegistry meterRegistry;
+
     private RecommendationService recommendationService;
 
     private List<MediaDetailsDTO> allMedia;
 
     @BeforeEach
     void setUp() {
+        lenient().when(cooccurrenceModel.current()).thenReturn(CooccurrenceTable.EMPTY);
+        meterRegistry = new SimpleMeterRegistry();
+        recommendationCache = new RecommendationCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1), false);
+        activeUsers = new ActiveUsers(100, Duration.ofMinutes(5));
+        recommendationService = newService(recommendationCache);
+
         allMedia = List.of(
                 new MediaDetailsDTO(1L, "Media 1", List.of("Action"), List.of(new ArtistDTO(1L, "Artist A"))),
                 new MediaDetailsDTO(2L, "Media 2", List.of("Comedy"), List.of(new ArtistDTO(2L, "Artist B"))),
@@ -61,18 +93,18 @@ class RecommendationServiceTest {
     void testRecommendations_basicFlow() {
         when(jwt.getSubject()).thenReturn("user1");
 
-        when(playClient.getUserPlays(jwt)).thenReturn(List.of(
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(
                 new PlayDTO(1L, 1),
                 new PlayDTO(3L, 2)
-        ));
+        )));
 
         when(ratingClient.getRatingsForUser("user1", jwt)).thenReturn(List.of(
                 new RatingDTO(2L, "user1", "2", false)
         ));
 
-        when(mediaClient.getAllMedia(jwt)).thenReturn(allMedia);
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
 
-        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt);
+        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt).media();
 
         assertNotNull(recommendations);
         assertTrue(recommendations.size() <= 10);
@@ -83,14 +115,14 @@ class RecommendationServiceTest {
     void testRecommendations_noPlays_someDislikes() {
         when(jwt.getSubject()).thenReturn("user2");
 
-        when(playClient.getUserPlays(jwt)).thenReturn(Collections.emptyList());
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.EMPTY);
         when(ratingClient.getRatingsForUser("user2", jwt)).thenReturn(List.of(
                 new RatingDTO(1L, "user2", "1", false),
                 new RatingDTO(2L, "user2", "2", false)
         ));
-        when(mediaClient.getAllMedia(jwt)).thenReturn(allMedia);
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
 
-        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt);
+        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt).media();
 
         assertNotNull(recommendations);
         assertFalse(recommendations.stream().anyMatch(m -> m.id() == 1L || m.id() == 2L));
@@ -106,13 +138,13 @@ class RecommendationServiceTest {
             plays.add(new PlayDTO(m.id(), 1));
         }
 
-        when(playClient.getUserPlays(jwt)).thenReturn(plays);
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(plays));
         when(ratingClient.getRatingsForUser("user3", jwt)).thenReturn(List.of(
                 new RatingDTO(1L, "user3", "1", false)
         ));
-        when(mediaClient.getAllMedia(jwt)).thenReturn(allMedia);
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
 
-        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt);
+        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt).media();
 
         assertNotNull(recommendations);
         // fallback ignores disliked media
@@ -123,34 +155,277 @@ class RecommendationServiceTest {
     void testRecommendations_noPlays_noDislikes() {
         when(jwt.getSubject()).thenReturn("user4");
 
-        when(playClient.getUserPlays(jwt)).thenReturn(Collections.emptyList());
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.EMPTY);
         when(ratingClient.getRatingsForUser("user4", jwt)).thenReturn(Collections.emptyList());
-        when(mediaClient.getAllMedia(jwt)).thenReturn(allMedia);
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
 
-        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt);
+        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt).media();
 
         assertNotNull(recommendations);
         assertTrue(recommendations.size() <= 10);
     }
 
     @Test
-    void testRecommendations_limitedPreferredAndOther() {
+    void testRecommendations_playCountWeightsGenres() {
         when(jwt.getSubject()).thenReturn("user5");
 
-        when(playClient.getUserPlays(jwt)).thenReturn(List.of(
-                new PlayDTO(1L, 1),
-                new PlayDTO(3L, 2)
-        ));
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(
+                new PlayDTO(7L, 1),
+                new PlayDTO(5L, 30)
+        )));
         when(ratingClient.getRatingsForUser("user5", jwt)).thenReturn(Collections.emptyList());
-        when(mediaClient.getAllMedia(jwt)).thenReturn(allMedia);
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+
+        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt,
+                new RecommendationService.Options(4, 0.5)).media();
 
-        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt);
+        // one Action play against 30 Comedy plays: the two unplayed Comedy items rank first,
+        // the other half is exploration
+        assertEquals(4, recommendations.size());
+        assertEquals(Set.of(2L, 10L), Set.of(recommendations.get(0).id(), recommendations.get(1).id()));
+        assertFalse(recommendations.stream().anyMatch(m -> m.id() == 5L || m.id() == 7L));
+    }
+
+    @Test
+    void testRecommendations_likedArtistRanksFirst() {
+        when(jwt.getSubject()).thenReturn("user10");
+
+        List<MediaDetailsDTO> media = new ArrayList<>(allMedia);
+        media.add(new MediaDetailsDTO(11L, "Media 11", List.of("Drama"), List.of(new ArtistDTO(1L, "Artist A"))));
+
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(
+                new PlayDTO(1L, 3),
+                new PlayDTO(4L, 1)
+        )));
+        when(ratingClient.getRatingsForUser("user10", jwt)).thenReturn(List.of(
+                new RatingDTO(1L, "user10", "1", true)
+        ));
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(media, Instant.now()));
 
-        long preferredCount = recommendations.stream()
-                .filter(m -> List.of("Action", "Thriller").stream().anyMatch(g -> m.genres().contains(g)))
-                .count();
+        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt,
+                new RecommendationService.Options(3, 0)).media();
+
+        // media 11 shares no genre with the history, only the artist of the liked media 1
+        assertEquals(11L, recommendations.get(0).id());
+        // then the unplayed Action items
+        assertTrue(Set.of(3L, 7L, 9L).contains(recommendations.get(1).id()));
+        assertTrue(Set.of(3L, 7L, 9L).contains(recommendations.get(2).id()));
+    }
+
+    @Test
+    void testRecommendations_blendsCooccurringMedia() throws IOException {
+        when(jwt.getSubject()).thenReturn("user11");
+
+        // users who played media 1 also played media 6, which shares no genre or artist with it
+        Path file = tempDir.resolve("cooccurrence.bin");
+        new CooccurrenceTable.Writer()
+                .add(1L, new long[]{6L}, new float[]{0.9f}, 1)
+                .write(file);
+        when(cooccurrenceModel.current()).thenReturn(CooccurrenceTable.map(file));
+
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(new PlayDTO(1L, 1))));
+        when(ratingClient.getRatingsForUser("user11", jwt)).thenReturn(Collections.emptyList());
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+
+        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt,
+                new RecommendationService.Options(3, 0)).media();
+
+        assertEquals(6L, recommendations.getFirst().id());
+        assertTrue(recommendations.stream().skip(1).allMatch(m -> m.genres().contains("Action")));
+    }
+
+    @Test
+    void testRecommendations_recordsStageMetrics() {
+        when(jwt.getSubject()).thenReturn("user12");
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(new PlayDTO(1L, 1))));
+        when(ratingClient.getRatingsForUser("user12", jwt)).thenReturn(Collections.emptyList());
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+
+        recommendationService.recommend(jwt, new RecommendationService.Options(4, 0));
+
+        for (RecommendationMetrics.Stage stage : RecommendationMetrics.Stage.values()) {
+            assertEquals(1, meterRegistry.get("recommendation.stage")
+                    .tag("stage", stage.name().toLowerCase()).timer().count(), stage.name());
+        }
+        assertEquals(10.0, meterRegistry.get("recommendation.request.catalog.size").summary().totalAmount());
+        assertEquals(9.0, meterRegistry.get("recommendation.request.candidates").summary().totalAmount());
+        assertEquals(4.0, meterRegistry.get("recommendation.request.results").summary().totalAmount());
+    }
+
+    @Test
+    void testRecommendations_reportsFirstServedOnce() {
+        when(jwt.getSubject()).thenReturn("user14");
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(new PlayDTO(1L, 1))));
+        when(ratingClient.getRatingsForUser("user14", jwt)).thenReturn(Collections.emptyList());
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+        when(mediaCatalog.warmStarted()).thenReturn(true);
+
+        recommendationService.recommend(jwt, new RecommendationService.Options(4, 0));
+        recommendationService.recommend(jwt, new RecommendationService.Options(3, 0));
+
+        assertEquals(1, meterRegistry.find("recommendation.startup.first.served").timeGauges().size());
+        assertTrue(meterRegistry.get("recommendation.startup.first.served").tag("catalog", "warm")
+                .timeGauge().value() > 0);
+    }
 
-        assertTrue(preferredCount <= 8);
-        assertTrue(recommendations.size() - preferredCount <= 2);
+    @Test
+    void testRecommendations_metricsDisabled() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RecommendationMetrics disabled = new RecommendationMetrics(registry, ObservationRegistry.NOOP, false);
+
+        assertEquals(0, disabled.start());
+        assertEquals(0, disabled.lap(RecommendationMetrics.Stage.RANK, 0));
+        disabled.sizes(10, 5, 3);
+        assertEquals("done", disabled.observe("user13", () -> "done"));
+
+        assertNull(registry.find("recommendation.stage").timer());
+        assertNull(registry.find("recommendation.request.results").summary());
+    }
+
+    @Test
+    void testOptions_rejectsOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new RecommendationService.Options(0, 0.2));
+        assertThrows(IllegalArgumentException.class,
+                () -> new RecommendationService.Options(RecommendationService.Options.MAX_SIZE + 1, 0.2));
+        assertThrows(IllegalArgumentException.class, () -> new RecommendationService.Options(10, 1.5));
+        assertThrows(IllegalArgumentException.class, () -> new RecommendationService.Options(10, Double.NaN));
+    }
+
+    @Test
+    void testRecommendations_cachedHistorySkipsUpstream() {
+        when(jwt.getSubject()).thenReturn("user6");
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(new PlayDTO(1L, 1))));
+        when(ratingClient.getRatingsForUser("user6", jwt)).thenReturn(Collections.emptyList());
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+
+        recommendationService.recommend(jwt).media();
+        List<MediaDetailsDTO> second = recommendationService.recommend(jwt).media();
+
+        assertFalse(second.stream().anyMatch(m -> m.id() == 1L));
+        verify(playClient, times(1)).getUserPlays(jwt);
+        verify(ratingClient, times(1)).getRatingsForUser("user6", jwt);
+
+        recommendationCache.invalidate("user6");
+        recommendationService.recommend(jwt).media();
+
+        verify(playClient, times(2)).getUserPlays(jwt);
+    }
+
+    @Test
+    void testRecommendations_pinnedResultsAreStable() {
+        recommendationService = newService(
+                new RecommendationCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1), true));
+
+        when(jwt.getSubject()).thenReturn("user7");
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.EMPTY);
+        when(ratingClient.getRatingsForUser("user7", jwt)).thenReturn(Collections.emptyList());
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+
+        List<MediaDetailsDTO> first = recommendationService.recommend(jwt).media();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(first, recommendationService.recommend(jwt).media());
+        }
+        verify(playClient, times(1)).getUserPlays(jwt);
+    }
+
+    @Test
+    void testPrecompute_nextRequestIsACacheLookup() {
+        when(jwt.getSubject()).thenReturn("user15");
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(new PlayDTO(1L, 2))));
+        when(ratingClient.getRatingsForUser("user15", jwt)).thenReturn(Collections.emptyList());
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+
+        // without pin-results nothing is pinned, precomputed or not
+        recommendationService.recommend(jwt);
+        assertEquals(RecommendationService.Precomputed.EXPIRED, recommendationService.precompute("user15"));
+        assertNull(recommendationCache.getIfPresent("user15").pinned());
+
+        recommendationCache = new RecommendationCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(1), true);
+        activeUsers = new ActiveUsers(100, Duration.ofMinutes(5));
+        recommendationService = newService(recommendationCache);
+        // other options are not pinned, so this only loads the entry
+        recommendationService.recommend(jwt, new RecommendationService.Options(5, 0.2));
+        assertEquals(List.of(new ActiveUsers.Activity("user15", 1)), activeUsers.mostActive());
+        assertEquals(0, activeUsers.computing());
+
+        assertEquals(RecommendationService.Precomputed.STORED, recommendationService.precompute("user15"));
+        List<MediaDetailsDTO> precomputed = recommendationCache.getIfPresent("user15").pinned();
+        assertNotNull(precomputed);
+        assertSame(precomputed, recommendationService.recommend(jwt).media());
+        verify(playClient, times(2)).getUserPlays(jwt);
+
+        // the next round leaves the pinned page as it is
+        assertEquals(RecommendationService.Precomputed.PINNED, recommendationService.precompute("user15"));
+        assertSame(precomputed, recommendationCache.getIfPresent("user15").pinned());
+
+        // no history to compute from without a cache entry
+        recommendationCache.invalidate("user15");
+        assertEquals(RecommendationService.Precomputed.EXPIRED, recommendationService.precompute("user15"));
+        assertEquals(RecommendationService.Precomputed.EXPIRED, recommendationService.precompute("unknown"));
+    }
+
+    @Test
+    void testRecommendations_storedTasteProfile() {
+        when(jwt.getSubject()).thenReturn("user8");
+
+        UserTasteProfile profile = new UserTasteProfile("user8");
+        profile.recordPlay(5L, 4);
+        profile.addGenreWeight("Comedy", 1.0);
+
+        when(tasteProfileService.find("user8")).thenReturn(Optional.of(profile));
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(new PlayDTO(5L, 4))));
+        when(ratingClient.getRatingsForUser("user8", jwt)).thenReturn(Collections.emptyList());
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+
+        List<MediaDetailsDTO> recommendations = recommendationService.recommend(jwt).media();
+
+        // Comedy comes only from the stored profile; media 2 and 10 are the unplayed Comedy items
+        assertTrue(recommendations.stream().anyMatch(m -> m.id() == 2L));
+        assertTrue(recommendations.stream().anyMatch(m -> m.id() == 10L));
+        assertFalse(recommendations.stream().anyMatch(m -> m.id() == 5L));
+        verify(tasteProfileService).reconcile(eq("user8"), eq(profile), any(PlayHistory.class), anyList(), any());
+    }
+
+    @Test
+    void testRecommendations_degradedWhenRatingsUnavailable() {
+        when(jwt.getSubject()).thenReturn("user9");
+
+        UserTasteProfile profile = new UserTasteProfile("user9");
+        profile.recordPlay(1L, 2);
+        profile.recordRating(2L, false);
+
+        when(tasteProfileService.find("user9")).thenReturn(Optional.of(profile));
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.of(List.of(new PlayDTO(1L, 2))));
+        when(ratingClient.getRatingsForUser("user9", jwt)).thenThrow(new RestClientException("ratings down"));
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(allMedia, Instant.now()));
+
+        RecommendationService.Recommendations recommendations = recommendationService.recommend(jwt);
+
+        assertTrue(recommendations.degraded());
+        assertFalse(recommendations.media().isEmpty());
+        // played and disliked media still come from the stored profile
+        assertFalse(recommendations.media().stream().anyMatch(m -> m.id() == 1L || m.id() == 2L));
+        verify(tasteProfileService, never()).reconcile(any(), any(), any(PlayHistory.class), anyList(), any());
+        assertEquals(1.0, meterRegistry.get("recommendation.degraded").counter().count());
+
+        // degraded entries are not cached, so the next request tries the gateway again
+        recommendationService.recommend(jwt);
+        verify(ratingClient, times(2)).getRatingsForUser("user9", jwt);
+    }
+
+    private RecommendationService newService(RecommendationCache cache) {
+        UpstreamGuard upstreamGuard = new UpstreamGuard(meterRegistry, CircuitBreakerConfig.ofDefaults(),
+                BulkheadConfig.ofDefaults(), Duration.ofMinutes(1));
+        return new RecommendationService(
+                new UpstreamFetcher(ratingClient, playClient, upstreamGuard, Duration.ofSeconds(2), Duration.ofSeconds(2)),
+                mediaCatalog,
+                new TopKRanker(new CandidateSampler(new SplittableRandom(42))),
+                cooccurrenceModel,
+                cache,
+                tasteProfileService,
+                new RecommendationMetrics(meterRegistry),
+                activeUsers
+        );
     }
 }
@@ -0,0 +1,206 @@
+package se.edufy.recommendationservice.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.PlayHistory;
+import se.edufy.recommendationservice.repositories.UserTasteProfileRepository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TasteProfileServiceTest {
+
+    @Mock
+    private UserTasteProfileRepository repository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private MediaCatalog mediaCatalog;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private TasteProfileService tasteProfileService;
+
+    private final CatalogSnapshot catalog = new CatalogSnapshot(List.of(
+            new MediaDetailsDTO(1L, "Media 1", List.of("Action"), List.of(new ArtistDTO(1L, "Artist A"))),
+            new MediaDetailsDTO(2L, "Media 2", List.of("Comedy"), List.of(new ArtistDTO(2L, "Artist B"))),
+            new MediaDetailsDTO(3L, "Media 3", List.of("Action", "Thriller"), List.of(new ArtistDTO(3L, "Artist C")))
+    ), Instant.now());
+
+    @BeforeEach
+    void setUp() {
+        tasteProfileService = new TasteProfileService(repository, transactionManager, mediaCatalog, meterRegistry, 2, 3, 2);
+    }
+
+    @Test
+    void testReconcile_seedsNewProfileFromHistory() {
+        when(repository.findAllById(any())).thenReturn(List.of());
+
+        tasteProfileService.reconcile("user1", null,
+                PlayHistory.of(List.of(new PlayDTO(1L, 3), new PlayDTO(3L, 2))),
+                List.of(new RatingDTO(1L, "user1", "2", false)),
+                catalog);
+        tasteProfileService.flush();
+
+        UserTasteProfile saved = singleSaved();
+        assertEquals("user1", saved.getUserId());
+        assertArrayEquals(new long[]{1L, 3L}, saved.getPlayedMediaIds());
+        assertArrayEquals(new long[]{2L}, saved.getDislikedMediaIds());
+        assertEquals(5, saved.getTotalPlays());
+        // genres are weighted by 1 + ln(play count)
+        assertEquals(2 + Math.log(3) + Math.log(2), saved.getGenreWeights().get("Action"), 1e-9);
+        assertEquals(1 + Math.log(2), saved.getGenreWeights().get("Thriller"), 1e-9);
+        assertEquals(0, tasteProfileService.pendingUsers());
+    }
+
+    @Test
+    void testReconcile_onlyQueuesWhatProfileIsMissing() {
+        UserTasteProfile stored = new UserTasteProfile("user2");
+        stored.recordPlay(1L, 3);
+        stored.addGenreWeight("Action", 1.0);
+
+        when(repository.findAllById(any())).thenReturn(List.of(stored));
+
+        // the same history reconciled twice must not count media 2 twice
+        PlayHistory plays = PlayHistory.of(List.of(new PlayDTO(1L, 3), new PlayDTO(2L, 1)));
+        tasteProfileService.reconcile("user2", stored, plays, List.of(), catalog);
+        tasteProfileService.reconcile("user2", stored, plays, List.of(), catalog);
+        tasteProfileService.flush();
+
+        UserTasteProfile saved = singleSaved();
+        assertArrayEquals(new long[]{1L, 2L}, saved.getPlayedMediaIds());
+        assertEquals(4, saved.getTotalPlays());
+        assertEquals(1.0, saved.getGenreWeights().get("Comedy"));
+        assertEquals(1.0, saved.getGenreWeights().get("Action"));
+    }
+
+    @Test
+    void testRecordPlay_genreWeightFollowsPlayCount() {
+        when(mediaCatalog.current()).thenReturn(catalog);
+        when(repository.findAllById(any())).thenReturn(List.of());
+
+        tasteProfileService.recordPlay("user3", 2L, 1);
+        tasteProfileService.recordPlay("user3", 2L, 1);
+        tasteProfileService.recordRating("user3", 1L, true);
+        tasteProfileService.flush();
+
+        UserTasteProfile saved = singleSaved();
+        assertEquals(2, saved.getTotalPlays());
+        assertEquals(2, saved.playCountOf(2L));
+        assertEquals(UserTasteProfile.playWeight(2), saved.getGenreWeights().get("Comedy"), 1e-9);
+        assertArrayEquals(new long[]{1L}, saved.getLikedMediaIds());
+    }
+
+    @Test
+    void testReconcile_sameWeightsWhicheverWayPlaysArrive() {
+        UserTasteProfile early = new UserTasteProfile("user5");
+        early.recordHistoricPlay(2L, 1);
+        early.addGenreWeight("Comedy", UserTasteProfile.playWeight(1));
+
+        when(repository.findAllById(any())).thenReturn(List.of(early));
+
+        // synced at one play, then played 49 more times before the next sync
+        tasteProfileService.reconcile("user5", early, PlayHistory.of(List.of(new PlayDTO(2L, 50))), List.of(), catalog);
+        tasteProfileService.flush();
+
+        UserTasteProfile late = new UserTasteProfile("user6");
+        late.recordHistoricPlay(2L, 50);
+
+        UserTasteProfile saved = singleSaved();
+        assertEquals(50, saved.getTotalPlays());
+        assertEquals(UserTasteProfile.playWeight(50), saved.getGenreWeights().get("Comedy"), 1e-9);
+        assertEquals(late.getTotalPlays(), saved.getTotalPlays());
+        // a history that is behind the stored counts changes nothing
+        assertEquals(0, saved.recordHistoricPlay(2L, 20));
+        assertEquals(50, saved.playCountOf(2L));
+    }
+
+    @Test
+    void testFlush_failureKeepsUpdatesForNextRound() {
+        when(mediaCatalog.current()).thenReturn(catalog);
+        when(repository.findAllById(any()))
+                .thenThrow(new org.springframework.dao.QueryTimeoutException("db down"))
+                .thenReturn(List.of());
+
+        tasteProfileService.recordPlay("user4", 1L, 1);
+        tasteProfileService.flush();
+
+        assertEquals(1, tasteProfileService.pendingUsers());
+
+        tasteProfileService.flush();
+
+        assertEquals(0, tasteProfileService.pendingUsers());
+        assertArrayEquals(new long[]{1L}, singleSaved().getPlayedMediaIds());
+    }
+
+    @Test
+    void testFlush_badUserRetriedAloneThenDropped() {
+        when(repository.findAllById(any())).thenReturn(List.of());
+        List<String> saved = new ArrayList<>();
+        when(repository.saveAll(any())).thenAnswer(invocation -> {
+            Iterable<UserTasteProfile> profiles = invocation.getArgument(0);
+            List<String> userIds = new ArrayList<>();
+            profiles.forEach(profile -> userIds.add(profile.getUserId()));
+            if (userIds.contains("bad")) {
+                throw new DataIntegrityViolationException("constraint violated");
+            }
+            saved.addAll(userIds);
+            return profiles;
+        });
+
+        tasteProfileService.recordRating("good", 1L, true);
+        tasteProfileService.recordRating("bad", 2L, true);
+        tasteProfileService.flush();
+
+        // the rest of the batch is saved on its own, the bad user waits for another attempt
+        assertEquals(List.of("good"), saved);
+        assertEquals(1, tasteProfileService.pendingUsers());
+
+        tasteProfileService.flush();
+
+        assertEquals(0, tasteProfileService.pendingUsers());
+        assertEquals(1.0, meterRegistry.get("recommendation.profiles.dropped").tag("reason", "failed").counter().count());
+    }
+
+    @Test
+    void testEnqueue_boundedByMaxPendingUsers() {
+        tasteProfileService.recordRating("user1", 1L, true);
+        tasteProfileService.recordRating("user2", 1L, true);
+        tasteProfileService.recordRating("user3", 1L, true);
+        tasteProfileService.recordRating("user4", 1L, true);
+        // users already queued still take updates
+        tasteProfileService.recordRating("user1", 2L, false);
+
+        assertEquals(3.0, meterRegistry.get("recommendation.profiles.pending").gauge().value());
+        assertEquals(1.0, meterRegistry.get("recommendation.profiles.dropped").tag("reason", "full").counter().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    private UserTasteProfile singleSaved() {
+        ArgumentCaptor<Iterable<UserTasteProfile>> captor = ArgumentCaptor.forClass(Iterable.class);
+        verify(repository).saveAll(captor.capture());
+        List<UserTasteProfile> saved = new java.util.ArrayList<>();
+        captor.getValue().forEach(saved::add);
+        assertEquals(1, saved.size());
+        return saved.get(0);
+    }
+}
@@ -0,0 +1,76 @@
+package se.edufy.recommendationservice.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopKRankerTest {
+
+    private final TopKRanker ranker = new TopKRanker(new CandidateSampler(new SplittableRandom(1)), bound -> 0);
+
+    @Test
+    void testRank_highestScoresFirst() {
+        BitSet candidates = new BitSet();
+        candidates.set(0, 1_000);
+        candidates.clear(999);
+
+        // score grows with the ordinal, so the best candidates are 998, 997, ...
+        int[] ranked = ranker.rank(candidates, ordinal -> ordinal, 5, 0);
+
+        assertArrayEquals(new int[]{998, 997, 996, 995, 994}, ranked);
+    }
+
+    @Test
+    void testRank_explorationQuota() {
+        BitSet candidates = new BitSet();
+        candidates.set(0, 1_000);
+
+        int[] ranked = ranker.rank(candidates, ordinal -> ordinal >= 990 ? 1.0 : 0.0, 10, 0.3);
+
+        // 7 scored picks, then 3 drawn from the rest
+        assertEquals(10, ranked.length);
+        assertEquals(10, Arrays.stream(ranked).distinct().count());
+        assertTrue(Arrays.stream(ranked, 0, 7).allMatch(ordinal -> ordinal >= 990));
+        assertTrue(Arrays.stream(ranked).allMatch(candidates::get));
+    }
+
+    @Test
+    void testRank_fillsUpWhenFewItemsScore() {
+        BitSet candidates = new BitSet();
+        candidates.set(0, 100);
+
+        int[] ranked = ranker.rank(candidates, ordinal -> ordinal == 42 ? 0.5 : 0.0, 10, 0);
+
+        assertEquals(10, ranked.length);
+        assertEquals(42, ranked[0]);
+        assertEquals(10, Arrays.stream(ranked).distinct().count());
+    }
+
+    @Test
+    void testRank_tiesRotateWithStartOrdinal() {
+        BitSet candidates = new BitSet();
+        candidates.set(0, 10);
+
+        int[] fromZero = ranker.rank(candidates, ordinal -> 1.0, 3, 0);
+        int[] fromSix = new TopKRanker(new CandidateSampler(), bound -> 6).rank(candidates, ordinal -> 1.0, 3, 0);
+
+        assertEquals(Arrays.asList(0, 1, 2), Arrays.stream(fromZero).sorted().boxed().toList());
+        assertEquals(Arrays.asList(6, 7, 8), Arrays.stream(fromSix).sorted().boxed().toList());
+    }
+
+    @Test
+    void testRank_fewerCandidatesThanSize() {
+        BitSet candidates = new BitSet();
+        candidates.set(3);
+        candidates.set(5);
+
+        int[] ranked = ranker.rank(candidates, ordinal -> ordinal, 10, 0.2);
+
+        assertEquals(2, ranked.length);
+        assertEquals(0, ranker.rank(new BitSet(), ordinal -> 1.0, 10, 0.2).length);
+    }
+}
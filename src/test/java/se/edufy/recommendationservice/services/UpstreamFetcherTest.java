@@ -0,0 +1,148 @@
+package se.edufy.recommendationservice.services;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.server.ResponseStatusException;
+import se.edufy.recommendationservice.clients.PlayClient;
+import se.edufy.recommendationservice.clients.RatingClient;
+import se.edufy.recommendationservice.dtos.PlayDTO;
+import se.edufy.recommendationservice.dtos.RatingDTO;
+import se.edufy.recommendationservice.models.PlayHistory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UpstreamFetcherTest {
+
+    @Mock
+    private RatingClient ratingClient;
+
+    @Mock
+    private PlayClient playClient;
+
+    @Mock
+    private Jwt jwt;
+
+    private UpstreamFetcher fetcher;
+
+    @BeforeEach
+    void setUp() {
+        when(jwt.getSubject()).thenReturn("user1");
+        fetcher = new UpstreamFetcher(
+                ratingClient, playClient, upstreamGuard(), Duration.ofSeconds(2), Duration.ofSeconds(2)
+        );
+    }
+
+    @Test
+    void testFetch_callsOverlap() {
+        // both stubs block until both calls have started, so a sequential fetch would time out
+        CountDownLatch allStarted = new CountDownLatch(2);
+
+        when(playClient.getUserPlays(jwt)).thenAnswer(inv -> {
+            awaitAll(allStarted);
+            return PlayHistory.of(List.of(new PlayDTO(1L, 3)));
+        });
+        when(ratingClient.getRatingsForUser("user1", jwt)).thenAnswer(inv -> {
+            awaitAll(allStarted);
+            return List.of(new RatingDTO(1L, "user1", "2", false));
+        });
+
+        UpstreamFetcher.Result result = fetcher.fetch(jwt);
+
+        assertEquals(1, result.plays().size());
+        assertEquals(1, result.ratings().size());
+    }
+
+    @Test
+    void testFetch_propagatesCallerContext() {
+        // stands in for the current trace span, which is carried over the same way
+        ThreadLocal<String> traceContext = new ThreadLocal<>();
+        ContextRegistry.getInstance().registerThreadLocalAccessor("test.trace", traceContext);
+        try {
+            when(playClient.getUserPlays(jwt)).thenAnswer(inv -> PlayHistory.of(List.of(new PlayDTO(1L, traceContext.get().length()))));
+            when(ratingClient.getRatingsForUser("user1", jwt)).thenAnswer(inv ->
+                    List.of(new RatingDTO(1L, traceContext.get(), "2", false)));
+
+            traceContext.set("trace-1");
+            UpstreamFetcher.Result result = fetcher.fetch(jwt);
+
+            assertEquals("trace-1", result.ratings().getFirst().userId());
+            assertEquals(7, result.plays().playCount(0));
+        } finally {
+            traceContext.remove();
+            ContextRegistry.getInstance().removeThreadLocalAccessor("test.trace");
+        }
+    }
+
+    @Test
+    void testFetch_failureCancelsSiblings() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        when(playClient.getUserPlays(jwt)).thenAnswer(inv -> blockUntilInterrupted(interrupted));
+        when(ratingClient.getRatingsForUser("user1", jwt)).thenAnswer(inv -> {
+            Thread.sleep(50);
+            throw new RestClientException("ratings down");
+        });
+
+        RestClientException e = assertThrows(RestClientException.class, () -> fetcher.fetch(jwt));
+
+        assertEquals("ratings down", e.getMessage());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS), "sibling calls were not cancelled");
+    }
+
+    @Test
+    void testFetch_timeout() {
+        fetcher = new UpstreamFetcher(
+                ratingClient, playClient, upstreamGuard(), Duration.ofSeconds(2), Duration.ofMillis(100)
+        );
+
+        when(playClient.getUserPlays(jwt)).thenReturn(PlayHistory.EMPTY);
+        when(ratingClient.getRatingsForUser("user1", jwt)).thenAnswer(inv -> {
+            Thread.sleep(5_000);
+            return List.of();
+        });
+
+        long start = System.nanoTime();
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> fetcher.fetch(jwt));
+
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT, e.getStatusCode());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000);
+    }
+
+    private static UpstreamGuard upstreamGuard() {
+        return new UpstreamGuard(new SimpleMeterRegistry(), CircuitBreakerConfig.ofDefaults(),
+                BulkheadConfig.ofDefaults(), Duration.ofMinutes(1));
+    }
+
+    private static void awaitAll(CountDownLatch latch) throws InterruptedException {
+        latch.countDown();
+        if (!latch.await(1, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("upstream calls did not overlap");
+        }
+    }
+
+    private static List<?> blockUntilInterrupted(CountDownLatch interrupted) {
+        try {
+            Thread.sleep(10_000);
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+        }
+        return List.of();
+    }
+}
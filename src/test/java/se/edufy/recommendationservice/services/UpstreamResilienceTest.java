@@ -0,0 +1,210 @@
+package se.edufy.recommendationservice.services;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.server.ResponseStatusException;
+import se.edufy.recommendationservice.clients.PlayClient;
+import se.edufy.recommendationservice.clients.RatingClient;
+import se.edufy.recommendationservice.clients.StubGateway;
+import se.edufy.recommendationservice.dtos.ArtistDTO;
+import se.edufy.recommendationservice.dtos.MediaDetailsDTO;
+import se.edufy.recommendationservice.entities.UserTasteProfile;
+import se.edufy.recommendationservice.models.CatalogSnapshot;
+import se.edufy.recommendationservice.models.CooccurrenceTable;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs the real gateway clients against a local stub gateway to check how the fetch stage
+ * behaves when the rating service fails or slows down.
+ */
+class UpstreamResilienceTest {
+
+    private static final String PLAYS = "/users/plays";
+    private static final String RATINGS = "/ratings/user/user1";
+
+    private final StubGateway gateway = new StubGateway();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RestClient restClient = RestClient.builder()
+            .requestFactory(new JdkClientHttpRequestFactory())
+            .build();
+    private final Jwt jwt = Jwt.withTokenValue("token")
+            .header("alg", "none")
+            .subject("user1")
+            .build();
+
+    @AfterEach
+    void tearDown() {
+        gateway.close();
+    }
+
+    @Test
+    void testFailingUpstreamOpensCircuit() {
+        gateway.respond(PLAYS, "[]");
+        gateway.respond(RATINGS, new StubGateway.Response(503, "{}", false));
+        UpstreamGuard guard = guard(BulkheadConfig.ofDefaults());
+        UpstreamFetcher fetcher = fetcher(guard, Duration.ofSeconds(2));
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(RestClientException.class, () -> fetcher.fetch(jwt));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, guard.state(UpstreamGuard.RATINGS));
+        // plays were only cancelled, which says nothing about the play service
+        assertEquals(CircuitBreaker.State.CLOSED, guard.state(UpstreamGuard.PLAYS));
+
+        assertThrows(CallNotPermittedException.class, () -> fetcher.fetch(jwt));
+        assertEquals(4, gateway.requestCount(RATINGS));
+    }
+
+    @Test
+    void testTimeoutsCountAsFailures() {
+        gateway.respond(PLAYS, "[]");
+        gateway.respond(RATINGS, new StubGateway.Response(200, "[]", false, Duration.ofSeconds(2)));
+        UpstreamGuard guard = guard(BulkheadConfig.ofDefaults());
+        UpstreamFetcher fetcher = fetcher(guard, Duration.ofMillis(100));
+
+        for (int i = 0; i < 4; i++) {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> fetcher.fetch(jwt));
+            assertEquals(504, e.getStatusCode().value());
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, guard.state(UpstreamGuard.RATINGS));
+    }
+
+    @Test
+    void testBulkheadRejectsWhenSaturated() throws Exception {
+        gateway.respond(PLAYS, new StubGateway.Response(200, "[]", false, Duration.ofMillis(500)));
+        gateway.respond(RATINGS, "[]");
+        gateway.respond("/ratings/user/user2", "[]");
+        // another user, so the second fetch is not coalesced with the first
+        Jwt otherUser = Jwt.withTokenValue("other")
+                .header("alg", "none")
+                .subject("user2")
+                .build();
+        UpstreamGuard guard = guard(BulkheadConfig.custom()
+                .maxConcurrentCalls(1)
+                .maxWaitDuration(Duration.ZERO)
+                .build());
+        UpstreamFetcher fetcher = fetcher(guard, Duration.ofSeconds(2));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<UpstreamFetcher.Result> first = executor.submit(() -> fetcher.fetch(jwt));
+            awaitRequests(PLAYS, 1);
+
+            long start = System.nanoTime();
+            assertThrows(BulkheadFullException.class, () -> fetcher.fetch(otherUser));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 400, "rejection was not immediate");
+
+            assertNotNull(first.get(2, TimeUnit.SECONDS));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, guard.state(UpstreamGuard.PLAYS));
+    }
+
+    @Test
+    void testConcurrentFetchesForOneUserAreCoalesced() throws Exception {
+        gateway.respond(PLAYS, new StubGateway.Response(200, "[{\"mediaId\":1,\"playCount\":2}]", false,
+                Duration.ofMillis(300)));
+        gateway.respond(RATINGS, new StubGateway.Response(200, "[]", false, Duration.ofMillis(300)));
+        UpstreamFetcher fetcher = fetcher(guard(BulkheadConfig.ofDefaults()), Duration.ofSeconds(2));
+
+        List<Future<UpstreamFetcher.Result>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 5; i++) {
+                results.add(executor.submit(() -> fetcher.fetch(jwt)));
+            }
+            for (Future<UpstreamFetcher.Result> result : results) {
+                assertEquals(1, result.get(2, TimeUnit.SECONDS).plays().size());
+            }
+        }
+
+        assertEquals(1, gateway.requestCount(PLAYS));
+        assertEquals(1, gateway.requestCount(RATINGS));
+        assertEquals(4.0, meterRegistry.get("recommendation.upstream.coalesced").tag("client", "plays").counter().count());
+    }
+
+    @Test
+    void testRecommendationsDegradeToStoredProfile() {
+        gateway.respond(PLAYS, "[{\"mediaId\":1,\"playCount\":2}]");
+        gateway.respond(RATINGS, new StubGateway.Response(503, "{}", false));
+
+        List<MediaDetailsDTO> media = List.of(
+                new MediaDetailsDTO(1L, "Media 1", List.of("Action"), List.of(new ArtistDTO(1L, "Artist A"))),
+                new MediaDetailsDTO(2L, "Media 2", List.of("Action"), List.of(new ArtistDTO(2L, "Artist B"))),
+                new MediaDetailsDTO(3L, "Media 3", List.of("Drama"), List.of(new ArtistDTO(3L, "Artist C")))
+        );
+        MediaCatalog mediaCatalog = mock(MediaCatalog.class);
+        when(mediaCatalog.current()).thenReturn(new CatalogSnapshot(media, Instant.now()));
+
+        UserTasteProfile profile = new UserTasteProfile("user1");
+        profile.recordPlay(1L, 2);
+        TasteProfileService tasteProfileService = mock(TasteProfileService.class);
+        when(tasteProfileService.find("user1")).thenReturn(Optional.of(profile));
+
+        CooccurrenceModel cooccurrenceModel = mock(CooccurrenceModel.class);
+        when(cooccurrenceModel.current()).thenReturn(CooccurrenceTable.EMPTY);
+
+        RecommendationService recommendationService = new RecommendationService(
+                fetcher(guard(BulkheadConfig.ofDefaults()), Duration.ofSeconds(2)),
+                mediaCatalog,
+                new TopKRanker(new CandidateSampler(new SplittableRandom(42))),
+                cooccurrenceModel,
+                new RecommendationCache(meterRegistry, 100, Duration.ofMinutes(1), false),
+                tasteProfileService,
+                new RecommendationMetrics(meterRegistry),
+                new ActiveUsers(100, Duration.ofMinutes(5))
+        );
+
+        RecommendationService.Recommendations recommendations = recommendationService.recommend(jwt);
+
+        assertTrue(recommendations.degraded());
+        assertEquals(List.of(2L, 3L), recommendations.media().stream().map(MediaDetailsDTO::id).sorted().toList());
+    }
+
+    private UpstreamGuard guard(BulkheadConfig bulkheadConfig) {
+        return new UpstreamGuard(meterRegistry,
+                CircuitBreakerConfig.custom()
+                        .slidingWindowSize(4)
+                        .minimumNumberOfCalls(4)
+                        .waitDurationInOpenState(Duration.ofMinutes(1))
+                        .build(),
+                bulkheadConfig,
+                Duration.ofMinutes(1));
+    }
+
+    private UpstreamFetcher fetcher(UpstreamGuard guard, Duration ratingsTimeout) {
+        return new UpstreamFetcher(
+                new RatingClient(restClient, gateway.url()),
+                new PlayClient(restClient, gateway.url()),
+                guard,
+                Duration.ofSeconds(2),
+                ratingsTimeout
+        );
+    }
+
+    private void awaitRequests(String path, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (gateway.requestCount(path) < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
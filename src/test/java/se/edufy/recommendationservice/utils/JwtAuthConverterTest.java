@@ -0,0 +1,68 @@
+package se.edufy.recommendationservice.utils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtAuthConverterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JwtAuthConverter converter = new JwtAuthConverter(
+            meterRegistry, "Edufy_Client", "preferred_username", 100, Duration.ofMinutes(5));
+
+    @Test
+    void testConvert_extractsResourceRoles() {
+        AbstractAuthenticationToken token = converter.convert(jwt("token-1", "user"));
+
+        assertEquals(Set.of("ROLE_user", "SCOPE_profile"), names(token));
+        assertEquals("alice", token.getName());
+    }
+
+    @Test
+    void testConvert_cachesAuthoritiesPerTokenId() {
+        converter.convert(jwt("token-1", "user"));
+        // same jti: the roles are not derived again
+        AbstractAuthenticationToken second = converter.convert(jwt("token-1", "admin"));
+        AbstractAuthenticationToken other = converter.convert(jwt("token-2", "admin"));
+
+        assertEquals(Set.of("ROLE_user", "SCOPE_profile"), names(second));
+        assertEquals(Set.of("ROLE_admin", "SCOPE_profile"), names(other));
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "jwt-authorities")
+                .tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void testConvert_withoutTokenIdIsNotCached() {
+        converter.convert(jwt(null, "user"));
+        AbstractAuthenticationToken second = converter.convert(jwt(null, "admin"));
+
+        assertEquals(Set.of("ROLE_admin", "SCOPE_profile"), names(second));
+    }
+
+    private static Jwt jwt(String tokenId, String role) {
+        Jwt.Builder builder = Jwt.withTokenValue("token")
+                .header("alg", "none")
+                .subject("user-id")
+                .claim("preferred_username", "alice")
+                .claim("scope", "profile")
+                .claim("resource_access", Map.of("Edufy_Client", Map.of("roles", List.of(role))));
+        if (tokenId != null) {
+            builder.jti(tokenId);
+        }
+        return builder.build();
+    }
+
+    private static Set<String> names(AbstractAuthenticationToken token) {
+        return token.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet());
+    }
+}
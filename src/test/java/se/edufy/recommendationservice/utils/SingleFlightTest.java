@@ -0,0 +1,145 @@
+package se.edufy.recommendationservice.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final Counter coalesced = Counter.builder("coalesced").register(new SimpleMeterRegistry());
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>(coalesced);
+
+    @Test
+    void testConcurrentCallsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+                    executions.incrementAndGet();
+                    await(release);
+                    return "value";
+                })));
+            }
+            awaitCoalesced(9);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("value", result.get(1, TimeUnit.SECONDS));
+            }
+        }
+
+        assertEquals(1, executions.get());
+        assertEquals(9.0, coalesced.count());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testReactiveCallsShareOneSubscription() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Sinks.One<String> result = Sinks.one();
+        Mono<String> call = result.asMono().doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+        Mono<String> leader = singleFlight.execute("key", call).cache();
+        leader.subscribe();
+        Mono<String> follower = singleFlight.execute("key", call).cache();
+        follower.subscribe();
+        assertEquals(1, singleFlight.inFlight());
+        result.tryEmitValue("value");
+
+        assertEquals("value", leader.block(Duration.ofSeconds(1)));
+        assertEquals("value", follower.block(Duration.ofSeconds(1)));
+        assertEquals(1, subscriptions.get());
+        assertEquals(1.0, coalesced.count());
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testCancelledReactiveLeaderIsRetriedByFollower() {
+        Mono<String> leader = singleFlight.execute("key", Mono.never());
+        Disposable subscription = leader.subscribe();
+        Mono<String> follower = singleFlight.execute("key", Mono.just("retried")).cache();
+        follower.subscribe();
+        subscription.dispose();
+
+        assertEquals("retried", follower.block(Duration.ofSeconds(1)));
+        assertEquals(0, singleFlight.inFlight());
+    }
+
+    @Test
+    void testFailureIsSharedAndForgotten() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                await(release);
+                throw new IllegalStateException("gateway down");
+            }));
+            awaitInFlight();
+            Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> "unused"));
+            awaitCoalesced(1);
+            release.countDown();
+
+            assertInstanceOf(IllegalStateException.class,
+                    assertThrows(ExecutionException.class, () -> leader.get(1, TimeUnit.SECONDS)).getCause());
+            assertInstanceOf(IllegalStateException.class,
+                    assertThrows(ExecutionException.class, () -> follower.get(1, TimeUnit.SECONDS)).getCause());
+        }
+
+        // a completed call is not reused
+        assertEquals("fresh", singleFlight.execute("key", () -> "fresh"));
+    }
+
+    @Test
+    void testCancelledLeaderIsRetriedByFollower() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("key", () -> {
+                await(new CountDownLatch(1));
+                return "never";
+            }));
+            awaitInFlight();
+            Future<String> follower = executor.submit(() -> singleFlight.execute("key", () -> "retried"));
+            awaitCoalesced(1);
+
+            leader.cancel(true);
+
+            assertEquals("retried", follower.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (singleFlight.inFlight() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitCoalesced(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (coalesced.count() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted");
+        }
+    }
+}